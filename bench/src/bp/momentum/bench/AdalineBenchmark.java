@@ -0,0 +1,57 @@
+package bp.momentum.bench;
+
+import bp.momentum.entity.Adaline;
+import bp.momentum.entity.Layer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the single neuron kernels.
+ * 
+ * @author pseckarova
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdalineBenchmark {
+    
+    @Param({"3", "64", "1024", "8192"})
+    public int inputWidth;
+    
+    private Adaline neuron;
+    private double[] input;
+
+    @Setup
+    public void setUp() {
+        Layer layer = new Layer(0.7f, 0.8f, 0.5f, 1, inputWidth);
+        neuron = layer.getNeurons().get(0);
+        input = BenchmarkData.randomVector(new Random(42), inputWidth);
+        input[inputWidth-1] = 1.0;
+    }
+
+    @Benchmark
+    public double computeOutput() {
+        return neuron.computeOutput(input, 0.5f);
+    }
+    
+    @Benchmark
+    public void computeWeightChanges() {
+        neuron.computeDelta(0.5f, 0.1);
+        neuron.computeWeightChanges(input, 0.7f, 0.8f, null);
+        neuron.adjustWeights();
+    }
+}
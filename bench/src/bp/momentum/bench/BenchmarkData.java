@@ -0,0 +1,42 @@
+package bp.momentum.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Helper methods generating synthetic data for the benchmarks.
+ * 
+ * @author pseckarova
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+    
+    static double[] randomVector(Random random, int width) {
+        double[] vector = new double[width];
+        for (int i = 0; i<width; i++) {
+            vector[i] = random.nextDouble();
+        }
+        return vector;
+    }
+    
+    static double[][] randomMatrix(Random random, int rows, int width) {
+        double[][] matrix = new double[rows][];
+        for (int i = 0; i<rows; i++) {
+            matrix[i] = randomVector(random, width);
+        }
+        return matrix;
+    }
+    
+    /**
+     * Parses the topology in the same format as the -t argument.
+     */
+    static ArrayList<Integer> parseTopology(String topology) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (String width : topology.split(";")) {
+            result.add(Integer.parseInt(width));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package bp.momentum.bench;
+
+import bp.momentum.entity.Kernels;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the scalar and vector kernels on one weight row. Needs 
+ * JDK 17 or newer, the forks run with the vector module added.
+ * 
+ * @author pseckarova
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+    
+    @Param({"scalar", "vector"})
+    public String kernels;
+    
+    @Param({"64", "256", "1024", "4096", "8192"})
+    public int width;
+    
+    private Kernels k;
+    private double[] input;
+    private double[] weights;
+    private double[] last;
+    private double[] overall;
+
+    @Setup
+    public void setUp() {
+        k = Kernels.create(kernels);
+        if (k == null) {
+            throw new IllegalStateException("Kernels " + kernels + " are not available.");
+        }
+        Random random = new Random(42);
+        input = BenchmarkData.randomVector(random, width);
+        weights = BenchmarkData.randomVector(random, width);
+        last = new double[width];
+        overall = new double[width];
+    }
+
+    @Benchmark
+    public double dot() {
+        return k.dot(input, 0, weights, 0, width);
+    }
+    
+    @Benchmark
+    public void axpy() {
+        k.axpy(1e-9, input, 0, overall, 0, width);
+    }
+    
+    @Benchmark
+    public void momentumAndAdjust() {
+        k.momentum(1e-9, input, 0.8, last, overall, 0, width);
+        k.addAndClear(weights, overall, 0, width);
+    }
+}
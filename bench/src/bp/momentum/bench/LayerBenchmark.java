@@ -0,0 +1,91 @@
+package bp.momentum.bench;
+
+import bp.momentum.entity.BlockKernels;
+import bp.momentum.entity.Layer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the whole layer kernels, parameterized by layer width and 
+ * input width (without the static 1.0). The block benchmarks compute a 
+ * block of BlockKernels.BLOCK_ROWS samples, their times are per sample so 
+ * they compare directly with the per-sample ones.
+ * 
+ * @author pseckarova
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayerBenchmark {
+    
+    @Param({"3x3", "256x256", "1024x1024", "4096x4096"})
+    public String shape;
+    
+    private Layer layer;
+    private double[] input;
+    private double[] errPropagation;
+    private double[] block;
+
+    @Setup
+    public void setUp() {
+        String[] dims = shape.split("x");
+        int width = Integer.parseInt(dims[0]);
+        int inputWidth = Integer.parseInt(dims[1]) + 1;
+        Random random = new Random(42);
+        
+        layer = new Layer(0.7f, 0.8f, 0.5f, width, inputWidth);
+        input = BenchmarkData.randomVector(random, inputWidth);
+        input[inputWidth-1] = 1.0;
+        errPropagation = BenchmarkData.randomVector(random, width);
+        layer.computeOutput(input, null);
+        layer.computeDeltas(errPropagation);
+        
+        int rows = BlockKernels.BLOCK_ROWS;
+        block = new double[rows * inputWidth];
+        double[] errBlock = new double[rows * (width + 1)];
+        for (int s = 0; s<rows; s++) {
+            System.arraycopy(BenchmarkData.randomVector(random, inputWidth), 0, block, s*inputWidth, inputWidth);
+            block[(s+1)*inputWidth - 1] = 1.0;
+            System.arraycopy(BenchmarkData.randomVector(random, width), 0, errBlock, s*(width + 1), width);
+        }
+        layer.computeBlockOutputs(block, rows);
+        layer.computeBlockDeltas(errBlock, rows);
+    }
+
+    @Benchmark
+    public double[] computeOutput() {
+        return layer.computeOutput(input, null);
+    }
+    
+    @Benchmark
+    public double[] getErrorPropagation() {
+        return layer.getErrorPropagation();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BlockKernels.BLOCK_ROWS)
+    public double[] computeBlockOutputs() {
+        return layer.computeBlockOutputs(block, BlockKernels.BLOCK_ROWS);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BlockKernels.BLOCK_ROWS)
+    public double[] getBlockErrorPropagation() {
+        return layer.getBlockErrorPropagation(BlockKernels.BLOCK_ROWS);
+    }
+}
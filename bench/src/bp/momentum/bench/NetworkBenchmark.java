@@ -0,0 +1,110 @@
+package bp.momentum.bench;
+
+import bp.momentum.entity.Network;
+import bp.momentum.log.AsyncLog;
+import bp.momentum.log.LogLevel;
+import bp.momentum.log.TextLog;
+import bp.momentum.log.TrainingLog;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the whole network training, parameterized by topology 
+ * (in the -t format) and by log sink - "none" trains with no log, "file" 
+ * formats every weight change to a temporary file like log.txt on the 
+ * training thread, "async" does the same on the background writer thread. 
+ * The file is truncated for every iteration to keep its size bounded.
+ * 
+ * @author pseckarova
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark {
+    
+    private static final int EPOCH_SAMPLES = 16;
+    
+    @Param({"2;3;3;1", "64;256;256;10", "784;1024;1024;10", "784;4096;4096;10"})
+    public String topology;
+    
+    @Param({"none", "file", "async"})
+    public String logSink;
+    
+    private Network network;
+    private double[][] inputs;
+    private double[][] outputs;
+    private TrainingLog log;
+    private File logFile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ArrayList<Integer> widths = BenchmarkData.parseTopology(topology);
+        int inputWidth = widths.get(0);
+        int outputWidth = widths.get(widths.size()-1);
+        Random random = new Random(42);
+        
+        network = new Network(0.7f, 0.8f, 0.5f, widths);
+        inputs = BenchmarkData.randomMatrix(random, EPOCH_SAMPLES, inputWidth);
+        outputs = BenchmarkData.randomMatrix(random, EPOCH_SAMPLES, outputWidth);
+    }
+    
+    @Setup(Level.Iteration)
+    public void openLog() throws IOException {
+        if (!"none".equals(logSink)) {
+            logFile = File.createTempFile("bp-momentum-bench", ".txt");
+            TextLog text = new TextLog(new PrintWriter(logFile, "UTF-8"), LogLevel.WEIGHT, 1);
+            log = "async".equals(logSink) ? new AsyncLog(text, AsyncLog.DEFAULT_CAPACITY) : text;
+        }
+    }
+    
+    @TearDown(Level.Iteration)
+    public void closeLog() {
+        if (log != null) {
+            log.close();
+            logFile.delete();
+        }
+    }
+
+    @Benchmark
+    public double[] run() {
+        return network.run(inputs[0], log);
+    }
+    
+    @Benchmark
+    public double trainStep() {
+        double error = network.train(inputs[0], outputs[0], log);
+        network.adjustWeights();
+        return error;
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double epoch() {
+        double error = 0.0;
+        for (int i = 0; i<inputs.length; i++) {
+            error += network.train(inputs[i], outputs[i], log);
+            network.adjustWeights();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,34 @@
+package bp.momentum.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event of one trained epoch.
+ * 
+ * @author pseckarova
+ */
+@Name("bp.momentum.Epoch")
+@Label("Training Epoch")
+@Category("BP Momentum")
+@Description("One pass through the training set")
+class EpochEvent extends jdk.jfr.Event {
+    @Label("Epoch")
+    int epoch;
+    
+    @Label("Error")
+    double error;
+    
+    @Label("Samples")
+    long samples;
+    
+    @Label("Samples per Second")
+    double samplesPerSecond;
+    
+    @Label("Training Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long trainingTime;
+}
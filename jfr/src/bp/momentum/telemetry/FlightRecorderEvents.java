@@ -0,0 +1,53 @@
+package bp.momentum.telemetry;
+
+import jdk.jfr.EventType;
+
+/**
+ * Commits the flight recorder events, loaded by FlightRecorder only on JVMs 
+ * having the flight recorder API. Events are not even created unless a 
+ * recording enables them.
+ * 
+ * @author pseckarova
+ */
+final class FlightRecorderEvents extends FlightRecorder {
+    
+    private static final EventType EPOCH = EventType.getEventType(EpochEvent.class);
+    private static final EventType LAYER_PHASES = EventType.getEventType(LayerPhaseEvent.class);
+
+    FlightRecorderEvents() {
+    }
+    
+    @Override
+    void epoch(int epoch, double error, long samples, long nanos) {
+        if (!EPOCH.isEnabled()) {
+            return;
+        }
+        EpochEvent event = new EpochEvent();
+        if (event.shouldCommit()) {
+            event.epoch = epoch;
+            event.error = error;
+            event.samples = samples;
+            event.samplesPerSecond = nanos == 0 ? 0.0 : samples * 1e9 / nanos;
+            event.trainingTime = nanos;
+            event.commit();
+        }
+    }
+    
+    @Override
+    boolean isLayerPhasesEnabled() {
+        return LAYER_PHASES.isEnabled();
+    }
+    
+    @Override
+    void layerPhases(int epoch, int layer, long forward, long backward, long update) {
+        LayerPhaseEvent event = new LayerPhaseEvent();
+        if (event.shouldCommit()) {
+            event.epoch = epoch;
+            event.layer = layer;
+            event.forward = forward;
+            event.backward = backward;
+            event.update = update;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package bp.momentum.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event of time spent by one layer in the phases of 
+ * training during one epoch, summed over all threads.
+ * 
+ * @author pseckarova
+ */
+@Name("bp.momentum.LayerPhases")
+@Label("Layer Phases")
+@Category("BP Momentum")
+@Description("Forward, backward and update time of a layer in one epoch")
+class LayerPhaseEvent extends jdk.jfr.Event {
+    @Label("Epoch")
+    int epoch;
+    
+    @Label("Layer")
+    int layer;
+    
+    @Label("Forward")
+    @Timespan(Timespan.NANOSECONDS)
+    long forward;
+    
+    @Label("Backward")
+    @Timespan(Timespan.NANOSECONDS)
+    long backward;
+    
+    @Label("Update")
+    @Timespan(Timespan.NANOSECONDS)
+    long update;
+}
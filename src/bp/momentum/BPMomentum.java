@@ -5,8 +5,31 @@
  */
 package bp.momentum;
 
+import bp.momentum.data.Dataset;
+import bp.momentum.data.DatasetFile;
+import bp.momentum.data.DatasetRange;
+import bp.momentum.distributed.DistributedTrainer;
+import bp.momentum.distributed.WorkerConnection;
 import bp.momentum.entity.Network;
+import bp.momentum.entity.NetworkFile;
+import bp.momentum.entity.NetworkSnapshot;
+import bp.momentum.entity.Precision;
+import bp.momentum.serving.LoadGenerator;
+import bp.momentum.streaming.SampleStream;
+import bp.momentum.streaming.WindowError;
+import bp.momentum.log.TrainingLog;
+import bp.momentum.telemetry.Telemetry;
+import bp.momentum.training.BatchTrainer;
+import bp.momentum.training.Checkpointer;
+import bp.momentum.training.ConvergenceMonitor;
+import bp.momentum.training.EpochPipeline;
+import bp.momentum.training.EpochTrainer;
+import bp.momentum.training.HogwildTrainer;
+import bp.momentum.training.HyperparameterSweep;
+import bp.momentum.training.SequentialTrainer;
+import bp.momentum.training.StopReason;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
@@ -47,11 +70,84 @@ public class BPMomentum {
             return null;
         }
         
-        conf.modifyFromArgs(argsList);
+        if (conf.modifyFromArgs(argsList) != OK) {
+            System.err.println("Unable to process the arguments! Please check "
+                    + "their values.");
+            return null;
+        }
+        
+        if(conf.getBatchSize() < 1 || conf.getThreads() < 1 || conf.getPrefetchChunk() < 1) {
+            System.err.println("Invalid batch size, thread count or prefetch chunk! All have "
+                    + "to be positive numbers.");
+            return null;
+        }
+        
+        if(conf.getCheckpointInterval() < 0) {
+            System.err.println("Invalid checkpoint interval! It has to be a positive number.");
+            return null;
+        }
         
-        if(!conf.isTestSetValid()) {
+        if(conf.getLogSampling() < 1) {
+            System.err.println("Invalid log sampling! It has to be a positive number.");
+            return null;
+        }
+        
+        if(conf.getHogwildThreads() < 0 
+                || (conf.getHogwildThreads() > 0 && conf.getBatchSize() > 1)) {
+            System.err.println("Invalid hogwild thread count! It has to be a positive "
+                    + "number and hogwild training can't be combined with batches.");
+            return null;
+        }
+        
+        if(conf.getCoordinatorPort() < 0 || conf.getCoordinatorPort() > 65535 
+                || conf.getDistributedWorkers() < 1 || conf.getSyncInterval() < 1) {
+            System.err.println("Invalid distributed training! The port has to be from 1 to 65535, "
+                    + "the count of workers and the sync interval positive numbers.");
+            return null;
+        }
+        
+        if(conf.getServePort() < 0 || conf.getServePort() > 65535 || conf.getServeMaxBatch() < 1 
+                || conf.getServeMaxWait() < 0 || conf.getLoadClients() < 1 || conf.getLoadRequests() < 1) {
+            System.err.println("Invalid inference server! The port has to be from 1 to 65535, the max batch, "
+                    + "count of clients and requests positive numbers and the max wait not negative.");
+            return null;
+        }
+        
+        if(conf.getStreamBuffer() < 1 || conf.getStreamWindow() < 1 || conf.getPublishInterval() < 1) {
+            System.err.println("Invalid stream training! The stream buffer, window and publish interval "
+                    + "have to be positive numbers.");
+            return null;
+        }
+        
+        if(conf.getMaxEpochs() < 0 || conf.getMaxTime() < 0 || conf.getPatience() < 0) {
+            System.err.println("Invalid stopping criteria! Maximal epochs, time and "
+                    + "patience have to be positive numbers.");
+            return null;
+        }
+        
+        if(conf.loadDataset() != OK) {
+            System.err.println("Unable to read the dataset file! Please check it's "
+                    + "accesibility and format.");
+            return null;
+        }
+        
+        // a stream needs only the layer widths, its samples come later
+        if(conf.getStreamSource() == null ? !conf.isTestSetValid() : conf.getNetworkTopology().size() < 2) {
             System.err.println("Invalid test set! Please chcek the input/output "
-                    + "vectors in configuration file.");
+                    + "vectors in configuration file or the dataset file.");
+            return null;
+        }
+        
+        if(conf.getLayerActivations() == null) {
+            System.err.println("Invalid activation functions! Please give one function "
+                    + "for all the layers or one for every layer.");
+            return null;
+        }
+        
+        if(conf.getValidationInterval() < 1 || conf.getValidationSplit() >= 1 
+                || (conf.getStreamSource() == null && conf.getValidationSize() >= conf.getDataset().size())) {
+            System.err.println("Invalid validation set! The split has to be lower than 1, "
+                    + "leaving some samples for training, and the interval positive.");
             return null;
         }
         
@@ -76,29 +172,303 @@ public class BPMomentum {
             return;
         }
         
-        Network nn = new Network(conf.getLearningRate(), conf.getMomentumRate(), 
-                conf.getLambda(), conf.getNetworkTopology());
+        if (conf.getExportFile() != null) {
+            exportDataset(conf.getDataset(), conf.getExportFile(), conf.getPrecision());
+            return;
+        }
+        
+        if (conf.getCoordinatorPort() > 0) {
+            try {
+                conf.createCoordinator().run(System.out);
+            } catch (IOException e) {
+                System.err.println("Unable to run the coordinator! " + e.getMessage());
+            }
+            return;
+        }
+        
+        if (conf.getServePort() > 0) {
+            serve(conf);
+            return;
+        }
+        
+        if (conf.getLoadAddress() != null) {
+            try {
+                LoadGenerator generator = conf.createLoadGenerator();
+                generator.run(System.out);
+            } catch (IllegalArgumentException | IOException e) {
+                System.err.println("Unable to benchmark the inference server! " + e.getMessage());
+            }
+            return;
+        }
+        
+        if (conf.isSweep()) {
+            HyperparameterSweep sweep = conf.createSweep();
+            if (sweep == null) {
+                System.err.println("Invalid sweep topology! Every topology has to match the test set "
+                        + "and the activation functions.");
+                return;
+            }
+            sweep.printTable(sweep.run(), System.out);
+            return;
+        }
         
-        ArrayList<ArrayList<Double>> inputs = conf.getInputs();
-        ArrayList<ArrayList<Double>> outputs = conf.getOutputs();
+        int j = 0;
+        Network nn;
+        if (conf.getResumeFile() != null) {
+            NetworkSnapshot snapshot;
+            try {
+                snapshot = NetworkFile.read(new File(conf.getResumeFile()));
+            } catch (IOException e) {
+                System.err.println("Unable to read the checkpoint file! " + e.getMessage());
+                return;
+            }
+            conf.setNetworkTopology(snapshot.getTopologyList());
+            if (conf.getStreamSource() == null && !conf.isTestSetValid()) {
+                System.err.println("The checkpoint file doesn't match the test set!");
+                return;
+            }
+            nn = new Network(snapshot, conf.getPrecision());
+            j = snapshot.getEpoch();
+        } else {
+            nn = new Network(conf.getLearningRate(), conf.getMomentumRate(), 
+                    conf.getLambda(), conf.getNetworkTopology(), conf.getLayerActivations(), 
+                    conf.getPrecision(), conf.getWeightInit(), conf.getWeightSeed());
+        }
+        nn.setParallelThreshold(conf.getParallelThreshold());
+        if (conf.getResumeFile() != null && nn.getOptimizer() != conf.getOptimizer()) {
+            System.err.println("The checkpoint was trained by " + nn.getOptimizer() + ", switching to " 
+                    + conf.getOptimizer() + " resets the state of the optimizer.");
+        }
+        // the same optimizer keeps the state restored from the checkpoint
+        nn.setOptimizer(conf.getOptimizer());
+        Telemetry telemetry = new Telemetry(conf.getTelemetryLevel());
+        nn.setTelemetry(telemetry);
+        telemetry.register();
+        
+        if (conf.getStreamSource() != null) {
+            stream(conf, nn, telemetry);
+            return;
+        }
+        
+        Dataset dataset = conf.getDataset();
+        int validationSize = conf.getValidationSize();
+        ConvergenceMonitor monitor = new ConvergenceMonitor(conf.getTargetError(), 
+                conf.getMaxEpochs(), conf.getMaxTime(), conf.getPatience());
+        if (validationSize > 0) {
+            monitor.setValidation(nn, new DatasetRange(dataset, dataset.size() - validationSize, 
+                    dataset.size()), conf.getValidationInterval());
+            dataset = new DatasetRange(dataset, 0, dataset.size() - validationSize);
+        }
+                
+        WorkerConnection connection = null;
+        if (conf.getCoordinatorAddress() != null) {
+            try {
+                connection = WorkerConnection.connect(conf.getCoordinatorAddress(), nn, dataset.size());
+            } catch (IOException e) {
+                System.err.println("Unable to join the distributed training! " + e.getMessage());
+                return;
+            }
+            dataset = connection.getShard(dataset);
+            System.out.println(String.format("Worker %d of %d, training %d samples.", 
+                    connection.getIndex(), connection.getWorkers(), dataset.size()));
+        }
                 
-        int i,j = 0;
         double error;
-        boolean stepByStep = conf.isStepByStep();
-        PrintWriter log = conf.createLogWriter();
+        TrainingLog log = conf.createTrainingLog();
+        // the workers end with the same network, only the first one saves it
+        Checkpointer checkpointer = conf.getCheckpointFile() == null 
+                || (connection != null && connection.getIndex() > 0) ? null 
+                : new Checkpointer(new File(conf.getCheckpointFile()));
+        int interval = conf.getCheckpointInterval();
+        
+        EpochTrainer trainer = createTrainer(conf, nn, log);
+        if (connection != null) {
+            trainer = new DistributedTrainer(trainer, connection, conf.getBatchSize());
+        }
+        EpochPipeline pipeline = new EpochPipeline(dataset, conf.getPrefetchChunk(), 
+                conf.getShuffleSeed(), conf.isShuffle());
         
         do { 
-            log.append("\n\n iteration no."+ (++j));
-            error = 0.0;
-            i = 0;
-            for (ArrayList<Double> in : inputs) {
-                log.append("\n\n===== INPUT no."+i+" =====\n");
-                error += nn.train(in,outputs.get(i++),log);
-                nn.adjustWeights();
+            log.startEpoch(++j);
+            telemetry.startEpoch();
+            error = trainer.finishEpoch(pipeline.trainEpoch(trainer));
+            telemetry.recordDataWait(pipeline.getLastWaitNanos());
+            telemetry.endEpoch(j, error, dataset.size());
+            log.endEpoch(j, error);
+            if (checkpointer != null && interval > 0 && j % interval == 0) {
+                checkpointer.checkpoint(nn, j);
+            }
+            if (trainer.isStopped()) {
+                monitor.stop(StopReason.COORDINATOR);
             }
-        } while (error > 0.01);
+        } while (monitor.update(j, error) == null);
+        trainer.shutdown();
+        pipeline.shutdown();
+        j = monitor.restoreBest();
+        monitor.printSummary(System.out);
+        trainer.printStatistics(System.out);
+        telemetry.printSummary(System.out);
+        telemetry.close();
+        if (checkpointer != null) {
+            checkpointer.close(nn, j);
+        }
         log.close();
-        //nn.run(inputs.get(0));
+    }
+    
+    private static EpochTrainer createTrainer(Configuration conf, Network nn, TrainingLog log) {
+        if (conf.getHogwildThreads() > 0) {
+            return new HogwildTrainer(nn, conf.getHogwildThreads());
+        } else if (conf.getBatchSize() > 1) {
+            return new BatchTrainer(nn, conf.getBatchSize(), conf.getThreads());
+        } else {
+            return new SequentialTrainer(nn, log);
+        }
+    }
+    
+    /**
+     * Trains the network online from the configured sample stream, every 
+     * sample (or batch, taking only the samples already read) as soon as it 
+     * arrives, until the stream ends or the time limit passes. Every publish 
+     * interval samples the weights are written to the checkpoint file and 
+     * the moving window error is reported, a publish interval is logged as 
+     * an epoch.
+     * 
+     * @param conf The configuration.
+     * @param nn A network to be trained.
+     * @param telemetry The telemetry of the network.
+     */
+    private static void stream(Configuration conf, Network nn, Telemetry telemetry) {
+        int[] topology = nn.getTopology();
+        SampleStream stream;
+        try {
+            stream = new SampleStream(conf.getStreamSource(), topology[0], 
+                    topology[topology.length-1], conf.getStreamBuffer());
+        } catch (IOException e) {
+            System.err.println("Unable to open the sample stream! " + e.getMessage());
+            return;
+        }
+        TrainingLog log = conf.createTrainingLog();
+        Checkpointer checkpointer = conf.getCheckpointFile() == null ? null 
+                : new Checkpointer(new File(conf.getCheckpointFile()));
+        EpochTrainer trainer = createTrainer(conf, nn, log);
+        SampleStream.Chunk chunk = stream.createChunk(conf.getBatchSize());
+        WindowError window = new WindowError(conf.getStreamWindow());
+        long maxNanos = conf.getMaxTime() * 1_000_000_000L;
+        long start = System.nanoTime();
+        long periodStart = start;
+        long samples = 0;
+        long periodSamples = 0;
+        long waitNanos = 0;
+        int published = 0;
+        
+        log.startEpoch(1);
+        telemetry.startEpoch();
+        try {
+            while (maxNanos == 0 || System.nanoTime() - start < maxNanos) {
+                long waitStart = System.nanoTime();
+                int count = stream.next(chunk, 100);
+                waitNanos += System.nanoTime() - waitStart;
+                if (count < 0) {
+                    break;
+                }
+                if (count == 0) {
+                    continue;
+                }
+                double error = trainer.trainEpoch(chunk);
+                stream.release(chunk);
+                window.add(error / count, count);
+                samples += count;
+                periodSamples += count;
+                
+                if (periodSamples >= conf.getPublishInterval()) {
+                    published++;
+                    telemetry.recordDataWait(waitNanos);
+                    telemetry.endEpoch(published, window.getSum(), periodSamples);
+                    log.endEpoch(published, window.getSum());
+                    if (checkpointer != null) {
+                        checkpointer.checkpoint(nn, published);
+                    }
+                    long now = System.nanoTime();
+                    System.out.println(String.format("samples: %d, window error: %s (%.6f per sample), "
+                            + "%.0f samples/s, stream waited %.3f s for the training", 
+                            samples, window.getSum(), window.getMean(), 
+                            periodSamples * 1e9 / (now - periodStart), stream.getBlockedNanos() / 1e9));
+                    periodStart = now;
+                    periodSamples = 0;
+                    waitNanos = 0;
+                    log.startEpoch(published + 1);
+                    telemetry.startEpoch();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        trainer.shutdown();
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // the source is already closed
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Stream training finished: %d samples in %.3f s (%.0f samples/s), "
+                + "window error: %s (%.6f per sample), stream waited %.3f s for the training, "
+                + "%d lines skipped.", samples, seconds, samples / seconds, window.getSum(), 
+                window.getMean(), stream.getBlockedNanos() / 1e9, stream.getSkipped()));
+        trainer.printStatistics(System.out);
+        telemetry.printSummary(System.out);
+        telemetry.close();
+        if (checkpointer != null) {
+            checkpointer.close(nn, published);
+        }
+        log.close();
+    }
+    
+    /**
+     * Serves predictions of the network read from the checkpoint file given 
+     * by -r= (or the checkpoint file the training saves to) until the 
+     * program is stopped.
+     * 
+     * @param conf The configuration.
+     */
+    private static void serve(Configuration conf) {
+        String filename = conf.getResumeFile() != null ? conf.getResumeFile() : conf.getCheckpointFile();
+        if (filename == null) {
+            System.err.println("Nothing to serve! Please give the trained network by -r=<file>.");
+            return;
+        }
+        NetworkSnapshot snapshot;
+        try {
+            snapshot = NetworkFile.read(new File(filename));
+        } catch (IOException e) {
+            System.err.println("Unable to read the network file! " + e.getMessage());
+            return;
+        }
+        try {
+            conf.createInferenceServer(new Network(snapshot).freeze()).run(System.out);
+        } catch (IOException e) {
+            System.err.println("Unable to run the inference server! " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Writes the training set to a packed binary dataset file, of float32 
+     * values if the file name ends with .f32 or the precision is float, 
+     * otherwise of float64 values.
+     * 
+     * @param dataset The training set.
+     * @param filename A name of the file to be written.
+     * @param precision The precision of the network.
+     */
+    private static void exportDataset(Dataset dataset, String filename, Precision precision) {
+        int valueSize = filename.toLowerCase().endsWith(".f32") ? 4 : precision.getValueSize();
+        try {
+            DatasetFile.writeBinary(dataset, new File(filename), valueSize);
+            System.out.println(String.format("%d samples written to %s.", 
+                    dataset.size(), filename));
+        } catch (IOException e) {
+            System.err.println("Unable to write the dataset file! " + e.getMessage());
+        }
     }
     
     public static Double[] getDoubleArrayFromList(List<Double> doubles) {
@@ -109,6 +479,24 @@ public class BPMomentum {
         }
         return array;
     }
+    
+    public static double[] getPrimitiveArrayFromList(List<Double> doubles) {
+        double[] array = new double[doubles.size()];
+        int i = 0;
+        for (Double d : doubles) {
+            array[i++] = d;
+        }
+        return array;
+    }
+    
+    public static double[][] getPrimitiveMatrixFromList(List<? extends List<Double>> rows) {
+        double[][] matrix = new double[rows.size()][];
+        int i = 0;
+        for (List<Double> row : rows) {
+            matrix[i++] = getPrimitiveArrayFromList(row);
+        }
+        return matrix;
+    }
 
     private static void generateConfigFile() {
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
@@ -121,6 +509,7 @@ public class BPMomentum {
                         "lambda\t\t0.5\n"
                         + "learning rate (mi)\t0.7\n"
                         + "momentum rate (alpha)\t0.8\n"
+                        + "batch size\t1\n"
                         + "\n"
                         + "layer widths: (input;first hidden;second hidden;...;output)\n"
                         + "2;3;3;1\n"
@@ -152,25 +541,201 @@ public class BPMomentum {
                         + "Program reads configuration from given file (the values given by arguments \n"
                         + "then override the values from the file), creates a neural network accordingly\n"
                         + "and trains it using BGD and momentum in backpropagation. The log of training\n"
-                        + "is written to a log.txt file. Arguments can be given in any order.\n\n"
+                        + "is written to a log.txt file by a background thread. Arguments can be given\n"
+                        + "in any order.\n\n"
+                        
+                        + "Optional configuration file lines (before the layer widths):\n"
+                        + "   batch size <value>  ...count of samples per weight adjustment (default 1)\n"
+                        + "   threads <value>     ...threads computing gradients of a batch\n"
+                        + "                          (default count of available processors)\n"
+                        + "   hogwild threads <value> ...count of threads for lock-free asynchronous\n"
+                        + "                          SGD (default 0 - not used)\n"
+                        + "   parallel threshold <value> ...count of layer weights over which neurons\n"
+                        + "                          of the layer are computed in parallel (default 65536)\n"
+                        + "   log level <value>   ...off, epoch (error summary of every epoch, default),\n"
+                        + "                          sample (outputs of every sample) or weight (every\n"
+                        + "                          weight change of every sample)\n"
+                        + "   log sampling <value> ...only every <value>-th epoch is logged (default 1)\n"
+                        + "   activation <values> ...activation function of all the layers, or of every\n"
+                        + "                          layer separated by ';': logistic (default),\n"
+                        + "                          fast-logistic (table interpolated, error below\n"
+                        + "                          7.4e-7), tanh, relu, leaky-relu or linear\n"
+                        + "   shuffle <on|off>    ...the order of samples is shuffled every epoch\n"
+                        + "                          (default on)\n"
+                        + "   shuffle seed <value> ...a seed of the shuffling (default 1)\n"
+                        + "   prefetch chunk <value> ...count of samples loaded by a background thread\n"
+                        + "                          while the previous ones are trained (default 4096)\n"
+                        + "   sweep learning rate <values> ...values separated by ';', or ranges\n"
+                        + "                          from:to:step - instead of training one network all\n"
+                        + "                          the combinations of swept values are trained on\n"
+                        + "                          <threads> threads by successive halving (the worse\n"
+                        + "                          half stopped after every round of doubled epochs,\n"
+                        + "                          up to max epochs, default 100000) and ranked\n"
+                        + "   sweep momentum rate <values>, sweep lambda <values> ...as above\n"
+                        + "   sweep topology <topologies> ...topologies as layer widths, separated by '|'\n"
+                        + "   weight seed <value> ...a seed of the initial weights, the same seed gives\n"
+                        + "                          the same network for any count of threads\n"
+                        + "                          (default 0 - a different seed every run)\n"
+                        + "   weight init <value> ...gaussian (default, deviation 1/sqrt(inputs)),\n"
+                        + "                          xavier (sqrt(2/(inputs+neurons))) or he\n"
+                        + "                          (sqrt(2/inputs)) initial weights\n"
+                        + "   optimizer <value>   ...momentum (default), nesterov, rmsprop or adam -\n"
+                        + "                          the update rule of the weights, the momentum rate\n"
+                        + "                          is the momentum of all of them (beta1 of adam);\n"
+                        + "                          rmsprop and adam need learning rates of about\n"
+                        + "                          0.001 to 0.05\n"
+                        + "   coordinator port <value> ...this process coordinates a distributed training\n"
+                        + "                          on given port instead of training (see -coordinator)\n"
+                        + "   coordinator address <host:port> ...this process trains a shard of the\n"
+                        + "                          training set as a worker of the coordinator\n"
+                        + "   distributed workers <value> ...count of workers the coordinator waits for\n"
+                        + "                          (default 2)\n"
+                        + "   sync mode <value>   ...sync (default) - every <sync interval> batches the\n"
+                        + "                          workers wait for each other and continue from the\n"
+                        + "                          average of their weights, or async - the workers\n"
+                        + "                          push their changes to the coordinator as a\n"
+                        + "                          parameter server without waiting\n"
+                        + "   sync interval <value> ...count of batches between synchronizations\n"
+                        + "                          (default 100)\n"
+                        + "   sync momentum <on|off> ...the momentum terms are synchronized too\n"
+                        + "                          (default off - every worker keeps its own)\n"
+                        + "   serve port <value>  ...this process serves predictions of the network\n"
+                        + "                          of the checkpoint file (-r or -c) on given port\n"
+                        + "                          instead of training, one line of input values\n"
+                        + "                          separated by ';' is answered by one line of output\n"
+                        + "                          values, concurrent requests are computed in batches\n"
+                        + "   serve max batch <value> ...max count of requests of one batch (default 32)\n"
+                        + "   serve max wait <value> ...max microseconds a request waits for others to\n"
+                        + "                          be batched with (default 200), only under load\n"
+                        + "   load address <host:port> ...this process benchmarks the inference server\n"
+                        + "                          by sending it the inputs of the training set\n"
+                        + "   load clients <value> ...count of concurrent clients (default 8)\n"
+                        + "   load requests <value> ...count of requests of every client (default 10000)\n"
+                        + "   stream source <value> ...the network is trained online from a stream of\n"
+                        + "                          samples instead of the training set - \"-\" (standard\n"
+                        + "                          input), tcp:<host:port> or a file followed for\n"
+                        + "                          appended lines; a line is the input values followed\n"
+                        + "                          by the output values, separated by ';'\n"
+                        + "   stream buffer <value> ...count of samples read ahead of the training\n"
+                        + "                          (default 1024), when full the stream isn't read\n"
+                        + "   stream window <value> ...count of the last samples of the reported moving\n"
+                        + "                          error (default 1000)\n"
+                        + "   publish interval <value> ...count of samples between reports and saves of\n"
+                        + "                          the network to the checkpoint file (default 10000)\n"
+                        + "   precision <value>   ...double (default) or float - weights, momentum\n"
+                        + "                          terms and samples in memory are float32 values,\n"
+                        + "                          sums are still computed in double\n"
+                        + "   telemetry <value>   ...off (default), epoch (error, throughput and\n"
+                        + "                          allocation rate of every epoch) or phase (also time\n"
+                        + "                          of forward, backward and update of every layer),\n"
+                        + "                          exposed by MBean bp.momentum:type=Training and\n"
+                        + "                          as flight recorder events\n"
+                        + "   checkpoint file <name> ...binary file the trained network is saved to\n"
+                        + "   checkpoint interval <value> ...the network is also saved every <value>\n"
+                        + "                          epochs by a background thread (default 0 - only\n"
+                        + "                          at the end of training)\n"
+                        + "   dataset file <name> ...the training set is read from given file instead\n"
+                        + "                          of the inputs/outputs sections - .csv files with\n"
+                        + "                          one sample per line (input values followed by\n"
+                        + "                          output values), other files in the packed binary\n"
+                        + "                          format, which is memory mapped (see -x)\n"
+                        + "   Sparse inputs are given as <index>:<value> pairs of the non-zero values\n"
+                        + "                          (indexes from 0, increasing), e.g. 3:0.5;17:1 in\n"
+                        + "                          the inputs section or 3:0.5;17:1;0;1 in a .csv\n"
+                        + "                          file; the first layer then computes and updates\n"
+                        + "                          only the weights of the non-zero inputs\n"
+                        + "   target error <value> ...the training stops when the error of an epoch\n"
+                        + "                          is at most <value> (default 0.01)\n"
+                        + "   max epochs <value>  ...the training stops after <value> epochs (default\n"
+                        + "                          0 - no limit)\n"
+                        + "   max time <value>    ...the training stops after <value> seconds (default\n"
+                        + "                          0 - no limit)\n"
+                        + "   patience <value>    ...the training stops when the error didn't improve\n"
+                        + "                          for <value> epochs (default 0 - no limit)\n"
+                        + "   validation split <value> ...the part of samples at the end of the training\n"
+                        + "                          set held out for validation (default 0 - none),\n"
+                        + "                          patience then applies to the validation error and\n"
+                        + "                          the weights of the best validation error are kept\n"
+                        + "   validation interval <value> ...the validation set is evaluated every\n"
+                        + "                          <value> epochs (default 1)\n\n"
                         
                         + "The program can be run as:\n"
                         + "   BPMomentum -h\n"
                         + "      or\n"
                         + "   BPMomentum -f=<config_file_name> [-m=<value>]  [-l=<value>] [-a=<value>]\n"
-                        + "[-t=<values>] [-s]\n\n"
+                        + "[-t=<values>] [-b=<value>] [-p=<value>] [-w=<value>] [-n=<value>]\n"
+                        + "[-v=<level>] [-e=<value>] [-c=<file>] [-i=<value>] [-r=<file>] [-d=<file>]\n"
+                        + "[-x=<file>] [-g=<value>] [-k=<value>] [-u=<value>] [-j=<value>] [-q=<value>]\n"
+                        + "[-o=<value>] [-y=<level>] [-z=<values>] [-precision=<value>] [-sweep-<x>=<values>]\n"
+                        + "[-seed=<value>] [-init=<value>] [-optimizer=<value>] [-coordinator=<port>]\n"
+                        + "[-worker=<host:port>] [-workers=<value>] [-sync=<mode>] [-sync-interval=<value>]\n"
+                        + "[-sync-momentum=<on|off>] [-serve=<port>] [-serve-batch=<value>]\n"
+                        + "[-serve-wait=<value>] [-load=<host:port>] [-load-clients=<value>]\n"
+                        + "[-load-requests=<value>] [-stream=<source>] [-stream-buffer=<value>]\n"
+                        + "[-stream-window=<value>] [-publish=<value>] [-s]\n\n"
                         
                         + "where:\n"
                         + "   -h ...prints this help message\n"
                         + "   -s ...step-by-step mode of the training - the log information is written\n"
                         + "         to output and the training pauses after every iteration through\n"
-                        + "         the whole training set\n"
+                        + "         the whole training set, every weight change is logged\n"
                         + "   -m=<value>  ...given double <value> is set as learning rate(mi)\n"
                         + "                  best from interval <0.1,0.9>\n"
                         + "   -a=<value>  ...given double <value> is set as momentum rate(alpha)\n"
                         + "                  best from interval <0.5,0.95>\n"
                         + "   -l=<value>  ...given double <value> is set as lambda for activation function\n"
                         + "   -t=<values> ...network topology configuration set by layer widths, formated\n"
-                        + "                  as -t=input;first hidden;second hidden;...;output\n");
+                        + "                  as -t=input;first hidden;second hidden;...;output\n"
+                        + "   -b=<value>  ...given integer <value> is set as batch size, samples of\n"
+                        + "                  a batch are processed in parallel and weights get\n"
+                        + "                  adjusted once per batch\n"
+                        + "   -p=<value>  ...given integer <value> is set as count of threads\n"
+                        + "   -w=<value>  ...trains by lock-free asynchronous SGD (Hogwild) using\n"
+                        + "                  given integer <value> of worker threads, each with its\n"
+                        + "                  own shard of the training set and own momentum\n"
+                        + "   -n=<value>  ...given integer <value> is set as parallel threshold, layers\n"
+                        + "                  with more weights compute their neurons in parallel\n"
+                        + "   -v=<level>  ...given <level> is set as log level (off, epoch, sample, weight)\n"
+                        + "   -e=<value>  ...only every <value>-th epoch is logged\n"
+                        + "   -c=<file>   ...the trained network is saved to given binary <file>\n"
+                        + "   -i=<value>  ...the network is also saved every <value> epochs\n"
+                        + "   -r=<file>   ...the training resumes from given checkpoint <file> with\n"
+                        + "                  its topology, parameters, weights and momentum\n"
+                        + "   -d=<file>   ...the training set is read from given dataset <file>\n"
+                        + "   -x=<file>   ...the training set is written to given packed binary <file>\n"
+                        + "                  (float32 values if the name ends with .f32, otherwise\n"
+                        + "                  float64) and the program exits\n"
+                        + "   -g=<value>  ...given double <value> is set as target error\n"
+                        + "   -k=<value>  ...given integer <value> is set as maximal count of epochs\n"
+                        + "   -u=<value>  ...given integer <value> is set as time limit in seconds\n"
+                        + "   -j=<value>  ...given integer <value> is set as patience in epochs\n"
+                        + "   -q=<value>  ...given double <value> is set as validation split\n"
+                        + "   -o=<value>  ...given integer <value> is set as validation interval\n"
+                        + "   -y=<level>  ...given <level> is set as telemetry level (off, epoch, phase)\n"
+                        + "   -z=<values> ...activation functions, formated as -z=first hidden;...;output\n"
+                        + "                  or one function for all the layers\n"
+                        + "   -precision=<value> ...float stores weights, momentum terms and samples\n"
+                        + "                  as float32 values, double (default) as float64 values\n"
+                        + "   -seed=<value> ...given integer <value> is set as seed of the initial weights\n"
+                        + "   -init=<value> ...given scheme (gaussian, xavier, he) initializes the weights\n"
+                        + "   -optimizer=<value> ...given update rule (momentum, nesterov, rmsprop, adam)\n"
+                        + "                  is used\n"
+                        + "   -coordinator=<port> ...coordinates a distributed training of -workers=<value>\n"
+                        + "                  workers on given <port>, see the coordinator lines above\n"
+                        + "   -worker=<host:port> ...trains as a worker of the coordinator at given address\n"
+                        + "   -sync=<mode> -sync-interval=<value> -sync-momentum=<on|off> ...synchronization\n"
+                        + "                  of the workers, given to the coordinator\n"
+                        + "   -serve=<port> -serve-batch=<value> -serve-wait=<value> ...serves the network\n"
+                        + "                  of -r=<file> on given <port>, see the serve lines above\n"
+                        + "   -load=<host:port> -load-clients=<value> -load-requests=<value> ...benchmarks\n"
+                        + "                  the inference server at given address\n"
+                        + "   -stream=<source> -stream-buffer=<value> -stream-window=<value> -publish=<value>\n"
+                        + "                  ...trains online from given source, see the stream lines\n"
+                        + "                  above, until it ends or the time limit -u passes\n"
+                        + "   -sweep-m=<values> -sweep-a=<values> -sweep-l=<values> -sweep-t=<topologies>\n"
+                        + "                  ...a hyperparameter sweep of learning rates, momentum rates,\n"
+                        + "                  lambdas and topologies, see sweep lines above\n\n"
+                        + "   Vector kernels are used when java is run with --add-modules jdk.incubator.vector,\n"
+                        + "   -Dbp.momentum.kernels=scalar or vector selects them explicitly.\n");
     }
 }
@@ -0,0 +1,224 @@
+package bp.momentum;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary cache of a parsed configuration file, written next to it as
+ * &lt;file&gt;.cache. The cache holds the configuration lines without the
+ * sample vectors and the already parsed vectors, so a configuration with
+ * many samples doesn't need to be parsed again until it is changed. All the
+ * values are little endian:
+ * <pre>
+ * int     magic "BPMC"
+ * int     format version
+ * long    length of the configuration file
+ * long    last modification time of the configuration file
+ * int     length of the configuration lines in bytes
+ * byte[]  configuration lines without samples, UTF-8
+ * for inputs and outputs:
+ *   int   count of vectors
+ *   int[] widths of the vectors
+ *   double[] values
+ * </pre>
+ *
+ * @author pseckarova
+ */
+final class ConfigCache {
+
+    public static final int MAGIC = 0x434D5042;
+    public static final int VERSION = 1;
+
+    /**
+     * A count of characters of sample vectors over which the cache is written.
+     */
+    public static final int THRESHOLD = 1 << 20;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final String header;
+    private final List<double[]> inputs;
+    private final List<double[]> outputs;
+
+    private ConfigCache(String header, List<double[]> inputs, List<double[]> outputs) {
+        this.header = header;
+        this.inputs = inputs;
+        this.outputs = outputs;
+    }
+
+    /**
+     * @param source A configuration file.
+     * @return the cache file of the configuration file.
+     */
+    static File fileFor(File source) {
+        return new File(source.getPath() + ".cache");
+    }
+
+    /**
+     * Reads the cache of the configuration file, if it is up to date.
+     *
+     * @param source A configuration file.
+     * @return the cached configuration, or null if there is no cache or the
+     * configuration file was changed since it was written.
+     */
+    static ConfigCache read(File source) {
+        File file = fileFor(source);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            fill(channel, buffer, 28);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != source.length()
+                    || buffer.getLong() != source.lastModified()) {
+                return null;
+            }
+            byte[] bytes = new byte[buffer.getInt()];
+            for (int i = 0; i<bytes.length; ) {
+                fill(channel, buffer, 1);
+                int count = Math.min(bytes.length - i, buffer.remaining());
+                buffer.get(bytes, i, count);
+                i += count;
+            }
+            String header = new String(bytes, StandardCharsets.UTF_8);
+            List<double[]> inputs = readVectors(channel, buffer);
+            List<double[]> outputs = readVectors(channel, buffer);
+            return new ConfigCache(header, inputs, outputs);
+        } catch (IOException | RuntimeException e) {
+            // a broken cache is only a missed chance to skip parsing
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache of the configuration file. The cache is written to
+     * a temporary file first and then moved over the previous one.
+     *
+     * @param source A configuration file.
+     * @param length The length of the file when it was read.
+     * @param lastModified The modification time of the file when it was read.
+     * @param header The configuration lines without samples.
+     * @param inputs Input vectors.
+     * @param outputs Expected output vectors.
+     * @throws IOException if the cache can't be written.
+     */
+    static void write(File source, long length, long lastModified, String header,
+            List<double[]> inputs, List<double[]> outputs) throws IOException {
+        Path target = fileFor(source).toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] bytes = header.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(length).putLong(lastModified);
+            buffer.putInt(bytes.length);
+            for (int i = 0; i<bytes.length; ) {
+                int count = Math.min(bytes.length - i, buffer.remaining());
+                buffer.put(bytes, i, count);
+                i += count;
+                drain(channel, buffer, 1);
+            }
+            writeVectors(channel, buffer, inputs);
+            writeVectors(channel, buffer, outputs);
+            drain(channel, buffer, BUFFER_SIZE);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeVectors(FileChannel channel, ByteBuffer buffer, List<double[]> vectors) throws IOException {
+        drain(channel, buffer, 4);
+        buffer.putInt(vectors.size());
+        for (double[] vector : vectors) {
+            drain(channel, buffer, 4);
+            buffer.putInt(vector.length);
+        }
+        for (double[] vector : vectors) {
+            int i = 0;
+            while (i < vector.length) {
+                drain(channel, buffer, 8);
+                int count = Math.min(vector.length - i, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put(vector, i, count);
+                buffer.position(buffer.position() + 8*count);
+                i += count;
+            }
+        }
+    }
+
+    private static List<double[]> readVectors(FileChannel channel, ByteBuffer buffer) throws IOException {
+        fill(channel, buffer, 4);
+        int size = buffer.getInt();
+        List<double[]> vectors = new ArrayList<>(size);
+        for (int v = 0; v<size; v++) {
+            fill(channel, buffer, 4);
+            vectors.add(new double[buffer.getInt()]);
+        }
+        for (double[] vector : vectors) {
+            int i = 0;
+            while (i < vector.length) {
+                fill(channel, buffer, 8);
+                int count = Math.min(vector.length - i, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().get(vector, i, count);
+                buffer.position(buffer.position() + 8*count);
+                i += count;
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Writes the buffer out if there is less than the given count of bytes
+     * free in it.
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads more of the file into the buffer if there is less than the given
+     * count of bytes left in it.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of cache file.");
+            }
+        }
+        buffer.flip();
+    }
+
+    String getHeader() {
+        return header;
+    }
+
+    List<double[]> getInputs() {
+        return inputs;
+    }
+
+    List<double[]> getOutputs() {
+        return outputs;
+    }
+}
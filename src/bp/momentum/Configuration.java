@@ -5,12 +5,42 @@
  */
 package bp.momentum;
 
-import java.io.BufferedReader;
+import bp.momentum.data.ArrayDataset;
+import bp.momentum.data.Dataset;
+import bp.momentum.data.DatasetFile;
+import bp.momentum.data.FloatArrayDataset;
+import bp.momentum.data.SampleScanner;
+import bp.momentum.data.SparseArrayDataset;
+import bp.momentum.data.SparseVector;
+import bp.momentum.distributed.Coordinator;
+import bp.momentum.distributed.SyncMode;
+import bp.momentum.entity.Activation;
+import bp.momentum.entity.FrozenNetwork;
+import bp.momentum.entity.Optimizer;
+import bp.momentum.entity.Precision;
+import bp.momentum.entity.WeightInit;
+import bp.momentum.log.AsyncLog;
+import bp.momentum.log.LogLevel;
+import bp.momentum.log.TextLog;
+import bp.momentum.log.TrainingLog;
+import bp.momentum.serving.InferenceServer;
+import bp.momentum.serving.LoadGenerator;
+import bp.momentum.telemetry.TelemetryLevel;
+import bp.momentum.training.EpochPipeline;
+import bp.momentum.training.HyperparameterSweep;
+import bp.momentum.training.SweepCandidate;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,96 +56,456 @@ public class Configuration {
     private float learningRate;
     private float momentumRate;
     private boolean stepByStep;
+    private int batchSize;
+    private int threads;
+    private int hogwildThreads;
+    private int parallelThreshold;
+    private LogLevel logLevel;
+    private int logSampling;
+    private String checkpointFile;
+    private int checkpointInterval;
+    private String resumeFile;
+    private String datasetFile;
+    private String exportFile;
+    private float targetError;
+    private int maxEpochs;
+    private int maxTime;
+    private int patience;
+    private float validationSplit;
+    private int validationInterval;
+    private TelemetryLevel telemetryLevel;
+    private Activation[] activations;
+    private Precision precision;
+    private boolean shuffle;
+    private long shuffleSeed;
+    private long weightSeed;
+    private WeightInit weightInit;
+    private Optimizer optimizer;
+    private int prefetchChunk;
+    private int coordinatorPort;
+    private String coordinatorAddress;
+    private int distributedWorkers;
+    private SyncMode syncMode;
+    private int syncInterval;
+    private boolean syncMomentum;
+    private int servePort;
+    private int serveMaxBatch;
+    private int serveMaxWait;
+    private String loadAddress;
+    private int loadClients;
+    private int loadRequests;
+    private String streamSource;
+    private int streamBuffer;
+    private int streamWindow;
+    private int publishInterval;
+    private ArrayList<Float> sweepLearningRates;
+    private ArrayList<Float> sweepMomentumRates;
+    private ArrayList<Float> sweepLambdas;
+    private ArrayList<ArrayList<Integer>> sweepTopologies;
+    private Dataset dataset;
     private ArrayList<Integer> networkTopology;
-    private ArrayList<ArrayList<Double>> inputs;
-    private ArrayList<ArrayList<Double>> outputs;
+    private ArrayList<double[]> inputs;
+    private ArrayList<SparseVector> sparseInputs;
+    private ArrayList<double[]> outputs;
 
     public Configuration() {
         this.lambda = (float)0.5;
         this.learningRate = (float)0.7;
         this.momentumRate = (float)0.7;
         this.stepByStep = false;
+        this.batchSize = 1;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.hogwildThreads = 0;
+        this.parallelThreshold = 65536;
+        this.logLevel = LogLevel.EPOCH;
+        this.logSampling = 1;
+        this.checkpointFile = null;
+        this.checkpointInterval = 0;
+        this.resumeFile = null;
+        this.datasetFile = null;
+        this.exportFile = null;
+        this.targetError = (float)0.01;
+        this.maxEpochs = 0;
+        this.maxTime = 0;
+        this.patience = 0;
+        this.validationSplit = 0;
+        this.validationInterval = 1;
+        this.telemetryLevel = TelemetryLevel.OFF;
+        this.activations = new Activation[] {Activation.LOGISTIC};
+        this.precision = Precision.DOUBLE;
+        this.shuffle = true;
+        this.shuffleSeed = 1;
+        this.weightSeed = 0;
+        this.weightInit = WeightInit.GAUSSIAN;
+        this.optimizer = Optimizer.MOMENTUM;
+        this.prefetchChunk = EpochPipeline.DEFAULT_CHUNK_SIZE;
+        this.coordinatorPort = 0;
+        this.coordinatorAddress = null;
+        this.distributedWorkers = 2;
+        this.syncMode = SyncMode.SYNC;
+        this.syncInterval = 100;
+        this.syncMomentum = false;
+        this.servePort = 0;
+        this.serveMaxBatch = 32;
+        this.serveMaxWait = 200;
+        this.loadAddress = null;
+        this.loadClients = 8;
+        this.loadRequests = 10000;
+        this.streamSource = null;
+        this.streamBuffer = 1024;
+        this.streamWindow = 1000;
+        this.publishInterval = 10000;
+        this.sweepLearningRates = new ArrayList<>();
+        this.sweepMomentumRates = new ArrayList<>();
+        this.sweepLambdas = new ArrayList<>();
+        this.sweepTopologies = new ArrayList<>();
         networkTopology = new ArrayList<>();
         inputs = new ArrayList<>();
+        sparseInputs = new ArrayList<>();
         outputs = new ArrayList<>();
     }
     
+    /**
+     * Parses the configuration file. If a cache of the file written by 
+     * a previous run is up to date, the sample vectors are read from the 
+     * cache instead of parsing them, otherwise a cache is written when the 
+     * file has many dense samples (see ConfigCache).
+     * 
+     * @param filename A name of the configuration file.
+     * @return OK, or FAILED if the file can't be read or is not valid.
+     */
     public int parseConfigFromFile(String filename) {
         File file = new File(filename);
-        BufferedReader reader = null;
-        ParseState state = ParseState.START;
 
         try {
-            reader = new BufferedReader(new FileReader(file));
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                switch(state) {
-                    case START:
-                        if (line.contains("lambda")) {
-                            lambda = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
-                        } else if (line.contains("learning rate")) {
-                            learningRate = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
-                        } else if (line.contains("momentum rate")) {
-                            momentumRate = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
-                        } else if (line.contains("layer widths")) {
-                            state = ParseState.TOPOLOGY;
-                        }  else if (line.contains("input")) {
-                            state = ParseState.INPUTS;
-                        } else if (line.contains("output")) {
-                            state = ParseState.OUTPUTS;
-                        }
-                        break;
-                        
-                    case TOPOLOGY:
-                        if (line.contains(";")) {
-                            networkTopology = parseIntArraylistFromString(line, ";");
-                        } else if (line.contains("input")) {
-                            state = ParseState.INPUTS;
-                        } else if (line.contains("output")) {
-                            state = ParseState.OUTPUTS;
-                        }
-                        break;
-                        
-                    case INPUTS:
-                        if (line.matches(".*\\d+.*")) {
-                            inputs.add(parseDoubleArraylistFromString(line, ";"));
-                        } else if (line.contains("layer widths")) {
-                            state = ParseState.TOPOLOGY;
-                        } else if (line.contains("output")) {
-                            state = ParseState.OUTPUTS;
-                        }
-                        break; 
+            ConfigCache cache = ConfigCache.read(file);
+            if (cache != null) {
+                char[] header = cache.getHeader().toCharArray();
+                if (parseConfig(header, header.length, new StringBuilder()) != BPMomentum.OK) {
+                    return BPMomentum.FAILED;
+                }
+                inputs.addAll(cache.getInputs());
+                outputs.addAll(cache.getOutputs());
+                return BPMomentum.OK;
+            }
+
+            long length = file.length();
+            long lastModified = file.lastModified();
+            CharBuffer text = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+            StringBuilder header = new StringBuilder();
+            if (parseConfig(text.array(), text.limit(), header) != BPMomentum.OK) {
+                return BPMomentum.FAILED;
+            }
                         
-                    case OUTPUTS:
-                        if (line.matches(".*\\d+.*")) {
-                            outputs.add(parseDoubleArraylistFromString(line, ";"));
-                        } else if (line.contains("layer widths")) {
-                            state = ParseState.TOPOLOGY;
-                        } else if (line.contains("input")) {
-                            state = ParseState.INPUTS;
-                        }
-                        break;
+            if (sparseInputs.isEmpty() && text.limit() - header.length() >= ConfigCache.THRESHOLD) {
+                try {
+                    ConfigCache.write(file, length, lastModified, header.toString(), inputs, outputs);
+                } catch (IOException e) {
+                    Logger.getLogger(BPMomentum.class.getName()).log(Level.WARNING, 
+                            "Unable to write the configuration cache.", e);
                 }
             }
         } catch (IOException|NumberFormatException e) {
             return BPMomentum.FAILED;
-        } finally {
-            try {
-                if (reader != null) {
-                    reader.close();
+        }
+        return BPMomentum.OK;
+    }
+    
+    /**
+     * Parses the configuration text. The lines of sample sections are given 
+     * to SampleScanner at once, all the other lines are parsed one by one 
+     * and appended to the header.
+     * 
+     * @param text A configuration text.
+     * @param length A length of the text.
+     * @param header A builder the lines without samples are appended to.
+     * @return OK, or FAILED if the configuration is not valid.
+     */
+    private int parseConfig(char[] text, int length, StringBuilder header) {
+        ParseState state = ParseState.START;
+        int pos = 0;
+        
+        while (pos < length) {
+            if (state == ParseState.INPUTS || state == ParseState.OUTPUTS) {
+                // the section lasts until a line without numbers switching the state
+                ParseState next = state;
+                int end = pos;
+                int lineEnd = pos;
+                while (end < length) {
+                    lineEnd = SampleScanner.lineEnd(text, end, length);
+                    if (!SampleScanner.hasDigit(text, end, lineEnd)) {
+                        next = parseLine(state, getLine(text, end, lineEnd));
+                        if (next != state) {
+                            break;
+                        }
+                    }
+                    end = lineEnd + 1;
                 }
-            } catch (IOException e) {
-                Logger.getLogger(BPMomentum.class.getName()).log(Level.SEVERE, null, e);
+                
+                int to = Math.min(end, length);
+                if (state == ParseState.INPUTS && SampleScanner.isSparse(text, pos, to)) {
+                    sparseInputs.addAll(SampleScanner.parseSparseRows(text, pos, to, ';', ';', null));
+                } else {
+                    List<double[]> rows = SampleScanner.parseRows(text, pos, to, ';', ';');
+                    (state == ParseState.INPUTS ? inputs : outputs).addAll(rows);
+                }
+                if (next != state) {
+                    header.append(getLine(text, end, lineEnd)).append('\n');
+                    end = lineEnd + 1;
+                }
+                state = next;
+                pos = end;
+            } else {
+                int lineEnd = SampleScanner.lineEnd(text, pos, length);
+                String line = getLine(text, pos, lineEnd);
+                header.append(line).append('\n');
+                state = parseLine(state, line);
+                if (state == null) {
+                    return BPMomentum.FAILED;
+                }
+                pos = lineEnd + 1;
             }
         }
         return BPMomentum.OK;
     }
     
+    private static String getLine(char[] text, int from, int to) {
+        int end = to > from && text[to-1] == '\r' ? to-1 : to;
+        return new String(text, from, end - from);
+    }
+    
+    /**
+     * Parses one line of the configuration, except of sample vectors.
+     * 
+     * @param state A state of parsing before the line.
+     * @param line A line of the configuration.
+     * @return the state after the line, or null if the line is not valid.
+     */
+    private ParseState parseLine(ParseState state, String line) {
+        switch(state) {
+            case START:
+                if (line.contains("sweep")) {
+                    if (parseSweepLine(line.substring(line.indexOf("sweep") + 5)) != BPMomentum.OK) {
+                        return null;
+                    }
+                } else if (line.contains("shuffle seed")) {
+                    shuffleSeed = Long.parseLong(line.replaceAll("[^0-9-]", ""));
+                } else if (line.contains("shuffle")) {
+                    String value = line.substring(line.indexOf("shuffle") + 7).trim();
+                    if (!value.equals("on") && !value.equals("off")) {
+                        return null;
+                    }
+                    shuffle = value.equals("on");
+                } else if (line.contains("weight seed")) {
+                    weightSeed = Long.parseLong(line.replaceAll("[^0-9-]", ""));
+                } else if (line.contains("weight init")) {
+                    weightInit = WeightInit.parse(line.substring(line.indexOf("weight init") + 11));
+                    if (weightInit == null) {
+                        return null;
+                    }
+                } else if (line.contains("optimizer")) {
+                    optimizer = Optimizer.parse(line.substring(line.indexOf("optimizer") + 9));
+                    if (optimizer == null) {
+                        return null;
+                    }
+                } else if (line.contains("coordinator port")) {
+                    coordinatorPort = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("coordinator address")) {
+                    coordinatorAddress = line.substring(line.indexOf("coordinator address") + 19).trim();
+                } else if (line.contains("distributed workers")) {
+                    distributedWorkers = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("sync mode")) {
+                    syncMode = SyncMode.parse(line.substring(line.indexOf("sync mode") + 9));
+                    if (syncMode == null) {
+                        return null;
+                    }
+                } else if (line.contains("sync interval")) {
+                    syncInterval = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("sync momentum")) {
+                    String value = line.substring(line.indexOf("sync momentum") + 13).trim();
+                    if (!value.equals("on") && !value.equals("off")) {
+                        return null;
+                    }
+                    syncMomentum = value.equals("on");
+                } else if (line.contains("serve port")) {
+                    servePort = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("serve max batch")) {
+                    serveMaxBatch = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("serve max wait")) {
+                    serveMaxWait = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("load address")) {
+                    loadAddress = line.substring(line.indexOf("load address") + 12).trim();
+                } else if (line.contains("load clients")) {
+                    loadClients = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("load requests")) {
+                    loadRequests = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("stream source")) {
+                    streamSource = line.substring(line.indexOf("stream source") + 13).trim();
+                } else if (line.contains("stream buffer")) {
+                    streamBuffer = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("stream window")) {
+                    streamWindow = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("publish interval")) {
+                    publishInterval = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("prefetch chunk")) {
+                    prefetchChunk = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("lambda")) {
+                    lambda = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
+                } else if (line.contains("learning rate")) {
+                    learningRate = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
+                } else if (line.contains("momentum rate")) {
+                    momentumRate = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
+                } else if (line.contains("batch size")) {
+                    batchSize = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("log level")) {
+                    logLevel = LogLevel.parse(line.substring(line.indexOf("log level") + 9));
+                    if (logLevel == null) {
+                        return null;
+                    }
+                } else if (line.contains("precision")) {
+                    precision = Precision.parse(line.substring(line.indexOf("precision") + 9));
+                    if (precision == null) {
+                        return null;
+                    }
+                } else if (line.contains("activation")) {
+                    activations = parseActivations(line.substring(line.indexOf("activation") + 10));
+                    if (activations == null) {
+                        return null;
+                    }
+                } else if (line.contains("telemetry")) {
+                    telemetryLevel = TelemetryLevel.parse(line.substring(line.indexOf("telemetry") + 9));
+                    if (telemetryLevel == null) {
+                        return null;
+                    }
+                } else if (line.contains("log sampling")) {
+                    logSampling = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("checkpoint file")) {
+                    checkpointFile = line.substring(line.indexOf("checkpoint file") + 15).trim();
+                } else if (line.contains("checkpoint interval")) {
+                    checkpointInterval = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("target error")) {
+                    targetError = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
+                } else if (line.contains("max epochs")) {
+                    maxEpochs = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("max time")) {
+                    maxTime = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("patience")) {
+                    patience = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("validation split")) {
+                    validationSplit = Float.parseFloat(line.replaceAll("[^0-9.]", ""));
+                } else if (line.contains("validation interval")) {
+                    validationInterval = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("dataset file")) {
+                    datasetFile = line.substring(line.indexOf("dataset file") + 12).trim();
+                } else if (line.contains("parallel threshold")) {
+                    parallelThreshold = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("hogwild threads")) {
+                    hogwildThreads = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("threads")) {
+                    threads = Integer.parseInt(line.replaceAll("[^0-9]", ""));
+                } else if (line.contains("layer widths")) {
+                    state = ParseState.TOPOLOGY;
+                }  else if (line.contains("input")) {
+                    state = ParseState.INPUTS;
+                } else if (line.contains("output")) {
+                    state = ParseState.OUTPUTS;
+                }
+                break;
+                
+            case TOPOLOGY:
+                if (line.contains(";")) {
+                    networkTopology = parseIntArraylistFromString(line, ";");
+                } else if (line.contains("input")) {
+                    state = ParseState.INPUTS;
+                } else if (line.contains("output")) {
+                    state = ParseState.OUTPUTS;
+                }
+                break;
+                
+            case INPUTS:
+                if (line.contains("layer widths")) {
+                    state = ParseState.TOPOLOGY;
+                } else if (line.contains("output")) {
+                    state = ParseState.OUTPUTS;
+                }
+                break; 
+                
+            case OUTPUTS:
+                if (line.contains("layer widths")) {
+                    state = ParseState.TOPOLOGY;
+                } else if (line.contains("input")) {
+                    state = ParseState.INPUTS;
+                }
+                break;
+        }
+        return state;
+    }
+    
     public int modifyFromArgs(ArrayList<String> args) {
         for (String arg : args) {
             try {
-                if (arg.contains("-l=")) {
+                if (arg.contains("-sweep-")) {
+                    // before the other arguments, -sweep-m= contains -m= 
+                    if (parseSweepArg(arg.substring(arg.indexOf("-sweep-") + 7)) != BPMomentum.OK) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-seed=")) {
+                    weightSeed = Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-init=")) {
+                    weightInit = WeightInit.parse(arg.substring(arg.indexOf('=') + 1));
+                    if (weightInit == null) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-optimizer=")) {
+                    optimizer = Optimizer.parse(arg.substring(arg.indexOf('=') + 1));
+                    if (optimizer == null) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-coordinator=")) {
+                    coordinatorPort = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-worker=")) {
+                    coordinatorAddress = arg.substring(arg.indexOf('=') + 1);
+                } else if (arg.contains("-workers=")) {
+                    distributedWorkers = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-sync-interval=")) {
+                    syncInterval = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-sync-momentum=")) {
+                    String value = arg.substring(arg.indexOf('=') + 1);
+                    if (!value.equals("on") && !value.equals("off")) {
+                        return BPMomentum.FAILED;
+                    }
+                    syncMomentum = value.equals("on");
+                } else if (arg.contains("-sync=")) {
+                    syncMode = SyncMode.parse(arg.substring(arg.indexOf('=') + 1));
+                    if (syncMode == null) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-serve-batch=")) {
+                    serveMaxBatch = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-serve-wait=")) {
+                    serveMaxWait = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-serve=")) {
+                    servePort = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-load-clients=")) {
+                    loadClients = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-load-requests=")) {
+                    loadRequests = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-load=")) {
+                    loadAddress = arg.substring(arg.indexOf('=') + 1);
+                } else if (arg.contains("-stream-buffer=")) {
+                    streamBuffer = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-stream-window=")) {
+                    streamWindow = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-stream=")) {
+                    streamSource = arg.substring(arg.indexOf('=') + 1);
+                } else if (arg.contains("-publish=")) {
+                    publishInterval = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.contains("-precision=")) {
+                    precision = Precision.parse(arg.substring(arg.indexOf('=') + 1));
+                    if (precision == null) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-l=")) {
                     lambda = Float.parseFloat(arg.replaceAll(NOT_DOUBLE_NUM_PATTERN, ""));
                 } else if (arg.contains("-m=")) {
                     learningRate = Float.parseFloat(arg.replaceAll(NOT_DOUBLE_NUM_PATTERN, ""));
@@ -124,6 +514,53 @@ public class Configuration {
                 } else if (arg.contains("-t=")) {
                     arg = arg.substring(3);
                     networkTopology = parseIntArraylistFromString(arg, ";");
+                } else if (arg.contains("-b=")) {
+                    batchSize = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-p=")) {
+                    threads = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-w=")) {
+                    hogwildThreads = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-n=")) {
+                    parallelThreshold = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-v=")) {
+                    logLevel = LogLevel.parse(arg.substring(3));
+                    if (logLevel == null) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-z=")) {
+                    activations = parseActivations(arg.substring(3));
+                    if (activations == null) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-y=")) {
+                    telemetryLevel = TelemetryLevel.parse(arg.substring(3));
+                    if (telemetryLevel == null) {
+                        return BPMomentum.FAILED;
+                    }
+                } else if (arg.contains("-e=")) {
+                    logSampling = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-c=")) {
+                    checkpointFile = arg.substring(3);
+                } else if (arg.contains("-i=")) {
+                    checkpointInterval = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-r=")) {
+                    resumeFile = arg.substring(3);
+                } else if (arg.contains("-d=")) {
+                    datasetFile = arg.substring(3);
+                } else if (arg.contains("-x=")) {
+                    exportFile = arg.substring(3);
+                } else if (arg.contains("-g=")) {
+                    targetError = Float.parseFloat(arg.replaceAll(NOT_DOUBLE_NUM_PATTERN, ""));
+                } else if (arg.contains("-k=")) {
+                    maxEpochs = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-u=")) {
+                    maxTime = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-j=")) {
+                    patience = Integer.parseInt(arg.substring(3));
+                } else if (arg.contains("-q=")) {
+                    validationSplit = Float.parseFloat(arg.replaceAll(NOT_DOUBLE_NUM_PATTERN, ""));
+                } else if (arg.contains("-o=")) {
+                    validationInterval = Integer.parseInt(arg.substring(3));
                 } else if (arg.contains("-s")) {
                     stepByStep = true;
                 }
@@ -147,45 +584,209 @@ public class Configuration {
         }
         return log;
     }
+    
+    /**
+     * Creates the training log. In step-by-step mode every weight is logged 
+     * synchronously to the standard output, otherwise the records of the 
+     * configured level are formatted to log.txt by a background thread.
+     * 
+     * @return the training log.
+     */
+    public TrainingLog createTrainingLog() {
+        if (stepByStep) {
+            return new TextLog(createLogWriter(), LogLevel.WEIGHT, 1);
+        }
+        if (logLevel == LogLevel.OFF) {
+            return new TextLog(new PrintWriter(new StringWriter()), LogLevel.OFF, 1);
+        }
+        return new AsyncLog(new TextLog(createLogWriter(), logLevel, logSampling), 
+                AsyncLog.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param s Names of activation functions separated by ';'.
+     * @return the functions, or null if a name is not known.
+     */
+    private static Activation[] parseActivations(String s) {
+        String[] names = s.trim().split(";");
+        Activation[] result = new Activation[names.length];
+        for (int i = 0; i<names.length; i++) {
+            result[i] = Activation.parse(names[i]);
+            if (result[i] == null) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses a sweep line of the configuration file - learning rate, 
+     * momentum rate or lambda followed by values, or topology followed by 
+     * topologies separated by '|'.
+     */
+    private int parseSweepLine(String line) {
+        try {
+            if (line.contains("learning rate")) {
+                sweepLearningRates = parseSweepValues(line.substring(line.indexOf("learning rate") + 13));
+            } else if (line.contains("momentum rate")) {
+                sweepMomentumRates = parseSweepValues(line.substring(line.indexOf("momentum rate") + 13));
+            } else if (line.contains("lambda")) {
+                sweepLambdas = parseSweepValues(line.substring(line.indexOf("lambda") + 6));
+            } else if (line.contains("topology")) {
+                sweepTopologies = parseSweepTopologies(line.substring(line.indexOf("topology") + 8));
+            } else {
+                return BPMomentum.FAILED;
+            }
+        } catch (IllegalArgumentException e) {
+            return BPMomentum.FAILED;
+        }
+        return BPMomentum.OK;
+    }
+    
+    /**
+     * Parses a sweep argument without the -sweep- prefix: m=, a=, l= or t= 
+     * followed by the values as in the configuration file.
+     */
+    private int parseSweepArg(String arg) {
+        if (arg.length() < 2 || arg.charAt(1) != '=') {
+            return BPMomentum.FAILED;
+        }
+        try {
+            String values = arg.substring(2);
+            switch (arg.charAt(0)) {
+                case 'm':
+                    sweepLearningRates = parseSweepValues(values);
+                    break;
+                case 'a':
+                    sweepMomentumRates = parseSweepValues(values);
+                    break;
+                case 'l':
+                    sweepLambdas = parseSweepValues(values);
+                    break;
+                case 't':
+                    sweepTopologies = parseSweepTopologies(values);
+                    break;
+                default:
+                    return BPMomentum.FAILED;
+            }
+        } catch (IllegalArgumentException e) {
+            return BPMomentum.FAILED;
+        }
+        return BPMomentum.OK;
+    }
+    
+    /**
+     * Parses values separated by ';', every value can also be a range 
+     * from:to:step including both bounds.
+     * 
+     * @param s The values.
+     * @return the list of all the values.
+     * @throws IllegalArgumentException if a value is not a number or a step 
+     * is not positive.
+     */
+    private static ArrayList<Float> parseSweepValues(String s) {
+        ArrayList<Float> result = new ArrayList<>();
+        for (String item : s.trim().split(";")) {
+            String[] range = item.trim().split(":");
+            if (range.length == 1) {
+                result.add(Float.parseFloat(range[0]));
+            } else if (range.length == 3) {
+                double from = Double.parseDouble(range[0]);
+                double to = Double.parseDouble(range[1]);
+                double step = Double.parseDouble(range[2]);
+                if (!(step > 0)) {
+                    throw new IllegalArgumentException("The step of a range has to be positive.");
+                }
+                // the count is computed first, so the values don't drift by adding steps
+                long count = (long) Math.floor((to - from) / step + 1e-6) + 1;
+                for (long k = 0; k<count; k++) {
+                    result.add((float) (from + k*step));
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid sweep value " + item);
+            }
+        }
+        return result;
+    }
+    
+    private ArrayList<ArrayList<Integer>> parseSweepTopologies(String s) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<>();
+        for (String topology : s.trim().split("\\|")) {
+            result.add(parseIntArraylistFromString(topology.trim(), ";"));
+        }
+        return result;
+    }
 
     private ArrayList<Integer> parseIntArraylistFromString(String s, String separator) {
         ArrayList<Integer> result = new ArrayList<>();
         
         String[] values = s.split(separator);
-        for(int i = values.length-1; i>=0; i--) {
-            result.add(0,new Integer(values[i]));
+        for(int i = 0; i<values.length; i++) {
+            result.add(Integer.valueOf(values[i].trim()));
         }
         return result;
     }
     
     
-    private ArrayList<Double> parseDoubleArraylistFromString(String s, String separator) {
-        ArrayList<Double> result = new ArrayList<>();
-        if(s.contains(separator)) {
-            String[] values = s.split(separator);
-            for(int i = values.length-1; i>=0; i--) {
-                result.add(0,new Double(values[i]));
+    /**
+     * Loads the training set - opens the dataset file if one is set (CSV 
+     * files are read into memory, binary ones are memory mapped), otherwise 
+     * converts the samples of the configuration file. In float32 precision 
+     * the samples held in memory are stored as floats. Sparse samples 
+     * (index:value pairs) are kept sparse.
+     * 
+     * @return OK, or FAILED if the dataset file can't be read.
+     */
+    public int loadDataset() {
+        if (datasetFile == null && !sparseInputs.isEmpty()) {
+            if (!inputs.isEmpty() || networkTopology.isEmpty()) {
+                System.err.println("Sparse inputs can't be mixed with dense ones and need the layer widths.");
+                return BPMomentum.FAILED;
             }
-        } else {
-            result.add(0,new Double(s));
+            dataset = new SparseArrayDataset(sparseInputs, outputs.toArray(new double[0][]), 
+                    networkTopology.get(0));
+            return BPMomentum.OK;
         }
-        
-        return result;
-    }    
+        if (datasetFile == null) {
+            dataset = new ArrayDataset(inputs.toArray(new double[0][]), 
+                    outputs.toArray(new double[0][]));
+            narrowDataset();
+            return BPMomentum.OK;
+        }
+        if (networkTopology.isEmpty()) {
+            return BPMomentum.FAILED;
+        }
+        try {
+            dataset = DatasetFile.open(new File(datasetFile), networkTopology.get(0));
+        } catch (IOException e) {
+            System.err.println(datasetFile + ": " + e.getMessage());
+            return BPMomentum.FAILED;
+        }
+        narrowDataset();
+        return BPMomentum.OK;
+    }
+    
+    private void narrowDataset() {
+        // vectors of different widths are left for isTestSetValid() to report
+        if (precision == Precision.FLOAT && dataset instanceof ArrayDataset 
+                && ((ArrayDataset) dataset).isRectangular()) {
+            dataset = new FloatArrayDataset(dataset);
+            inputs = new ArrayList<>();
+            outputs = new ArrayList<>();
+        }
+    }
     
     public boolean isTestSetValid() {
-        if (inputs.size() < 1 || inputs.size() != outputs.size())
+        if (dataset == null || dataset.size() < 1)
+            return false;
+        if (dataset instanceof ArrayDataset && !((ArrayDataset) dataset).isRectangular())
+            return false;
+        if (dataset instanceof SparseArrayDataset && !((SparseArrayDataset) dataset).isRectangular())
             return false;
         
         int inWidth = networkTopology.get(0);
         int outWidth = networkTopology.get(networkTopology.size()-1);
-        int i = 0;
-        for (ArrayList<Double> in : inputs) {
-            if(in.size() != inWidth || outputs.get(i++).size() != outWidth)
-                return false;
-        }
-        
-        return true;
+        return dataset.getInputWidth() == inWidth && dataset.getOutputWidth() == outWidth;
     }
 
 
@@ -197,19 +798,27 @@ public class Configuration {
         this.networkTopology = networkTopology;
     }
 
-    public ArrayList<ArrayList<Double>> getInputs() {
+    public ArrayList<double[]> getInputs() {
         return inputs;
     }
 
-    public void setInputs(ArrayList<ArrayList<Double>> inputs) {
+    public void setInputs(ArrayList<double[]> inputs) {
         this.inputs = inputs;
     }
 
-    public ArrayList<ArrayList<Double>> getOutputs() {
+    /**
+     * @return the sparse input vectors of the configuration file, empty if
+     * the inputs are dense.
+     */
+    public ArrayList<SparseVector> getSparseInputs() {
+        return sparseInputs;
+    }
+
+    public ArrayList<double[]> getOutputs() {
         return outputs;
     }
 
-    public void setOutputs(ArrayList<ArrayList<Double>> outputs) {
+    public void setOutputs(ArrayList<double[]> outputs) {
         this.outputs = outputs;
     }
 
@@ -244,4 +853,444 @@ public class Configuration {
     public void setStepByStep(boolean verbose) {
         this.stepByStep = verbose;
     }            
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }            
+
+    public int getHogwildThreads() {
+        return hogwildThreads;
+    }
+
+    public void setHogwildThreads(int hogwildThreads) {
+        this.hogwildThreads = hogwildThreads;
+    }            
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }            
+
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    public void setLogLevel(LogLevel logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    public int getLogSampling() {
+        return logSampling;
+    }
+
+    public void setLogSampling(int logSampling) {
+        this.logSampling = logSampling;
+    }            
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public String getResumeFile() {
+        return resumeFile;
+    }
+
+    public void setResumeFile(String resumeFile) {
+        this.resumeFile = resumeFile;
+    }            
+
+    public String getDatasetFile() {
+        return datasetFile;
+    }
+
+    public void setDatasetFile(String datasetFile) {
+        this.datasetFile = datasetFile;
+    }
+
+    public String getExportFile() {
+        return exportFile;
+    }
+
+    public void setExportFile(String exportFile) {
+        this.exportFile = exportFile;
+    }
+
+    public float getTargetError() {
+        return targetError;
+    }
+
+    public void setTargetError(float targetError) {
+        this.targetError = targetError;
+    }
+
+    public int getMaxEpochs() {
+        return maxEpochs;
+    }
+
+    public void setMaxEpochs(int maxEpochs) {
+        this.maxEpochs = maxEpochs;
+    }
+
+    public int getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(int maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    public void setPatience(int patience) {
+        this.patience = patience;
+    }
+
+    public float getValidationSplit() {
+        return validationSplit;
+    }
+
+    public void setValidationSplit(float validationSplit) {
+        this.validationSplit = validationSplit;
+    }
+
+    public int getValidationInterval() {
+        return validationInterval;
+    }
+
+    public void setValidationInterval(int validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+
+    /**
+     * @return the activation functions of all the layers, or one function 
+     * used by all the layers.
+     */
+    public Activation[] getActivations() {
+        return activations;
+    }
+
+    public void setActivations(Activation[] activations) {
+        this.activations = activations;
+    }
+
+    /**
+     * @return the activation function of every layer, or null if the count 
+     * of given functions doesn't match the count of layers.
+     */
+    public Activation[] getLayerActivations() {
+        return getLayerActivations(networkTopology);
+    }
+
+    /**
+     * @param topology Widths of network input and of all the layers.
+     * @return the activation function of every layer of the given topology, 
+     * or null if the count of given functions doesn't match the count 
+     * of layers.
+     */
+    public Activation[] getLayerActivations(ArrayList<Integer> topology) {
+        int layers = topology.size() - 1;
+        if (activations.length == layers) {
+            return activations.clone();
+        }
+        if (activations.length != 1) {
+            return null;
+        }
+        Activation[] result = new Activation[layers];
+        Arrays.fill(result, activations[0]);
+        return result;
+    }
+
+    /**
+     * @return the precision of the weight matrices and of the samples held 
+     * in memory.
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    public long getShuffleSeed() {
+        return shuffleSeed;
+    }
+
+    public void setShuffleSeed(long shuffleSeed) {
+        this.shuffleSeed = shuffleSeed;
+    }
+
+    /**
+     * @return the seed of the initial weights - the given one, or a random 
+     * one drawn at the first call if none (0) was given, so the networks 
+     * of one run get the same seed.
+     */
+    public long getWeightSeed() {
+        while (weightSeed == 0) {
+            weightSeed = ThreadLocalRandom.current().nextLong();
+        }
+        return weightSeed;
+    }
+
+    public void setWeightSeed(long weightSeed) {
+        this.weightSeed = weightSeed;
+    }
+
+    public WeightInit getWeightInit() {
+        return weightInit;
+    }
+
+    public void setWeightInit(WeightInit weightInit) {
+        this.weightInit = weightInit;
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * @return the count of samples of one chunk of the epoch pipeline, 
+     * rounded up to a multiple of the batch size, so batches are not split.
+     */
+    public int getPrefetchChunk() {
+        return (prefetchChunk + batchSize - 1) / batchSize * batchSize;
+    }
+
+    public void setPrefetchChunk(int prefetchChunk) {
+        this.prefetchChunk = prefetchChunk;
+    }
+
+    /**
+     * @return the port the coordinator of a distributed training listens 
+     * on, 0 if this process is not the coordinator.
+     */
+    public int getCoordinatorPort() {
+        return coordinatorPort;
+    }
+
+    /**
+     * @return the host:port of the coordinator this process trains for as 
+     * a worker, null if it is not a worker.
+     */
+    public String getCoordinatorAddress() {
+        return coordinatorAddress;
+    }
+
+    public int getDistributedWorkers() {
+        return distributedWorkers;
+    }
+
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    public int getSyncInterval() {
+        return syncInterval;
+    }
+
+    public boolean isSyncMomentum() {
+        return syncMomentum;
+    }
+
+    /**
+     * @return a coordinator of the configured distributed training.
+     */
+    public Coordinator createCoordinator() {
+        return new Coordinator(coordinatorPort, distributedWorkers, syncMode, syncInterval, syncMomentum);
+    }
+
+    /**
+     * @return the port the inference server listens on, 0 if this process 
+     * doesn't serve.
+     */
+    public int getServePort() {
+        return servePort;
+    }
+
+    public int getServeMaxBatch() {
+        return serveMaxBatch;
+    }
+
+    /**
+     * @return the max time in microseconds a request waits for others to 
+     * be batched with.
+     */
+    public int getServeMaxWait() {
+        return serveMaxWait;
+    }
+
+    /**
+     * @return the host:port of the inference server to be benchmarked, null 
+     * if this process doesn't benchmark one.
+     */
+    public String getLoadAddress() {
+        return loadAddress;
+    }
+
+    public int getLoadClients() {
+        return loadClients;
+    }
+
+    public int getLoadRequests() {
+        return loadRequests;
+    }
+
+    /**
+     * @param network A trained network.
+     * @return an inference server of the network.
+     */
+    public InferenceServer createInferenceServer(FrozenNetwork network) {
+        return new InferenceServer(network, servePort, serveMaxBatch, serveMaxWait);
+    }
+
+    /**
+     * @return a load generator sending the input vectors of the dataset to 
+     * the configured server.
+     */
+    public LoadGenerator createLoadGenerator() {
+        return new LoadGenerator(loadAddress, dataset, loadClients, loadRequests);
+    }
+
+    /**
+     * @return the source of samples the network is trained from online 
+     * (see SampleStream), null if it is trained from the training set.
+     */
+    public String getStreamSource() {
+        return streamSource;
+    }
+
+    /**
+     * @return the count of samples read from the stream ahead of the 
+     * training.
+     */
+    public int getStreamBuffer() {
+        return streamBuffer;
+    }
+
+    /**
+     * @return the count of the last samples of the moving error.
+     */
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    /**
+     * @return the count of samples trained from the stream between two 
+     * publications of the weights and reports.
+     */
+    public int getPublishInterval() {
+        return publishInterval;
+    }
+
+    /**
+     * @return true if a hyperparameter sweep is configured.
+     */
+    public boolean isSweep() {
+        return !sweepLearningRates.isEmpty() || !sweepMomentumRates.isEmpty() 
+                || !sweepLambdas.isEmpty() || !sweepTopologies.isEmpty();
+    }
+
+    /**
+     * Creates the hyperparameter sweep of all the combinations of swept 
+     * values, the parameters not swept have their configured values.
+     * 
+     * @return the sweep, or null if a swept topology doesn't match the test 
+     * set or the activation functions.
+     */
+    public HyperparameterSweep createSweep() {
+        List<Float> rates = sweepLearningRates.isEmpty() 
+                ? Arrays.asList(learningRate) : sweepLearningRates;
+        List<Float> momentums = sweepMomentumRates.isEmpty() 
+                ? Arrays.asList(momentumRate) : sweepMomentumRates;
+        List<Float> lambdas = sweepLambdas.isEmpty() ? Arrays.asList(lambda) : sweepLambdas;
+        List<ArrayList<Integer>> topologies = sweepTopologies.isEmpty() 
+                ? Arrays.asList(networkTopology) : sweepTopologies;
+        
+        HyperparameterSweep sweep = new HyperparameterSweep(dataset, targetError, maxEpochs, 
+                maxTime, threads);
+        for (ArrayList<Integer> topology : topologies) {
+            Activation[] layerActivations = getLayerActivations(topology);
+            if (layerActivations == null || topology.size() < 2 
+                    || topology.get(0) != dataset.getInputWidth() 
+                    || topology.get(topology.size()-1) != dataset.getOutputWidth()) {
+                return null;
+            }
+            for (Float rate : rates) {
+                for (Float momentum : momentums) {
+                    for (Float l : lambdas) {
+                        sweep.addCandidate(new SweepCandidate(rate, momentum, l, topology, 
+                                layerActivations, precision, weightInit, getWeightSeed(), optimizer));
+                    }
+                }
+            }
+        }
+        return sweep;
+    }
+
+    public TelemetryLevel getTelemetryLevel() {
+        return telemetryLevel;
+    }
+
+    public void setTelemetryLevel(TelemetryLevel telemetryLevel) {
+        this.telemetryLevel = telemetryLevel;
+    }
+
+    /**
+     * @return the count of samples at the end of the training set held out 
+     * for validation.
+     */
+    public int getValidationSize() {
+        if (validationSplit <= 0 || dataset == null) {
+            return 0;
+        }
+        return Math.max(1, (int)(dataset.size() * (double)validationSplit));
+    }
+
+    /**
+     * @return the training set, loaded by loadDataset().
+     */
+    public Dataset getDataset() {
+        return dataset;
+    }            
 }
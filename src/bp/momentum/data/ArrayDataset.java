@@ -0,0 +1,65 @@
+package bp.momentum.data;
+
+/**
+ * A dataset held in memory as arrays of primitive values. The vectors are 
+ * returned without copying.
+ * 
+ * @author pseckarova
+ */
+public class ArrayDataset implements Dataset {
+    private final double[][] inputs;
+    private final double[][] outputs;
+    private final int inputWidth;
+    private final int outputWidth;
+
+    /**
+     * @param inputs Input vectors of all samples, all of the same width.
+     * @param outputs Expected output vectors of all samples, all of the same width.
+     */
+    public ArrayDataset(double[][] inputs, double[][] outputs) {
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.inputWidth = inputs.length > 0 ? inputs[0].length : 0;
+        this.outputWidth = outputs.length > 0 ? outputs[0].length : 0;
+    }
+
+    @Override
+    public int size() {
+        return inputs.length;
+    }
+
+    @Override
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    @Override
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    @Override
+    public double[] getInput(int index, double[] buffer) {
+        return inputs[index];
+    }
+
+    @Override
+    public double[] getOutput(int index, double[] buffer) {
+        return outputs[index];
+    }
+    
+    /**
+     * @return true if all the vectors have the same width as the first ones.
+     */
+    public boolean isRectangular() {
+        if (inputs.length != outputs.length) {
+            return false;
+        }
+        for (int i = 0; i<inputs.length; i++) {
+            if (inputs[i].length != inputWidth || outputs[i].length != outputWidth) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package bp.momentum.data;
+
+/**
+ * A training set of samples, each of an input vector and an expected output 
+ * vector. Datasets are read only and can be shared by more threads.
+ * <p>
+ * Sparse datasets (see SparseVector) give the input vectors also as pairs 
+ * of indexes and non-zero values, the dense getInput() still works for them.
+ * 
+ * @author pseckarova
+ */
+public interface Dataset {
+    
+    /**
+     * @return the count of samples.
+     */
+    int size();
+    
+    int getInputWidth();
+    
+    int getOutputWidth();
+    
+    /**
+     * Gets the input vector of a sample.
+     * 
+     * @param index An index of the sample.
+     * @param buffer A buffer of input width the values may be copied to.
+     * @return the input vector - either the filled buffer, or an array of 
+     * the dataset itself, which must not be modified.
+     */
+    double[] getInput(int index, double[] buffer);
+    
+    /**
+     * Gets the expected output vector of a sample.
+     * 
+     * @param index An index of the sample.
+     * @param buffer A buffer of output width the values may be copied to.
+     * @return the output vector - either the filled buffer, or an array of 
+     * the dataset itself, which must not be modified.
+     */
+    double[] getOutput(int index, double[] buffer);
+    
+    /**
+     * @return true if the input vectors can be got by getSparseInput().
+     */
+    default boolean isSparse() {
+        return false;
+    }
+    
+    /**
+     * Gets the non-zero values of the input vector of a sample.
+     * 
+     * @param index An index of the sample.
+     * @param buffer A vector the values may be copied to.
+     * @return the input vector - either the filled buffer, or a vector of 
+     * the dataset itself, which must not be modified.
+     * @throws UnsupportedOperationException if the dataset is not sparse.
+     */
+    default SparseVector getSparseInput(int index, SparseVector buffer) {
+        throw new UnsupportedOperationException("The dataset is not sparse.");
+    }
+}
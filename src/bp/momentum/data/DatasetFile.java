@@ -0,0 +1,215 @@
+package bp.momentum.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reading and writing dataset files. Two formats are supported:
+ * <p>
+ * CSV - one sample per line, values separated by ';' or ','; the first 
+ * input width values are the input vector, the rest is the expected output.
+ * Lines without numbers (like a header) and lines starting with '#' are 
+ * skipped. CSV files are read into memory by SampleScanner.
+ * <p>
+ * Sparse CSV - if the first sample line has index:value pairs, every line 
+ * has the non-zero input values as pairs (indexes from 0, lower than the 
+ * input width, increasing) followed by the expected output, for example 
+ * "3:0.5;17:1;0;1". Sparse files are read into a SparseArrayDataset.
+ * <p>
+ * Packed binary - little endian, memory mapped by MappedDataset:
+ * <pre>
+ * int    magic "BPMD"
+ * int    format version
+ * int    value size in bytes - 8 for float64, 4 for float32
+ * int    count of samples
+ * int    input width
+ * int    output width
+ * (padding to 32 bytes)
+ * for every sample: input values, output values
+ * </pre>
+ * 
+ * @author pseckarova
+ */
+public class DatasetFile {
+    
+    public static final int MAGIC = 0x444D5042;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    
+    private static final int BUFFER_SIZE = 1 << 20;
+    
+    static final class Header {
+        int valueSize;
+        int size;
+        int inputWidth;
+        int outputWidth;
+    }
+
+    private DatasetFile() {
+    }
+    
+    /**
+     * Opens a dataset file, CSV if the name ends with .csv, otherwise packed 
+     * binary.
+     * 
+     * @param file A dataset file.
+     * @param inputWidth A width of input vectors, needed for CSV.
+     * @return the dataset.
+     * @throws IOException if the file can't be read or has invalid format.
+     */
+    public static Dataset open(File file, int inputWidth) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".csv")) {
+            return readCsv(file, inputWidth);
+        }
+        return new MappedDataset(file);
+    }
+    
+    /**
+     * Reads a CSV dataset into memory.
+     * 
+     * @param file A CSV file.
+     * @param inputWidth A count of input values at the beginning of every line.
+     * @return the dataset.
+     * @throws IOException if the file can't be read or has invalid format.
+     */
+    public static Dataset readCsv(File file, int inputWidth) throws IOException {
+        if (file.length() > Integer.MAX_VALUE - 8) {
+            throw new IOException("CSV datasets are limited to 2GB, please use the packed binary format.");
+        }
+        CharBuffer text = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+        if (SampleScanner.isSparse(text.array(), 0, text.limit())) {
+            return readSparseCsv(text, inputWidth);
+        }
+        List<double[]> rows;
+        try {
+            rows = SampleScanner.parseRows(text.array(), 0, text.limit(), ';', ',');
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in dataset: " + e.getMessage(), e);
+        }
+        
+        double[][] inputs = new double[rows.size()][];
+        double[][] outputs = new double[rows.size()][];
+        for (int i = 0; i<rows.size(); i++) {
+            double[] row = rows.get(i);
+            if (row.length <= inputWidth) {
+                throw new IOException("Too few values on sample line " + (i+1) + ".");
+            }
+            inputs[i] = Arrays.copyOfRange(row, 0, inputWidth);
+            outputs[i] = Arrays.copyOfRange(row, inputWidth, row.length);
+        }
+        
+        ArrayDataset dataset = new ArrayDataset(inputs, outputs);
+        if (!dataset.isRectangular()) {
+            throw new IOException("All lines of dataset have to have the same count of values.");
+        }
+        return dataset;
+    }
+    
+    private static SparseArrayDataset readSparseCsv(CharBuffer text, int inputWidth) throws IOException {
+        List<double[]> outputs = new ArrayList<>();
+        List<SparseVector> inputs;
+        try {
+            inputs = SampleScanner.parseSparseRows(text.array(), 0, text.limit(), ';', ',', outputs);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid sparse sample in dataset: " + e.getMessage(), e);
+        }
+        for (int i = 0; i<outputs.size(); i++) {
+            if (outputs.get(i).length == 0) {
+                throw new IOException("No output values on sample line " + (i+1) + ".");
+            }
+        }
+        
+        SparseArrayDataset dataset = new SparseArrayDataset(inputs, 
+                outputs.toArray(new double[0][]), inputWidth);
+        if (!dataset.isRectangular()) {
+            throw new IOException("All lines of dataset have to have the same count of output values "
+                    + "and input indexes lower than " + inputWidth + ".");
+        }
+        return dataset;
+    }
+    
+    /**
+     * Writes the dataset in the packed binary format.
+     * 
+     * @param dataset A dataset.
+     * @param file A file to be written.
+     * @param valueSize 8 for float64 values, 4 for float32 values.
+     * @throws IOException if the file can't be written.
+     */
+    public static void writeBinary(Dataset dataset, File file, int valueSize) throws IOException {
+        if (valueSize != 8 && valueSize != 4) {
+            throw new IllegalArgumentException("Value size has to be 8 or 4.");
+        }
+        double[] input = new double[dataset.getInputWidth()];
+        double[] output = new double[dataset.getOutputWidth()];
+        
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, 
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(valueSize).putInt(dataset.size())
+                    .putInt(dataset.getInputWidth()).putInt(dataset.getOutputWidth());
+            while (buffer.position() < HEADER_SIZE) {
+                buffer.put((byte) 0);
+            }
+            
+            for (int s = 0; s<dataset.size(); s++) {
+                double[] values = dataset.getInput(s, input);
+                for (int pass = 0; pass<2; pass++) {
+                    for (double v : values) {
+                        if (buffer.remaining() < 8) {
+                            flush(channel, buffer);
+                        }
+                        if (valueSize == 8) {
+                            buffer.putDouble(v);
+                        } else {
+                            buffer.putFloat((float) v);
+                        }
+                    }
+                    values = dataset.getOutput(s, output);
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+    
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new IOException("Unexpected end of dataset file.");
+            }
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a dataset file of version " + VERSION + ".");
+        }
+        Header header = new Header();
+        header.valueSize = buffer.getInt();
+        header.size = buffer.getInt();
+        header.inputWidth = buffer.getInt();
+        header.outputWidth = buffer.getInt();
+        if ((header.valueSize != 8 && header.valueSize != 4) || header.size < 0 
+                || header.inputWidth < 1 || header.outputWidth < 1) {
+            throw new IOException("Invalid dataset file header.");
+        }
+        return header;
+    }
+}
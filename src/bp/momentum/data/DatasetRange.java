@@ -0,0 +1,62 @@
+package bp.momentum.data;
+
+/**
+ * A view of a contiguous range of samples of another dataset, used to hold 
+ * out a part of the training set for validation.
+ * 
+ * @author pseckarova
+ */
+public class DatasetRange implements Dataset {
+    private final Dataset dataset;
+    private final int from;
+    private final int size;
+
+    /**
+     * @param dataset A dataset.
+     * @param from An index of the first sample of the range.
+     * @param to An index after the last sample of the range.
+     */
+    public DatasetRange(Dataset dataset, int from, int to) {
+        if (from < 0 || to > dataset.size() || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + "-" + to + ".");
+        }
+        this.dataset = dataset;
+        this.from = from;
+        this.size = to - from;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getInputWidth() {
+        return dataset.getInputWidth();
+    }
+
+    @Override
+    public int getOutputWidth() {
+        return dataset.getOutputWidth();
+    }
+
+    @Override
+    public double[] getInput(int index, double[] buffer) {
+        return dataset.getInput(from + index, buffer);
+    }
+
+    @Override
+    public double[] getOutput(int index, double[] buffer) {
+        return dataset.getOutput(from + index, buffer);
+    }
+
+    @Override
+    public boolean isSparse() {
+        return dataset.isSparse();
+    }
+
+    @Override
+    public SparseVector getSparseInput(int index, SparseVector buffer) {
+        return dataset.getSparseInput(from + index, buffer);
+    }
+}
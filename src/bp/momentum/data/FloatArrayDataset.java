@@ -0,0 +1,73 @@
+package bp.momentum.data;
+
+/**
+ * A dataset held in memory as float32 values, taking half the memory of
+ * ArrayDataset. The vectors are widened into the given buffers.
+ *
+ * @author pseckarova
+ */
+public class FloatArrayDataset implements Dataset {
+    private final float[][] inputs;
+    private final float[][] outputs;
+    private final int inputWidth;
+    private final int outputWidth;
+
+    /**
+     * Copies the given dataset, rounding its values to float.
+     *
+     * @param source A dataset of vectors of the same width.
+     */
+    public FloatArrayDataset(Dataset source) {
+        this.inputWidth = source.getInputWidth();
+        this.outputWidth = source.getOutputWidth();
+        this.inputs = new float[source.size()][];
+        this.outputs = new float[source.size()][];
+        double[] inBuffer = new double[inputWidth];
+        double[] outBuffer = new double[outputWidth];
+
+        for (int s = 0; s<inputs.length; s++) {
+            inputs[s] = narrow(source.getInput(s, inBuffer), inputWidth);
+            outputs[s] = narrow(source.getOutput(s, outBuffer), outputWidth);
+        }
+    }
+
+    private static float[] narrow(double[] vector, int width) {
+        float[] result = new float[width];
+        for (int i = 0; i<width; i++) {
+            result[i] = (float) vector[i];
+        }
+        return result;
+    }
+
+    private static double[] widen(float[] vector, double[] buffer) {
+        for (int i = 0; i<vector.length; i++) {
+            buffer[i] = vector[i];
+        }
+        return buffer;
+    }
+
+    @Override
+    public int size() {
+        return inputs.length;
+    }
+
+    @Override
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    @Override
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    @Override
+    public double[] getInput(int index, double[] buffer) {
+        return widen(inputs[index], buffer);
+    }
+
+    @Override
+    public double[] getOutput(int index, double[] buffer) {
+        return widen(outputs[index], buffer);
+    }
+}
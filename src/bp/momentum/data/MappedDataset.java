@@ -0,0 +1,111 @@
+package bp.momentum.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A dataset in the packed binary format (see DatasetFile) memory mapped 
+ * from the file, so it takes almost no heap and no time to load, and can be 
+ * larger than the memory. Files over 2GB are mapped by several segments, 
+ * every one of whole samples. Values are read by absolute gets from shared 
+ * read-only views, so the dataset can be used by more threads.
+ * 
+ * @author pseckarova
+ */
+public class MappedDataset implements Dataset {
+    private final int size;
+    private final int inputWidth;
+    private final int outputWidth;
+    private final int rowWidth;
+    private final int rowsPerSegment;
+    private final DoubleBuffer[] doubleSegments;
+    private final FloatBuffer[] floatSegments;
+
+    /**
+     * Maps the file.
+     * 
+     * @param file A file in the packed binary format.
+     * @throws IOException if the file can't be read or is not a dataset file.
+     */
+    public MappedDataset(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            DatasetFile.Header header = DatasetFile.readHeader(channel);
+            this.size = header.size;
+            this.inputWidth = header.inputWidth;
+            this.outputWidth = header.outputWidth;
+            this.rowWidth = inputWidth + outputWidth;
+            
+            long rowBytes = (long) rowWidth * header.valueSize;
+            long expected = DatasetFile.HEADER_SIZE + rowBytes * size;
+            if (channel.size() < expected) {
+                throw new IOException("Unexpected end of dataset file: " + file);
+            }
+            
+            this.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+            int segments = size == 0 ? 0 : (size - 1) / rowsPerSegment + 1;
+            this.doubleSegments = header.valueSize == 8 ? new DoubleBuffer[segments] : null;
+            this.floatSegments = header.valueSize == 4 ? new FloatBuffer[segments] : null;
+            
+            for (int s = 0; s<segments; s++) {
+                int rows = Math.min(rowsPerSegment, size - s*rowsPerSegment);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 
+                        DatasetFile.HEADER_SIZE + rowBytes * s * rowsPerSegment, rowBytes * rows);
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                if (doubleSegments != null) {
+                    doubleSegments[s] = mapped.asDoubleBuffer();
+                } else {
+                    floatSegments[s] = mapped.asFloatBuffer();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    @Override
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    @Override
+    public double[] getInput(int index, double[] buffer) {
+        read(index, 0, inputWidth, buffer);
+        return buffer;
+    }
+
+    @Override
+    public double[] getOutput(int index, double[] buffer) {
+        read(index, inputWidth, outputWidth, buffer);
+        return buffer;
+    }
+    
+    private void read(int index, int column, int count, double[] buffer) {
+        int segment = index / rowsPerSegment;
+        int position = (index % rowsPerSegment) * rowWidth + column;
+        if (doubleSegments != null) {
+            DoubleBuffer values = doubleSegments[segment];
+            for (int i = 0; i<count; i++) {
+                buffer[i] = values.get(position + i);
+            }
+        } else {
+            FloatBuffer values = floatSegments[segment];
+            for (int i = 0; i<count; i++) {
+                buffer[i] = values.get(position + i);
+            }
+        }
+    }
+}
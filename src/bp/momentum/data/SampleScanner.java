@@ -0,0 +1,410 @@
+package bp.momentum.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A scanner of sample vectors in text - one vector per line, values separated
+ * by a separator character. Numbers are parsed directly from the character
+ * buffer, without creating strings or using regular expressions. Large texts
+ * are split into chunks at line ends and the chunks are parsed in parallel.
+ * <p>
+ * Only lines containing a digit are parsed, other lines (empty lines,
+ * headers) and lines starting with '#' are skipped.
+ * <p>
+ * Sparse lines give the input values as index:value pairs with increasing
+ * indexes, values without an index (the expected output) follow the pairs.
+ * Sparse texts are always parsed on the calling thread.
+ *
+ * @author pseckarova
+ */
+public class SampleScanner {
+
+    /**
+     * A count of characters over which the text gets parsed in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private SampleScanner() {
+    }
+
+    /**
+     * Parses all the sample lines of the given part of text.
+     *
+     * @param text A text buffer.
+     * @param from An index of the first character of the part.
+     * @param to An index after the last character of the part.
+     * @param separator A character separating the values.
+     * @param alternative Another character separating the values, or the
+     * same separator.
+     * @return the vectors in the order of lines.
+     * @throws NumberFormatException if a value is not a number.
+     */
+    public static List<double[]> parseRows(char[] text, int from, int to, char separator, char alternative) {
+        int chunks = to - from < PARALLEL_THRESHOLD ? 1
+                : Math.min((to - from) / PARALLEL_THRESHOLD, ForkJoinPool.getCommonPoolParallelism() * 4);
+        if (chunks <= 1) {
+            return parseChunk(text, from, to, separator, alternative);
+        }
+
+        List<Callable<List<double[]>>> tasks = new ArrayList<>(chunks);
+        int start = from;
+        for (int k = 1; k<=chunks && start < to; k++) {
+            // every chunk ends at the end of a line
+            int end = k == chunks ? to
+                    : Math.min(lineEnd(text, from + (int)((long)(to - from) * k / chunks), to) + 1, to);
+            int chunkFrom = start;
+            int chunkTo = Math.max(start, end);
+            tasks.add(() -> parseChunk(text, chunkFrom, chunkTo, separator, alternative));
+            start = chunkTo;
+        }
+
+        List<double[]> rows = new ArrayList<>();
+        try {
+            for (Future<List<double[]>> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                rows.addAll(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parsing was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Parsing failed.", e.getCause());
+        }
+        return rows;
+    }
+
+    private static List<double[]> parseChunk(char[] text, int from, int to, char separator, char alternative) {
+        List<double[]> rows = new ArrayList<>();
+        int pos = from;
+        while (pos < to) {
+            int end = lineEnd(text, pos, to);
+            if (isSampleLine(text, pos, end)) {
+                rows.add(parseRow(text, pos, end, separator, alternative));
+            }
+            pos = end + 1;
+        }
+        return rows;
+    }
+
+    private static boolean isSampleLine(char[] text, int from, int to) {
+        int i = from;
+        while (i < to && text[i] <= ' ') {
+            i++;
+        }
+        return i < to && text[i] != '#' && hasDigit(text, i, to);
+    }
+
+    /**
+     * @param text A text buffer.
+     * @param from An index to start at.
+     * @param limit An index to stop at.
+     * @return the index of the next '\n' character, or limit if there is none.
+     */
+    public static int lineEnd(char[] text, int from, int limit) {
+        int i = from;
+        while (i < limit && text[i] != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param text A text buffer.
+     * @param from An index of the first character.
+     * @param to An index after the last character.
+     * @return true if there is a digit in the given part of text.
+     */
+    public static boolean hasDigit(char[] text, int from, int to) {
+        for (int i = from; i<to; i++) {
+            if (text[i] >= '0' && text[i] <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses one line of values. Empty values at the end of the line are
+     * ignored, like by String.split().
+     *
+     * @param text A text buffer.
+     * @param from An index of the first character of the line.
+     * @param to An index after the last character of the line.
+     * @param separator A character separating the values.
+     * @param alternative Another character separating the values, or the
+     * same separator.
+     * @return the vector of values.
+     * @throws NumberFormatException if a value is not a number.
+     */
+    public static double[] parseRow(char[] text, int from, int to, char separator, char alternative) {
+        // trailing separators and white space don't start a value
+        int end = to;
+        while (end > from && (text[end-1] <= ' ' || text[end-1] == separator || text[end-1] == alternative)) {
+            end--;
+        }
+        int count = 1;
+        for (int i = from; i<end; i++) {
+            if (text[i] == separator || text[i] == alternative) {
+                count++;
+            }
+        }
+
+        double[] row = new double[count];
+        int start = from;
+        for (int v = 0; v<count; v++) {
+            int stop = start;
+            while (stop < end && text[stop] != separator && text[stop] != alternative) {
+                stop++;
+            }
+            row[v] = parseDouble(text, start, stop);
+            start = stop + 1;
+        }
+        return row;
+    }
+
+    /**
+     * Checks whether the given part of text has sparse lines, by the first
+     * sample line.
+     *
+     * @param text A text buffer.
+     * @param from An index of the first character of the part.
+     * @param to An index after the last character of the part.
+     * @return true if the first sample line has an index:value pair.
+     */
+    public static boolean isSparse(char[] text, int from, int to) {
+        int pos = from;
+        while (pos < to) {
+            int end = lineEnd(text, pos, to);
+            if (isSampleLine(text, pos, end)) {
+                for (int i = pos; i<end; i++) {
+                    if (text[i] == ':') {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            pos = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Parses all the sparse sample lines of the given part of text.
+     *
+     * @param text A text buffer.
+     * @param from An index of the first character of the part.
+     * @param to An index after the last character of the part.
+     * @param separator A character separating the values.
+     * @param alternative Another character separating the values, or the
+     * same separator.
+     * @param plainRows A list to add the values without an index of every
+     * line to.
+     * @return the sparse vectors in the order of lines.
+     * @throws NumberFormatException if a value or an index is not a number,
+     * or the indexes are not increasing.
+     */
+    public static List<SparseVector> parseSparseRows(char[] text, int from, int to, 
+            char separator, char alternative, List<double[]> plainRows) {
+        List<SparseVector> rows = new ArrayList<>();
+        int pos = from;
+        while (pos < to) {
+            int end = lineEnd(text, pos, to);
+            if (isSampleLine(text, pos, end)) {
+                rows.add(parseSparseRow(text, pos, end, separator, alternative, plainRows));
+            }
+            pos = end + 1;
+        }
+        return rows;
+    }
+
+    /**
+     * Parses one sparse line - index:value pairs followed by values without
+     * an index. Empty values at the end of the line are ignored.
+     *
+     * @param text A text buffer.
+     * @param from An index of the first character of the line.
+     * @param to An index after the last character of the line.
+     * @param separator A character separating the values.
+     * @param alternative Another character separating the values, or the
+     * same separator.
+     * @param plainRows A list to add the vector of values without an index
+     * to, null if they are not allowed.
+     * @return the sparse vector of the index:value pairs.
+     * @throws NumberFormatException if a value or an index is not a number,
+     * the indexes are not increasing, or a pair follows a plain value.
+     */
+    public static SparseVector parseSparseRow(char[] text, int from, int to, char separator, 
+            char alternative, List<double[]> plainRows) {
+        int end = to;
+        while (end > from && (text[end-1] <= ' ' || text[end-1] == separator || text[end-1] == alternative)) {
+            end--;
+        }
+        int count = 1;
+        for (int i = from; i<end; i++) {
+            if (text[i] == separator || text[i] == alternative) {
+                count++;
+            }
+        }
+
+        SparseVector vector = new SparseVector(count);
+        double[] plain = new double[count];
+        int plainCount = 0;
+        int start = from;
+        for (int v = 0; v<count; v++) {
+            int stop = start;
+            int colon = -1;
+            while (stop < end && text[stop] != separator && text[stop] != alternative) {
+                if (text[stop] == ':') {
+                    colon = stop;
+                }
+                stop++;
+            }
+            if (colon < 0) {
+                plain[plainCount++] = parseDouble(text, start, stop);
+            } else if (plainCount > 0) {
+                throw new NumberFormatException("Index:value pair after a plain value: "
+                        + new String(text, start, stop - start).trim());
+            } else {
+                try {
+                    vector.add(parseIndex(text, start, colon), parseDouble(text, colon + 1, stop));
+                } catch (IllegalArgumentException e) {
+                    throw new NumberFormatException(e.getMessage());
+                }
+            }
+            start = stop + 1;
+        }
+        if (plainRows != null) {
+            plainRows.add(plainCount == count ? plain : Arrays.copyOf(plain, plainCount));
+        } else if (plainCount > 0) {
+            throw new NumberFormatException("Value without an index in a sparse vector.");
+        }
+        return vector;
+    }
+
+    private static int parseIndex(char[] text, int from, int to) {
+        int start = from;
+        int end = to;
+        while (start < end && text[start] <= ' ') {
+            start++;
+        }
+        while (end > start && text[end-1] <= ' ') {
+            end--;
+        }
+        if (start == end || end - start > 9) {
+            throw new NumberFormatException("Invalid index: " + new String(text, from, to - from).trim());
+        }
+        int index = 0;
+        for (int i = start; i<end; i++) {
+            if (text[i] < '0' || text[i] > '9') {
+                throw new NumberFormatException("Invalid index: " + new String(text, from, to - from).trim());
+            }
+            index = index*10 + (text[i] - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Parses a decimal number. Numbers of at most 15 significant digits and
+     * small exponents (the usual case) are computed exactly from the digits,
+     * the other ones are given to Double.parseDouble(), so the result is
+     * always the same as of Double.parseDouble().
+     *
+     * @param text A text buffer.
+     * @param from An index of the first character of the number.
+     * @param to An index after the last character of the number.
+     * @return the parsed number.
+     * @throws NumberFormatException if the text is not a number.
+     */
+    public static double parseDouble(char[] text, int from, int to) {
+        int start = from;
+        int end = to;
+        while (start < end && text[start] <= ' ') {
+            start++;
+        }
+        while (end > start && text[end-1] <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text[i] == '-' || text[i] == '+')) {
+            negative = text[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean any = false;
+        while (i < end && text[i] >= '0' && text[i] <= '9') {
+            any = true;
+            if (digits < 15) {
+                mantissa = mantissa*10 + (text[i] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exact = false;
+            }
+            i++;
+        }
+        if (i < end && text[i] == '.') {
+            i++;
+            while (i < end && text[i] >= '0' && text[i] <= '9') {
+                any = true;
+                if (digits < 15) {
+                    mantissa = mantissa*10 + (text[i] - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                i++;
+            }
+        }
+        if (any && i < end && (text[i] == 'e' || text[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text[i] == '-' || text[i] == '+')) {
+                negativeExponent = text[i] == '-';
+                i++;
+            }
+            int value = 0;
+            boolean anyExponent = false;
+            while (i < end && text[i] >= '0' && text[i] <= '9') {
+                anyExponent = true;
+                value = Math.min(value*10 + (text[i] - '0'), 10000);
+                i++;
+            }
+            exact &= anyExponent;
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!any || !exact || i != end || mantissa >= MAX_EXACT_MANTISSA
+                || exponent < -22 || exponent > 22) {
+            // not a plain decimal number, or not exactly representable
+            // by the fast path
+            return Double.parseDouble(new String(text, start, end - start));
+        }
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+                : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+}
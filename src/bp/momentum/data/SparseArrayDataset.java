@@ -0,0 +1,111 @@
+package bp.momentum.data;
+
+import java.util.List;
+
+/**
+ * A sparse dataset held in memory. The input vectors of all the samples are
+ * stored in compressed rows - the index and value pairs of all the samples
+ * one after another in two arrays, with an offset of the first pair of every
+ * sample - so a sample takes only its non-zero values. Dense input vectors
+ * are expanded into the given buffers.
+ *
+ * @author pseckarova
+ */
+public class SparseArrayDataset implements Dataset {
+    private final int[] offsets;
+    private final int[] indices;
+    private final double[] values;
+    private final double[][] outputs;
+    private final int inputWidth;
+    private final int outputWidth;
+
+    /**
+     * @param inputs Sparse input vectors of all samples.
+     * @param outputs Expected output vectors of all samples, all of the same width.
+     * @param inputWidth A width of the dense input vectors.
+     */
+    public SparseArrayDataset(List<SparseVector> inputs, double[][] outputs, int inputWidth) {
+        this.inputWidth = inputWidth;
+        this.outputWidth = outputs.length > 0 ? outputs[0].length : 0;
+        this.outputs = outputs;
+        this.offsets = new int[inputs.size() + 1];
+        for (int s = 0; s<inputs.size(); s++) {
+            offsets[s+1] = offsets[s] + inputs.get(s).size();
+        }
+        this.indices = new int[offsets[inputs.size()]];
+        this.values = new double[offsets[inputs.size()]];
+        for (int s = 0; s<inputs.size(); s++) {
+            SparseVector input = inputs.get(s);
+            System.arraycopy(input.getIndices(), 0, indices, offsets[s], input.size());
+            System.arraycopy(input.getValues(), 0, values, offsets[s], input.size());
+        }
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    @Override
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    @Override
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    @Override
+    public double[] getInput(int index, double[] buffer) {
+        for (int i = 0; i<inputWidth; i++) {
+            buffer[i] = 0.0;
+        }
+        for (int k = offsets[index]; k<offsets[index+1]; k++) {
+            buffer[indices[k]] = values[k];
+        }
+        return buffer;
+    }
+
+    @Override
+    public double[] getOutput(int index, double[] buffer) {
+        return outputs[index];
+    }
+
+    @Override
+    public boolean isSparse() {
+        return true;
+    }
+
+    @Override
+    public SparseVector getSparseInput(int index, SparseVector buffer) {
+        return buffer.set(indices, values, offsets[index], offsets[index+1] - offsets[index]);
+    }
+
+    /**
+     * @return the count of non-zero input values of all the samples.
+     */
+    public int getNonZeros() {
+        return values.length;
+    }
+
+    /**
+     * @return true if there is an output vector for every input vector, 
+     * all of the same width, and all the input indexes are lower than the 
+     * input width.
+     */
+    public boolean isRectangular() {
+        if (outputs.length != size()) {
+            return false;
+        }
+        for (int s = 0; s<outputs.length; s++) {
+            if (outputs[s].length != outputWidth) {
+                return false;
+            }
+            if (offsets[s+1] > offsets[s] && indices[offsets[s+1]-1] >= inputWidth) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
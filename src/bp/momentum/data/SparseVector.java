@@ -0,0 +1,143 @@
+package bp.momentum.data;
+
+import java.util.Arrays;
+
+/**
+ * An input vector stored as pairs of an index and a non-zero value, with
+ * the indexes increasing. Used for high dimensional inputs with only a few
+ * non-zero values, the first layer of a network then computes only with
+ * the non-zero inputs (see Network.train(SparseVector, ...)). The vector
+ * grows as values are added, so one instance can be reused as a buffer.
+ *
+ * @author pseckarova
+ */
+public class SparseVector {
+    private int[] indices;
+    private double[] values;
+    private int size;
+
+    /**
+     * @param capacity An initial count of non-zero values.
+     */
+    public SparseVector(int capacity) {
+        this.indices = new int[Math.max(1, capacity)];
+        this.values = new double[Math.max(1, capacity)];
+    }
+
+    /**
+     * Creates a sparse vector of the non-zero values of a dense vector.
+     *
+     * @param dense A dense vector.
+     * @return the sparse vector.
+     */
+    public static SparseVector of(double[] dense) {
+        SparseVector vector = new SparseVector(8);
+        for (int i = 0; i<dense.length; i++) {
+            if (dense[i] != 0.0) {
+                vector.add(i, dense[i]);
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Appends a value, zeros are skipped.
+     *
+     * @param index An index of the value, greater than the last added one.
+     * @param value A value.
+     * @throws IllegalArgumentException if the index is negative or not
+     * increasing.
+     */
+    public void add(int index, double value) {
+        if (index < 0 || (size > 0 && index <= indices[size-1])) {
+            throw new IllegalArgumentException("Sparse indexes have to be increasing, "
+                    + index + " given after " + (size > 0 ? indices[size-1] : -1) + ".");
+        }
+        if (value == 0.0) {
+            return;
+        }
+        if (size == indices.length) {
+            indices = Arrays.copyOf(indices, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        indices[size] = index;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Overwrites this vector by the values of another one.
+     *
+     * @param other A sparse vector.
+     * @return this vector.
+     */
+    public SparseVector set(SparseVector other) {
+        return set(other.indices, other.values, 0, other.size);
+    }
+
+    /**
+     * Overwrites this vector by a range of index and value arrays.
+     *
+     * @param indices Increasing indexes.
+     * @param values Non-zero values.
+     * @param from An index of the first pair in the arrays.
+     * @param count A count of the pairs.
+     * @return this vector.
+     */
+    public SparseVector set(int[] indices, double[] values, int from, int count) {
+        if (count > this.indices.length) {
+            this.indices = new int[count];
+            this.values = new double[count];
+        }
+        System.arraycopy(indices, from, this.indices, 0, count);
+        System.arraycopy(values, from, this.values, 0, count);
+        size = count;
+        return this;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the count of non-zero values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the array of indexes, valid up to size().
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return the array of values, valid up to size().
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the highest index, or -1 for a vector of zeros.
+     */
+    public int getMaxIndex() {
+        return size == 0 ? -1 : indices[size-1];
+    }
+
+    /**
+     * Writes this vector into a dense buffer.
+     *
+     * @param buffer A buffer wider than the highest index.
+     * @return the buffer.
+     */
+    public double[] toDense(double[] buffer) {
+        Arrays.fill(buffer, 0.0);
+        for (int k = 0; k<size; k++) {
+            buffer[indices[k]] = values[k];
+        }
+        return buffer;
+    }
+}
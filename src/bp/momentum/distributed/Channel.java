@@ -0,0 +1,120 @@
+package bp.momentum.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+/**
+ * A connection between the coordinator and one worker, with the constants
+ * of the protocol. All the messages are big-endian, as written by
+ * DataOutputStream:
+ * <pre>
+ * worker hello:   MAGIC, VERSION, int parameters, int training samples,
+ *                 weights, momentum terms
+ * coordinator:    int worker index (or -1 and a UTF message), int workers,
+ *                 byte mode, int interval, boolean momentum, weights
+ *                 [, momentum terms]
+ * worker:         PUSH or EPOCH, double error, int samples, weights
+ *                 [, momentum terms]  (changes since the last reply in
+ *                 the asynchronous mode), or BYE
+ * coordinator:    PARAMETERS, double training error, weights
+ *                 [, momentum terms], or STOP
+ * </pre>
+ * The parameters are the weight matrices of all the layers one after
+ * another, see NetworkSnapshot, the momentum terms are sent only if they
+ * are synchronized. Vectors of doubles are copied through a byte buffer in
+ * bulk.
+ *
+ * @author pseckarova
+ */
+final class Channel implements Closeable {
+
+    static final int MAGIC = 0x42504d44;
+    static final int VERSION = 1;
+
+    /** parameters after some batches, from a worker */
+    static final byte PUSH = 1;
+    /** parameters at the end of an epoch, from a worker */
+    static final byte EPOCH = 2;
+    /** the worker stopped training */
+    static final byte BYE = 3;
+    /** new parameters, from the coordinator */
+    static final byte PARAMETERS = 4;
+    /** the training was stopped, from the coordinator */
+    static final byte STOP = 5;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteBuffer buffer;
+    private final DoubleBuffer doubles;
+
+    Channel(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.doubles = buffer.asDoubleBuffer();
+    }
+
+    DataInputStream in() {
+        return in;
+    }
+
+    DataOutputStream out() {
+        return out;
+    }
+
+    /**
+     * Writes a vector of doubles, without its length.
+     *
+     * @param values A vector.
+     * @throws IOException if the vector can't be written.
+     */
+    void writeDoubles(double[] values) throws IOException {
+        int perBuffer = BUFFER_SIZE / Double.BYTES;
+        for (int from = 0; from<values.length; from += perBuffer) {
+            int count = Math.min(perBuffer, values.length - from);
+            doubles.clear();
+            doubles.put(values, from, count);
+            out.write(buffer.array(), 0, count * Double.BYTES);
+        }
+    }
+
+    /**
+     * Reads a vector of doubles of the given array's length.
+     *
+     * @param values An array the vector is read to.
+     * @throws IOException if the vector can't be read.
+     */
+    void readDoubles(double[] values) throws IOException {
+        int perBuffer = BUFFER_SIZE / Double.BYTES;
+        for (int from = 0; from<values.length; from += perBuffer) {
+            int count = Math.min(perBuffer, values.length - from);
+            in.readFully(buffer.array(), 0, count * Double.BYTES);
+            doubles.clear();
+            doubles.get(values, from, count);
+        }
+    }
+
+    /**
+     * @return the address of the other side.
+     */
+    String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,386 @@
+package bp.momentum.distributed;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * A coordinator of a distributed training. It waits for all the workers to
+ * connect, sends them the parameters of the first one, so they all start
+ * from the same network, and then combines their parameters until they stop.
+ * <p>
+ * In the synchronous mode the coordinator works in rounds: it reads one
+ * message from every worker, averages their parameters and replies the
+ * average. A worker which has finished its epoch (its shard can have fewer
+ * batches) is not replied until all the workers have finished it, its last
+ * parameters take part in the remaining rounds of the epoch. The reply at
+ * the end of an epoch carries the sum of errors of all the shards, so all
+ * the workers decide about stopping from the error of the whole training
+ * set. When a worker stops, all the others get STOP in the next round.
+ * <p>
+ * In the asynchronous mode the coordinator is a parameter server: every
+ * worker is served by its own thread, its pushed changes are added to the
+ * parameters at once, divided by the count of workers (so pushes of all of
+ * them make one averaged step, as in the synchronous mode), and the current
+ * parameters are replied. The error at the end of an epoch is estimated
+ * from the last epoch errors of all the workers, scaled to the whole
+ * training set. Workers stop independently.
+ *
+ * @author pseckarova
+ */
+public class Coordinator {
+    private final int port;
+    private final int workers;
+    private final SyncMode mode;
+    private final int interval;
+    private final boolean momentum;
+    private final Channel[] channels;
+    private final double[] errors;
+    private final int[] samples;
+    private final int[] workerEpochs;
+    private double[] weights;
+    private double[] momentumTerms;
+    private int trainingSize;
+    private long exchanges;
+    private int epochs;
+    private volatile int localPort;
+
+    /**
+     * @param port A port to listen on, 0 for any free port.
+     * @param workers A count of workers.
+     * @param mode A way of combining the parameters.
+     * @param interval A count of batches a worker trains between two
+     * synchronizations.
+     * @param momentum true if the momentum terms are combined too, otherwise
+     * every worker keeps its own.
+     */
+    public Coordinator(int port, int workers, SyncMode mode, int interval, boolean momentum) {
+        this.port = port;
+        this.workers = workers;
+        this.mode = mode;
+        this.interval = interval;
+        this.momentum = momentum;
+        this.channels = new Channel[workers];
+        this.errors = new double[workers];
+        this.samples = new int[workers];
+        this.workerEpochs = new int[workers];
+    }
+
+    /**
+     * Runs the coordinator until all the workers stop.
+     *
+     * @param out A stream the progress is printed to.
+     * @throws IOException if the port can't be listened on.
+     */
+    public void run(PrintStream out) throws IOException {
+        try (ServerSocket server = new ServerSocket(port)) {
+            localPort = server.getLocalPort();
+            out.println(String.format("Coordinator listening on port %d for %d workers (%s, every %d batches).",
+                    server.getLocalPort(), workers, mode.name().toLowerCase(), interval));
+            int connected = 0;
+            while (connected < workers) {
+                Socket socket = server.accept();
+                if (accept(new Channel(socket), connected)) {
+                    out.println(String.format("Worker %d connected from %s.",
+                            connected, channels[connected].getRemoteAddress()));
+                    connected++;
+                }
+            }
+        }
+        for (int w = 0; w<workers; w++) {
+            welcome(w);
+        }
+
+        long start = System.nanoTime();
+        if (mode == SyncMode.SYNC) {
+            runSync(out);
+        } else {
+            runAsync(out);
+        }
+        out.println(String.format("Distributed training finished: %d epochs, %d exchanges, %.3f s.",
+                epochs, exchanges, (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * @return the port the coordinator listens on, 0 until run() starts 
+     * listening.
+     */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    /**
+     * Reads the hello of a worker. The parameters of the first worker become
+     * the initial parameters, the other workers must have the same count of
+     * them.
+     *
+     * @return true if the worker was accepted.
+     */
+    private boolean accept(Channel channel, int index) {
+        try {
+            if (channel.in().readInt() != Channel.MAGIC || channel.in().readInt() != Channel.VERSION) {
+                reject(channel, "Not a worker of this version.");
+                return false;
+            }
+            int count = channel.in().readInt();
+            int size = channel.in().readInt();
+            if (weights != null && count != weights.length) {
+                reject(channel, String.format("The network has %d weights, the other workers have %d.",
+                        count, weights.length));
+                return false;
+            }
+            double[] workerWeights = new double[count];
+            double[] workerMomentum = new double[count];
+            channel.readDoubles(workerWeights);
+            channel.readDoubles(workerMomentum);
+            if (weights == null) {
+                weights = workerWeights;
+                momentumTerms = workerMomentum;
+                trainingSize = size;
+            }
+            channels[index] = channel;
+            return true;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            return false;
+        }
+    }
+
+    private static void reject(Channel channel, String message) throws IOException {
+        channel.out().writeInt(-1);
+        channel.out().writeUTF(message);
+        channel.out().flush();
+        closeQuietly(channel);
+    }
+
+    private void welcome(int w) {
+        Channel channel = channels[w];
+        try {
+            channel.out().writeInt(w);
+            channel.out().writeInt(workers);
+            channel.out().writeByte(mode.ordinal());
+            channel.out().writeInt(interval);
+            channel.out().writeBoolean(momentum);
+            writeParameters(channel, weights, momentumTerms);
+            channel.out().flush();
+        } catch (IOException e) {
+            // the worker is lost, it is noticed by the first read
+            closeQuietly(channel);
+        }
+    }
+
+    private void writeParameters(Channel channel, double[] weights, double[] momentumTerms) throws IOException {
+        channel.writeDoubles(weights);
+        if (momentum) {
+            channel.writeDoubles(momentumTerms);
+        }
+    }
+
+    private void readParameters(Channel channel, double[] weights, double[] momentumTerms) throws IOException {
+        channel.readDoubles(weights);
+        if (momentum) {
+            channel.readDoubles(momentumTerms);
+        }
+    }
+
+    private void runSync(PrintStream out) {
+        double[][] workerWeights = new double[workers][weights.length];
+        double[][] workerMomentum = new double[workers][momentum ? weights.length : 0];
+        boolean[] held = new boolean[workers];
+        boolean[] left = new boolean[workers];
+        boolean stopping = false;
+
+        while (true) {
+            for (int w = 0; w<workers; w++) {
+                if (left[w] || held[w]) {
+                    continue;
+                }
+                byte type;
+                try {
+                    type = channels[w].in().readByte();
+                    if (type == Channel.PUSH || type == Channel.EPOCH) {
+                        errors[w] = channels[w].in().readDouble();
+                        samples[w] = channels[w].in().readInt();
+                        readParameters(channels[w], workerWeights[w], workerMomentum[w]);
+                    }
+                } catch (IOException e) {
+                    type = Channel.BYE;
+                }
+                if (type == Channel.EPOCH) {
+                    held[w] = true;
+                } else if (type != Channel.PUSH) {
+                    left[w] = true;
+                    stopping = true;
+                    closeQuietly(channels[w]);
+                }
+            }
+
+            int active = 0;
+            boolean epochEnd = true;
+            for (int w = 0; w<workers; w++) {
+                active += left[w] ? 0 : 1;
+                epochEnd &= left[w] || held[w];
+            }
+            if (active == 0) {
+                return;
+            }
+            if (stopping) {
+                for (int w = 0; w<workers; w++) {
+                    if (!left[w]) {
+                        send(w, Channel.STOP, 0.0);
+                        closeQuietly(channels[w]);
+                    }
+                }
+                out.println(String.format("A worker stopped, the other %d workers were stopped.", active));
+                return;
+            }
+
+            average(workerWeights, left, weights);
+            if (momentum) {
+                average(workerMomentum, left, momentumTerms);
+            }
+            exchanges++;
+            double error = 0.0;
+            if (epochEnd) {
+                for (int w = 0; w<workers; w++) {
+                    error += errors[w];
+                }
+                epochs++;
+            }
+            for (int w = 0; w<workers; w++) {
+                if (!left[w] && (epochEnd || !held[w])) {
+                    // a lost worker is noticed by the next read
+                    send(w, Channel.PARAMETERS, error);
+                    held[w] = false;
+                }
+            }
+        }
+    }
+
+    private static void average(double[][] vectors, boolean[] left, double[] result) {
+        Arrays.fill(result, 0.0);
+        int count = 0;
+        for (int w = 0; w<vectors.length; w++) {
+            if (left[w]) {
+                continue;
+            }
+            count++;
+            double[] vector = vectors[w];
+            for (int i = 0; i<result.length; i++) {
+                result[i] += vector[i];
+            }
+        }
+        for (int i = 0; i<result.length; i++) {
+            result[i] /= count;
+        }
+    }
+
+    private void send(int w, byte type, double error) {
+        try {
+            channels[w].out().writeByte(type);
+            if (type == Channel.PARAMETERS) {
+                channels[w].out().writeDouble(error);
+                writeParameters(channels[w], weights, momentumTerms);
+            }
+            channels[w].out().flush();
+        } catch (IOException e) {
+            closeQuietly(channels[w]);
+        }
+    }
+
+    private void runAsync(PrintStream out) {
+        Thread[] threads = new Thread[workers];
+        for (int w = 0; w<workers; w++) {
+            int worker = w;
+            threads[w] = new Thread(() -> serve(worker, out), "parameter-server-" + w);
+            threads[w].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serves the pushes of one worker until it stops.
+     */
+    private void serve(int w, PrintStream out) {
+        Channel channel = channels[w];
+        double[] deltaWeights = new double[weights.length];
+        double[] deltaMomentum = new double[momentum ? weights.length : 0];
+        double[] replyWeights = new double[weights.length];
+        double[] replyMomentum = new double[momentum ? weights.length : 0];
+        try {
+            while (true) {
+                byte type = channel.in().readByte();
+                if (type != Channel.PUSH && type != Channel.EPOCH) {
+                    break;
+                }
+                double error = channel.in().readDouble();
+                int count = channel.in().readInt();
+                readParameters(channel, deltaWeights, deltaMomentum);
+
+                double globalError = 0.0;
+                synchronized (this) {
+                    add(deltaWeights, weights, replyWeights);
+                    if (momentum) {
+                        add(deltaMomentum, momentumTerms, replyMomentum);
+                    }
+                    exchanges++;
+                    if (type == Channel.EPOCH) {
+                        errors[w] = error;
+                        samples[w] = count;
+                        globalError = estimateError();
+                        epochs = Math.max(epochs, ++workerEpochs[w]);
+                    }
+                }
+                channel.out().writeByte(Channel.PARAMETERS);
+                channel.out().writeDouble(globalError);
+                writeParameters(channel, replyWeights, replyMomentum);
+                channel.out().flush();
+            }
+        } catch (IOException e) {
+            out.println(String.format("Worker %d was disconnected.", w));
+        }
+        closeQuietly(channel);
+    }
+
+    /**
+     * Adds the pushed changes divided by the count of workers to the
+     * parameters and copies the result.
+     */
+    private void add(double[] delta, double[] parameters, double[] copy) {
+        for (int i = 0; i<parameters.length; i++) {
+            parameters[i] += delta[i] / workers;
+        }
+        System.arraycopy(parameters, 0, copy, 0, parameters.length);
+    }
+
+    /**
+     * @return the sum of the last epoch errors of the workers which have
+     * reported one, scaled to the whole training set.
+     */
+    private double estimateError() {
+        double error = 0.0;
+        long count = 0;
+        for (int w = 0; w<workers; w++) {
+            error += errors[w];
+            count += samples[w];
+        }
+        return count == 0 ? 0.0 : error * trainingSize / count;
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+}
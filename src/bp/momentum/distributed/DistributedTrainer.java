@@ -0,0 +1,127 @@
+package bp.momentum.distributed;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.data.DatasetRange;
+import bp.momentum.training.EpochTrainer;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * A trainer of one worker of a distributed training. The samples of the
+ * worker's shard are trained by the given local trainer, split into parts
+ * of interval batches, and after every part the parameters are synchronized
+ * with the coordinator (see WorkerConnection). At the end of an epoch they
+ * are synchronized again and the error of the whole training set is
+ * returned, so all the workers stop by the same criteria.
+ * <p>
+ * A lost coordinator stops the training, the network keeps the parameters
+ * of its last synchronization and its own training since.
+ *
+ * @author pseckarova
+ */
+public class DistributedTrainer implements EpochTrainer {
+    private final EpochTrainer trainer;
+    private final WorkerConnection connection;
+    private final int samplesPerSync;
+    private int sinceSync;
+    private int epochSamples;
+    private double lastError = Double.MAX_VALUE;
+    private boolean lost;
+
+    /**
+     * @param trainer A trainer of the local network.
+     * @param connection A connection to the coordinator.
+     * @param batchSize A count of samples of one batch of the trainer.
+     */
+    public DistributedTrainer(EpochTrainer trainer, WorkerConnection connection, int batchSize) {
+        this.trainer = trainer;
+        this.connection = connection;
+        this.samplesPerSync = Math.max(1, connection.getInterval()) * batchSize;
+    }
+
+    /**
+     * Trains a chunk of the shard, synchronizing after every interval
+     * batches. The parts are counted across the chunks of an epoch.
+     *
+     * @param dataset A chunk of the shard.
+     * @return the sum of errors of all the samples trained.
+     */
+    @Override
+    public double trainEpoch(Dataset dataset) {
+        double error = 0.0;
+        int position = 0;
+        while (position < dataset.size() && !isStopped()) {
+            int count = Math.min(dataset.size() - position, samplesPerSync - sinceSync);
+            error += trainer.trainEpoch(count == dataset.size()
+                    ? dataset : new DatasetRange(dataset, position, position + count));
+            position += count;
+            sinceSync += count;
+            epochSamples += count;
+            if (sinceSync == samplesPerSync) {
+                synchronize(false, 0.0, 0);
+                sinceSync = 0;
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Synchronizes the parameters at the end of an epoch.
+     *
+     * @param error The sum of errors of the shard.
+     * @return the sum of errors of the whole training set, the one of the
+     * last finished epoch if the training was stopped during this one.
+     */
+    @Override
+    public double finishEpoch(double error) {
+        double total = synchronize(true, error, epochSamples);
+        sinceSync = 0;
+        epochSamples = 0;
+        if (!isStopped()) {
+            lastError = total;
+        }
+        return lastError;
+    }
+
+    private double synchronize(boolean epochEnd, double error, int samples) {
+        if (lost) {
+            return error;
+        }
+        try {
+            return connection.synchronize(epochEnd, error, samples);
+        } catch (IOException e) {
+            System.err.println("The connection to the coordinator was lost! " + e.getMessage());
+            lost = true;
+            return error;
+        }
+    }
+
+    /**
+     * @return true if the coordinator stopped the training or was lost.
+     */
+    @Override
+    public boolean isStopped() {
+        return lost || connection.isStopped();
+    }
+
+    @Override
+    public void printStatistics(PrintStream out) {
+        trainer.printStatistics(out);
+        out.println(String.format("worker %d of %d: %d synchronizations (%s), %.3f s synchronizing",
+                connection.getIndex(), connection.getWorkers(), connection.getExchanges(),
+                connection.getMode().name().toLowerCase(), connection.getWaitNanos() / 1e9));
+    }
+
+    /**
+     * Leaves the distributed training and stops the local trainer.
+     */
+    @Override
+    public void shutdown() {
+        trainer.shutdown();
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // nothing to leave
+        }
+    }
+}
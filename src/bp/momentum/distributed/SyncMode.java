@@ -0,0 +1,32 @@
+package bp.momentum.distributed;
+
+/**
+ * Ways the workers of a distributed training combine their parameters.
+ *
+ * @author pseckarova
+ */
+public enum SyncMode {
+    /** every K batches all the workers wait for each other and continue from
+     * the average of their parameters, the default */
+    SYNC,
+    /** every K batches a worker pushes its changes to the parameter server
+     * and continues from the server's parameters, without waiting for the
+     * other workers */
+    ASYNC;
+
+    /**
+     * Parses the mode from its name, case insensitive.
+     *
+     * @param name A name of the mode.
+     * @return the mode, or null if there is no mode of that name.
+     */
+    public static SyncMode parse(String name) {
+        String normalized = name.trim();
+        for (SyncMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(normalized)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,302 @@
+package bp.momentum.distributed;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.data.DatasetRange;
+import bp.momentum.entity.Network;
+import bp.momentum.entity.NetworkSnapshot;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+
+/**
+ * A connection of a worker to the coordinator of a distributed training.
+ * Joining the training replaces the network's weights (and momentum terms,
+ * if they are synchronized) by the initial ones of the coordinator, so all
+ * the workers start from the same network. Then every synchronization sends
+ * the network's parameters - or in the asynchronous mode their changes
+ * since the last synchronization - and continues from the parameters
+ * replied by the coordinator. The parameters are copied through a snapshot
+ * of the network, see Network.snapshot(), so it has to be called between
+ * adjustments of the weights.
+ *
+ * @author pseckarova
+ */
+public class WorkerConnection implements Closeable {
+
+    /**
+     * A count of attempts to connect, 200 ms apart, so workers can be
+     * started before the coordinator.
+     */
+    public static final int CONNECT_ATTEMPTS = 50;
+
+    private final Channel channel;
+    private final Network network;
+    private final double[] weights;
+    private final double[] momentumTerms;
+    private final int index;
+    private final int workers;
+    private final SyncMode mode;
+    private final int interval;
+    private final boolean momentum;
+    private NetworkSnapshot snapshot;
+    private double[] pulledWeights;
+    private double[] pulledMomentum;
+    private boolean stopped;
+    private long exchanges;
+    private long waitNanos;
+
+    /**
+     * Connects to the coordinator and joins the training.
+     *
+     * @param address An address of the coordinator, host:port.
+     * @param network A network trained by this worker.
+     * @param trainingSize A count of samples of the whole training set.
+     * @return the connection.
+     * @throws IOException if the coordinator can't be reached or rejects the
+     * worker.
+     */
+    public static WorkerConnection connect(String address, Network network, int trainingSize) throws IOException {
+        int colon = address.lastIndexOf(':');
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("The coordinator address has to be host:port.");
+        }
+        String host = colon > 0 ? address.substring(0, colon) : "localhost";
+
+        Socket socket = null;
+        for (int attempt = 1; socket == null; attempt++) {
+            try {
+                socket = new Socket(host, port);
+            } catch (ConnectException e) {
+                if (attempt >= CONNECT_ATTEMPTS) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Connecting to the coordinator was interrupted.", ie);
+                }
+            }
+        }
+        Channel channel = new Channel(socket);
+        try {
+            return new WorkerConnection(channel, network, trainingSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private WorkerConnection(Channel channel, Network network, int trainingSize) throws IOException {
+        this.channel = channel;
+        this.network = network;
+        this.snapshot = network.snapshot(null, 0);
+        int count = 0;
+        for (double[] layer : snapshot.getWeights()) {
+            count += layer.length;
+        }
+        this.weights = new double[count];
+        this.momentumTerms = new double[count];
+
+        gather();
+        channel.out().writeInt(Channel.MAGIC);
+        channel.out().writeInt(Channel.VERSION);
+        channel.out().writeInt(count);
+        channel.out().writeInt(trainingSize);
+        channel.writeDoubles(weights);
+        channel.writeDoubles(momentumTerms);
+        channel.out().flush();
+
+        this.index = channel.in().readInt();
+        if (index < 0) {
+            throw new IOException(channel.in().readUTF());
+        }
+        this.workers = channel.in().readInt();
+        this.mode = SyncMode.values()[channel.in().readByte()];
+        this.interval = channel.in().readInt();
+        this.momentum = channel.in().readBoolean();
+        readParameters();
+        scatter();
+        if (mode == SyncMode.ASYNC) {
+            pulledWeights = weights.clone();
+            pulledMomentum = momentumTerms.clone();
+        }
+    }
+
+    /**
+     * Copies the network's weights and momentum terms into the flat vectors.
+     */
+    private void gather() {
+        snapshot = network.snapshot(snapshot, 0);
+        int offset = 0;
+        for (int l = 0; l<snapshot.getWeights().length; l++) {
+            int length = snapshot.getWeights()[l].length;
+            System.arraycopy(snapshot.getWeights()[l], 0, weights, offset, length);
+            System.arraycopy(snapshot.getWeightChanges()[l], 0, momentumTerms, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Sets the network's weights from the flat vector, and its momentum
+     * terms if they are synchronized (otherwise they stay as gathered).
+     */
+    private void scatter() {
+        int offset = 0;
+        for (int l = 0; l<snapshot.getWeights().length; l++) {
+            int length = snapshot.getWeights()[l].length;
+            System.arraycopy(weights, offset, snapshot.getWeights()[l], 0, length);
+            if (momentum) {
+                System.arraycopy(momentumTerms, offset, snapshot.getWeightChanges()[l], 0, length);
+            }
+            offset += length;
+        }
+        network.restore(snapshot);
+    }
+
+    private void writeParameters() throws IOException {
+        channel.writeDoubles(weights);
+        if (momentum) {
+            channel.writeDoubles(momentumTerms);
+        }
+    }
+
+    private void readParameters() throws IOException {
+        channel.readDoubles(weights);
+        if (momentum) {
+            channel.readDoubles(momentumTerms);
+        }
+    }
+
+    /**
+     * Sends the network's parameters to the coordinator and continues from
+     * the replied ones. After STOP the training is stopped and nothing is
+     * sent any more.
+     *
+     * @param epochEnd true at the end of an epoch.
+     * @param error The error of the samples trained since the last end of
+     * an epoch.
+     * @param samples A count of the samples trained since the last end of
+     * an epoch.
+     * @return the error of the whole training set at the end of an epoch
+     * (the given error if the training was stopped), 0 otherwise.
+     * @throws IOException if the coordinator is lost.
+     */
+    public double synchronize(boolean epochEnd, double error, int samples) throws IOException {
+        if (stopped) {
+            return error;
+        }
+        long start = System.nanoTime();
+        gather();
+        if (mode == SyncMode.ASYNC) {
+            subtract(weights, pulledWeights);
+            if (momentum) {
+                subtract(momentumTerms, pulledMomentum);
+            }
+        }
+        channel.out().writeByte(epochEnd ? Channel.EPOCH : Channel.PUSH);
+        channel.out().writeDouble(error);
+        channel.out().writeInt(samples);
+        writeParameters();
+        channel.out().flush();
+
+        byte type = channel.in().readByte();
+        if (type != Channel.PARAMETERS) {
+            stopped = true;
+            waitNanos += System.nanoTime() - start;
+            return error;
+        }
+        double totalError = channel.in().readDouble();
+        readParameters();
+        scatter();
+        if (mode == SyncMode.ASYNC) {
+            System.arraycopy(weights, 0, pulledWeights, 0, weights.length);
+            System.arraycopy(momentumTerms, 0, pulledMomentum, 0, momentumTerms.length);
+        }
+        exchanges++;
+        waitNanos += System.nanoTime() - start;
+        return epochEnd ? totalError : 0.0;
+    }
+
+    /**
+     * Turns the parameters into their changes since the last pull.
+     */
+    private static void subtract(double[] parameters, double[] pulled) {
+        for (int i = 0; i<parameters.length; i++) {
+            parameters[i] -= pulled[i];
+        }
+    }
+
+    /**
+     * @param dataset The whole training set.
+     * @return the contiguous part of the training set trained by this worker.
+     */
+    public Dataset getShard(Dataset dataset) {
+        int from = (int) ((long) dataset.size() * index / workers);
+        int to = (int) ((long) dataset.size() * (index + 1) / workers);
+        return new DatasetRange(dataset, from, to);
+    }
+
+    /**
+     * @return true if the coordinator stopped the training.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public SyncMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return a count of batches trained between two synchronizations.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return a count of synchronizations so far.
+     */
+    public long getExchanges() {
+        return exchanges;
+    }
+
+    /**
+     * @return nanoseconds spent by synchronizations, including the wait for
+     * the other workers.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * Leaves the training and closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!stopped) {
+                stopped = true;
+                channel.out().writeByte(Channel.BYE);
+                channel.out().flush();
+            }
+        } catch (IOException e) {
+            // the coordinator is already gone
+        } finally {
+            channel.close();
+        }
+    }
+}
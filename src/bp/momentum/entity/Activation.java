@@ -0,0 +1,132 @@
+package bp.momentum.entity;
+
+/**
+ * Activation functions of neurons, selectable per layer. Every function 
+ * computes the neuron output from its weighted input sum and the neuron 
+ * delta from the propagated error and the output. Lambda is the steepness 
+ * of the logistic and tanh functions, the other functions ignore it.
+ * <p>
+ * The ordinals are stored in network files, new functions have to be added 
+ * to the end.
+ * 
+ * @author pseckarova
+ */
+public enum Activation {
+    
+    /** 1/(1+exp(-lambda*x)), the default */
+    LOGISTIC {
+        @Override
+        public double apply(double value, float lambda) {
+            return 1/(1+Math.exp(-lambda*value));
+        }
+
+        @Override
+        public double delta(double errProp, double output, float lambda) {
+            return errProp * lambda * output * (1-output);
+        }
+    },
+    
+    /** 
+     * the logistic function interpolated from a table, with absolute error 
+     * below 7.4e-7 (see FastLogistic), about twice as fast as LOGISTIC 
+     */
+    FAST_LOGISTIC {
+        @Override
+        public double apply(double value, float lambda) {
+            return FastLogistic.value(lambda*value);
+        }
+
+        @Override
+        public double delta(double errProp, double output, float lambda) {
+            return errProp * lambda * output * (1-output);
+        }
+    },
+    
+    /** tanh(lambda*x) */
+    TANH {
+        @Override
+        public double apply(double value, float lambda) {
+            return Math.tanh(lambda*value);
+        }
+
+        @Override
+        public double delta(double errProp, double output, float lambda) {
+            return errProp * lambda * (1 - output*output);
+        }
+    },
+    
+    /** max(0, x) */
+    RELU {
+        @Override
+        public double apply(double value, float lambda) {
+            return value > 0 ? value : 0.0;
+        }
+
+        @Override
+        public double delta(double errProp, double output, float lambda) {
+            return output > 0 ? errProp : 0.0;
+        }
+    },
+    
+    /** x for positive x, otherwise 0.01*x */
+    LEAKY_RELU {
+        @Override
+        public double apply(double value, float lambda) {
+            return value > 0 ? value : LEAK*value;
+        }
+
+        @Override
+        public double delta(double errProp, double output, float lambda) {
+            return output > 0 ? errProp : LEAK*errProp;
+        }
+    },
+    
+    /** x */
+    LINEAR {
+        @Override
+        public double apply(double value, float lambda) {
+            return value;
+        }
+
+        @Override
+        public double delta(double errProp, double output, float lambda) {
+            return errProp;
+        }
+    };
+    
+    /** the slope of LEAKY_RELU for negative inputs */
+    public static final double LEAK = 0.01;
+    
+    /**
+     * @param value A weighted sum of neuron inputs.
+     * @param lambda A lambda parameter of the network.
+     * @return the neuron output.
+     */
+    public abstract double apply(double value, float lambda);
+    
+    /**
+     * @param errProp A propagation of error to the neuron.
+     * @param output The neuron output.
+     * @param lambda A lambda parameter of the network.
+     * @return the neuron delta - the error times the derivative of this 
+     * function at the neuron input.
+     */
+    public abstract double delta(double errProp, double output, float lambda);
+    
+    /**
+     * Parses the function from its name, case insensitive, '-' may be used 
+     * instead of '_'.
+     * 
+     * @param name A name of the function.
+     * @return the function, or null if there is no function of that name.
+     */
+    public static Activation parse(String name) {
+        String normalized = name.trim().replace('-', '_');
+        for (Activation a : values()) {
+            if (a.name().equalsIgnoreCase(normalized)) {
+                return a;
+            }
+        }
+        return null;
+    }
+}
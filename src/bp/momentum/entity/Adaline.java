@@ -1,64 +1,90 @@
 package bp.momentum.entity;
 
-import java.io.PrintWriter;
-import static java.lang.Math.sqrt;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Random;
+import bp.momentum.data.SparseVector;
+import bp.momentum.log.LogLevel;
+import bp.momentum.log.TrainingLog;
+import java.util.SplittableRandom;
 
 
 /**
- * A class representing one Adaline neuron.
+ * A class representing one Adaline neuron. The neuron does not own any
+ * storage, it is a view of one row of its layer's flat weight matrices
+ * (see Layer), so all the neurons of one layer share contiguous arrays.
+ * Every method works with the double or the float32 matrices of the layer,
+ * whichever it has. The methods with a sparse input touch only the weights
+ * of the non-zero inputs and of the bias.
  *
  * @author pseckarova
  */
 public class Adaline {
-    private final Double[] inWeights;
-    private Double[] lastWeightChange;
-    private final Double[] overallWeightChange;
+    private final Layer layer;
+    private final int index;
+    private final int offset;
     private final int inputWidth;
-    private double delta;
-    private double output;
 
     /**
-     * A constructor of one neuron. Initializes all private fields.
+     * A constructor of one neuron. Initializes all private fields, the input 
+     * weights are set by initWeights().
      * 
+     * @param layer A layer owning the flat arrays this neuron is a row of.
+     * @param index An index of this neuron in the layer.
      * @param inputWidth Is width of previous layer +1 for static 1.0 added 
-     * to the beginning of every layer input vector.
+     * to the end of every layer input vector.
      */
-    public Adaline(int inputWidth) {
+    public Adaline(Layer layer, int index, int inputWidth) {
+        this.layer = layer;
+        this.index = index;
+        this.offset = index * inputWidth;
         this.inputWidth = inputWidth;
-        
-        // init input weights with random values
-        this.inWeights = new Double[inputWidth];
-        initWeights();
-        
-        this.lastWeightChange = new Double[inputWidth];
-        Arrays.fill(lastWeightChange, 0.0);
-        
-        this.overallWeightChange = new Double[inputWidth];
-        Arrays.fill(overallWeightChange, 0.0);
-        
-        this.output = 0.0;
-        this.delta = 0.0;
-        
     }
     
     /**
-     * Computes and sets this neurons current output. 
+     * Computes and sets this neurons current output by the layer's 
+     * activation function. 
      * 
      * @param input
      * @param lambda A lambda parameter given for this network by user.
      * @return the computed output.
      */
-    public double computeOutput(ArrayList<Double> input, float lambda) {
+    public double computeOutput(double[] input, float lambda) {
+        double value = layer.weights32 != null 
+                ? Kernels.get().dot(input, 0, layer.weights32, offset, inputWidth)
+                : Kernels.get().dot(input, 0, layer.weights, offset, inputWidth);
         
-        double value = 0.0;
-        for(int i = 0; i<inputWidth; i++){
-            value += input.get(i)*inWeights[i];
+        double output = layer.activation.apply(value, lambda);
+        layer.output[index] = output;
+        return output;
+    }
+    
+    /**
+     * Computes and sets this neurons current output for a sparse input, 
+     * from the weights of the non-zero inputs and of the bias only.
+     * 
+     * @param input A sparse vector of input values, without the static 1.0.
+     * @param lambda A lambda parameter given for this network by user.
+     * @return the computed output.
+     */
+    public double computeOutput(SparseVector input, float lambda) {
+        int[] indices = input.getIndices();
+        double[] values = input.getValues();
+        int bias = offset + inputWidth - 1;
+        double value;
+        if (layer.weights32 != null) {
+            float[] weights = layer.weights32;
+            value = weights[bias];
+            for (int k = 0; k<input.size(); k++) {
+                value += values[k] * weights[offset + indices[k]];
+            }
+        } else {
+            double[] weights = layer.weights;
+            value = weights[bias];
+            for (int k = 0; k<input.size(); k++) {
+                value += values[k] * weights[offset + indices[k]];
+            }
         }
         
-        output = 1/(1+Math.exp(-lambda*value));
+        double output = layer.activation.apply(value, lambda);
+        layer.output[index] = output;
         return output;
     }
     
@@ -70,7 +96,9 @@ public class Adaline {
      * @return the computed delta value.
      */
     public double computeDelta(float lambda, double errProp) {
-        delta = errProp * lambda * output * (1-output);
+        double output = layer.output[index];
+        double delta = layer.activation.delta(errProp, output, lambda);
+        layer.delta[index] = delta;
         return delta;
     }
     
@@ -84,45 +112,199 @@ public class Adaline {
      * of this network by user.
      * @param momentumRate A momentum (alfa) parameter given for lerning 
      * of this network by user.
+     * @param log A training log, null for no logging.
      */
-    public void computeWeightChanges(ArrayList<Double> input, float learningRate, float momentumRate, PrintWriter log) {
-        for(int i = 0; i<inputWidth; i++){
-            lastWeightChange[i] = learningRate*delta*input.get(i) + momentumRate*lastWeightChange[i];
-            overallWeightChange[i] += lastWeightChange[i];
-            log.append(String.format(" %+1.6f (%+1.6f) ",inWeights[i],lastWeightChange[i]));
+    public void computeWeightChanges(double[] input, float learningRate, float momentumRate, TrainingLog log) {
+        double rate = learningRate*layer.delta[index];
+
+        if (layer.getOptimizer() != Optimizer.MOMENTUM) {
+            computeOptimizerChanges(input);
+        } else if (layer.weights32 != null) {
+            Kernels.get().momentum(rate, input, momentumRate, layer.lastWeightChange32, 
+                    layer.overallWeightChange, offset, inputWidth);
+        } else {
+            Kernels.get().momentum(rate, input, momentumRate, layer.lastWeightChange, 
+                    layer.overallWeightChange, offset, inputWidth);
+        }
+        if (TrainingLog.enabled(log, LogLevel.WEIGHT)) {
+            logWeightChanges(log);
         }
     }
     
+    /**
+     * Computes new weights' changes for a sparse input, only of the weights 
+     * of the non-zero inputs and of the bias. The momentum terms of the 
+     * other weights are left to the layer to decay lazily.
+     * 
+     * @param input A sparse vector of input values in current run.
+     * @param learningRate A learning rate (mi) parameter given for learning 
+     * of this network by user.
+     * @param momentumRate A momentum (alfa) parameter given for lerning 
+     * of this network by user.
+     * @param log A training log, null for no logging.
+     */
+    public void computeWeightChanges(SparseVector input, float learningRate, float momentumRate, TrainingLog log) {
+        double rate = learningRate*layer.delta[index];
+        int[] indices = input.getIndices();
+        double[] values = input.getValues();
+        int bias = offset + inputWidth - 1;
+
+        if (layer.getOptimizer() != Optimizer.MOMENTUM) {
+            Optimizer optimizer = layer.getOptimizer();
+            double delta = layer.delta[index];
+            for (int k = 0; k<input.size(); k++) {
+                addChange(offset + indices[k], optimizer.step(layer, offset + indices[k], delta*values[k]));
+            }
+            addChange(bias, optimizer.step(layer, bias, delta));
+        } else if (layer.weights32 != null) {
+            float[] last = layer.lastWeightChange32;
+            double[] overall = layer.overallWeightChange;
+            for (int k = 0; k<input.size(); k++) {
+                int w = offset + indices[k];
+                last[w] = (float) (rate*values[k] + momentumRate*last[w]);
+                overall[w] += last[w];
+            }
+            last[bias] = (float) (rate + momentumRate*last[bias]);
+            overall[bias] += last[bias];
+        } else {
+            double[] last = layer.lastWeightChange;
+            double[] overall = layer.overallWeightChange;
+            for (int k = 0; k<input.size(); k++) {
+                int w = offset + indices[k];
+                last[w] = rate*values[k] + momentumRate*last[w];
+                overall[w] += last[w];
+            }
+            last[bias] = rate + momentumRate*last[bias];
+            overall[bias] += last[bias];
+        }
+        if (TrainingLog.enabled(log, LogLevel.WEIGHT)) {
+            logWeightChanges(log);
+        }
+    }
+    
+    /**
+     * Computes new weights' changes by the rule of the layer's optimizer, 
+     * weight by weight.
+     * 
+     * @param input A vector of input values in current run.
+     */
+    private void computeOptimizerChanges(double[] input) {
+        Optimizer optimizer = layer.getOptimizer();
+        double delta = layer.delta[index];
+        for (int i = 0; i<inputWidth; i++) {
+            addChange(offset + i, optimizer.step(layer, offset + i, delta*input[i]));
+        }
+    }
+    
+    private void addChange(int w, double change) {
+        layer.overallWeightChange[w] += change;
+    }
+    
+    /**
+     * Writes this neuron's input weights and their last changes to the log.
+     * 
+     * @param log A training log.
+     */
+    void logWeightChanges(TrainingLog log) {
+        if (layer.weights32 != null) {
+            log.weightValues(widenRow(layer.weights32), widenRow(layer.lastWeightChange32), 0, inputWidth);
+        } else {
+            log.weightValues(layer.weights, layer.lastWeightChange, offset, inputWidth);
+        }
+    }
+    
+    /**
+     * Adds this neuron's error gradient for the current sample (delta times 
+     * input, without learning rate and momentum) to overallWeightChange. 
+     * Used by batch training, where the gradients of all samples of a batch 
+     * get reduced by Layer.reduceGradients() before the weights are adjusted.
+     * 
+     * @param input A vector of input values in current run.
+     */
+    public void accumulateGradient(double[] input) {
+        Kernels.get().axpy(layer.delta[index], input, 0, layer.overallWeightChange, offset, inputWidth);
+    }
+    
     /**
      * Adjusts this neurons input weights according to overallWeightChange 
      * (has to be computed first). 
      */
     public void adjustWeights() {
-        for(int i = 0; i<inputWidth; i++){
-            inWeights[i] += overallWeightChange[i];
-            overallWeightChange[i] = 0.0;
+        if (layer.weights32 != null) {
+            Kernels.get().addAndClear(layer.weights32, layer.overallWeightChange, offset, inputWidth);
+        } else {
+            Kernels.get().addAndClear(layer.weights, layer.overallWeightChange, offset, inputWidth);
         }
     }
     
     /**
-     * A method setting all the values of this.inWeights to random values from
-     * interval -3/sqrt(inputWidth) to 3/sgrt(inputWidth). However the variance 
-     * value is set only to 1/sqrt(inputWidth), because Random.nextGausian()
-     * method gives about 30% values out of the variance interval. If the random 
-     * value gets divided by 3 it is only about 0.3%. 
+     * Adjusts the input weights of the non-zero inputs of a sparse input and 
+     * of the bias according to overallWeightChange.
+     * 
+     * @param input The sparse vector the weight changes were computed for.
+     */
+    public void adjustWeights(SparseVector input) {
+        int[] indices = input.getIndices();
+        int bias = offset + inputWidth - 1;
+        if (layer.weights32 != null) {
+            float[] weights = layer.weights32;
+            double[] overall = layer.overallWeightChange;
+            for (int k = 0; k<input.size(); k++) {
+                int w = offset + indices[k];
+                weights[w] = (float) (weights[w] + overall[w]);
+                overall[w] = 0.0;
+            }
+            weights[bias] = (float) (weights[bias] + overall[bias]);
+            overall[bias] = 0.0;
+        } else {
+            double[] weights = layer.weights;
+            double[] overall = layer.overallWeightChange;
+            for (int k = 0; k<input.size(); k++) {
+                int w = offset + indices[k];
+                weights[w] += overall[w];
+                overall[w] = 0.0;
+            }
+            weights[bias] += overall[bias];
+            overall[bias] = 0.0;
+        }
+    }
+    
+    /**
+     * A method setting all the values of this neuron's input weights to 
+     * random values from a normal distribution with the given deviation. The 
+     * values are drawn from the neuron's own stream by the polar method, with 
+     * StrictMath, so the same stream gives the same weights on any JVM and 
+     * the neurons can be initialized in any order or in parallel.
+     * 
+     * @param random A random stream of this neuron only.
+     * @param deviation A standard deviation of the weights, see WeightInit.
      */
-    private void initWeights() {
+    void initWeights(SplittableRandom random, double deviation) {
+        double[] inWeights = layer.weights;
+        float[] inWeights32 = layer.weights32;
         
-        Random random = new Random();
-        double variance = 1.0/sqrt(inputWidth); 
+        for(int i = 0; i<inputWidth; i += 2){
+            double v1, v2, s;
+            do {
+                v1 = 2 * random.nextDouble() - 1;
+                v2 = 2 * random.nextDouble() - 1;
+                s = v1 * v1 + v2 * v2;
+            } while (s >= 1 || s == 0);
+            double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s) * deviation;
         
-        for(int i = 0; i<inputWidth; i++){
-            this.inWeights[i] = (random.nextGaussian()) * variance ;
+            for (int k = i; k<i+2 && k<inputWidth; k++) {
+                double value = (k == i ? v1 : v2) * multiplier;
+                if (inWeights32 != null) {
+                    inWeights32[offset+k] = (float) value;
+                } else {
+                    inWeights[offset+k] = value;
+                }
+            }
         }
     }    
 
     public double getOutput() {
-        return output;
+        return layer.output[index];
     }
 
     public int getInputWidth() {
@@ -130,19 +312,57 @@ public class Adaline {
     }
 
     public double getDelta() {
-        return delta;
+        return layer.delta[index];
     }
 
+    /**
+     * @return a copy of this neuron's row of the layer's weight matrix.
+     */
     public Double[] getInWeights() {
-        return inWeights;
+        layer.applyLazyMomentum();
+        return layer.weights32 != null ? copyRow(widenRow(layer.weights32), 0) : copyRow(layer.weights, offset);
     }
 
+    /**
+     * @return a copy of this neuron's row of the layer's momentum terms.
+     */
     public Double[] getLastWeightChange() {
-        return lastWeightChange;
+        layer.applyLazyMomentum();
+        return layer.weights32 != null ? copyRow(widenRow(layer.lastWeightChange32), 0) 
+                : copyRow(layer.lastWeightChange, offset);
     }
 
+    /**
+     * Writes the given momentum terms into this neuron's row of the layer's
+     * flat array.
+     *
+     * @param lastWeightChange A vector of inputWidth momentum terms.
+     */
     public void setLastWeightChange(Double[] lastWeightChange) {
-        this.lastWeightChange = lastWeightChange;
+        layer.applyLazyMomentum();
+        for(int i = 0; i<inputWidth; i++){
+            if (layer.lastWeightChange32 != null) {
+                layer.lastWeightChange32[offset+i] = lastWeightChange[i].floatValue();
+            } else {
+                layer.lastWeightChange[offset+i] = lastWeightChange[i];
+            }
+        }
+    }
+
+    private Double[] copyRow(double[] matrix, int from) {
+        Double[] row = new Double[inputWidth];
+        for(int i = 0; i<inputWidth; i++){
+            row[i] = matrix[from+i];
+        }
+        return row;
+    }
+    
+    private double[] widenRow(float[] matrix) {
+        double[] row = new double[inputWidth];
+        for(int i = 0; i<inputWidth; i++){
+            row[i] = matrix[offset+i];
+        }
+        return row;
     }
     
 }
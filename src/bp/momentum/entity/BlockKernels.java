@@ -0,0 +1,271 @@
+package bp.momentum.entity;
+
+import java.util.Arrays;
+
+/**
+ * Kernels of the blocked training computations - a block of samples goes
+ * through a layer as one matrix-matrix product instead of a matrix-vector
+ * product per sample, so every tile of the weight matrix is read from memory
+ * once per block and reused from cache for all its samples. All the matrices
+ * are flat and row-major: a block has one row per sample, a weight matrix
+ * one row of inputWidth weights per neuron (see Layer).
+ * <p>
+ * The loops are tiled by INPUT_TILE inputs and NEURON_TILE neurons, and four
+ * samples are computed together, so every weight loaded is used four times.
+ * The sums are split by the tiles, so the results differ from the per-sample
+ * kernels in the last bits. The float overloads read float weights and
+ * compute in double, like Kernels.
+ *
+ * @author pseckarova
+ */
+public final class BlockKernels {
+
+    /**
+     * A count of samples of one block, as used by Network.
+     */
+    public static final int BLOCK_ROWS = 64;
+
+    /**
+     * A count of inputs of one tile, a tile of four input vectors stays in
+     * the L1 cache.
+     */
+    static final int INPUT_TILE = 256;
+
+    /**
+     * A count of neurons of one tile, a tile of the weight matrix stays in
+     * the L2 cache.
+     */
+    static final int NEURON_TILE = 64;
+
+    private BlockKernels() {
+    }
+
+    /**
+     * Computes the product of a block of inputs and the transposed weights,
+     * the potentials of all the neurons for all the samples:
+     * c[s*cStride+j] = sum of a[s*k+i]*w[j*k+i] over i from 0 to k, for s
+     * from 0 to rows and j from 0 to n.
+     *
+     * @param a A block of rows input vectors of k values.
+     * @param rows A count of samples.
+     * @param k An input width.
+     * @param w A weight matrix of n rows of k weights.
+     * @param n A count of neurons.
+     * @param c A block of output vectors, overwritten.
+     * @param cStride A distance of two output vectors in c.
+     */
+    public static void multiplyTransposed(double[] a, int rows, int k, double[] w, int n,
+            double[] c, int cStride) {
+        for (int s = 0; s<rows; s++) {
+            Arrays.fill(c, s*cStride, s*cStride + n, 0.0);
+        }
+        for (int i0 = 0; i0<k; i0 += INPUT_TILE) {
+            int i1 = Math.min(i0 + INPUT_TILE, k);
+            for (int j0 = 0; j0<n; j0 += NEURON_TILE) {
+                int j1 = Math.min(j0 + NEURON_TILE, n);
+                int s = 0;
+                for (; s+4<=rows; s += 4) {
+                    int a0 = s*k, a1 = a0+k, a2 = a1+k, a3 = a2+k;
+                    for (int j = j0; j<j1; j++) {
+                        double c0 = 0.0, c1 = 0.0, c2 = 0.0, c3 = 0.0;
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            double weight = w[wi];
+                            c0 += a[a0+i]*weight;
+                            c1 += a[a1+i]*weight;
+                            c2 += a[a2+i]*weight;
+                            c3 += a[a3+i]*weight;
+                        }
+                        c[s*cStride + j] += c0;
+                        c[(s+1)*cStride + j] += c1;
+                        c[(s+2)*cStride + j] += c2;
+                        c[(s+3)*cStride + j] += c3;
+                    }
+                }
+                for (; s<rows; s++) {
+                    int a0 = s*k;
+                    for (int j = j0; j<j1; j++) {
+                        double c0 = 0.0;
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            c0 += a[a0+i]*w[wi];
+                        }
+                        c[s*cStride + j] += c0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The product of a block of inputs and transposed float weights, see the
+     * double one.
+     */
+    public static void multiplyTransposed(double[] a, int rows, int k, float[] w, int n,
+            double[] c, int cStride) {
+        for (int s = 0; s<rows; s++) {
+            Arrays.fill(c, s*cStride, s*cStride + n, 0.0);
+        }
+        for (int i0 = 0; i0<k; i0 += INPUT_TILE) {
+            int i1 = Math.min(i0 + INPUT_TILE, k);
+            for (int j0 = 0; j0<n; j0 += NEURON_TILE) {
+                int j1 = Math.min(j0 + NEURON_TILE, n);
+                int s = 0;
+                for (; s+4<=rows; s += 4) {
+                    int a0 = s*k, a1 = a0+k, a2 = a1+k, a3 = a2+k;
+                    for (int j = j0; j<j1; j++) {
+                        double c0 = 0.0, c1 = 0.0, c2 = 0.0, c3 = 0.0;
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            double weight = w[wi];
+                            c0 += a[a0+i]*weight;
+                            c1 += a[a1+i]*weight;
+                            c2 += a[a2+i]*weight;
+                            c3 += a[a3+i]*weight;
+                        }
+                        c[s*cStride + j] += c0;
+                        c[(s+1)*cStride + j] += c1;
+                        c[(s+2)*cStride + j] += c2;
+                        c[(s+3)*cStride + j] += c3;
+                    }
+                }
+                for (; s<rows; s++) {
+                    int a0 = s*k;
+                    for (int j = j0; j<j1; j++) {
+                        double c0 = 0.0;
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            c0 += a[a0+i]*w[wi];
+                        }
+                        c[s*cStride + j] += c0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the product of a block of deltas and the weights, the error
+     * propagation vectors of all the samples:
+     * e[s*k+i] = sum of d[s*n+j]*w[j*k+i] over j from 0 to n, for s from 0
+     * to rows and i from 0 to k.
+     *
+     * @param d A block of rows delta vectors of n values.
+     * @param rows A count of samples.
+     * @param n A count of neurons.
+     * @param w A weight matrix of n rows of k weights.
+     * @param k An input width.
+     * @param e A block of rows error propagation vectors of k values,
+     * overwritten.
+     */
+    public static void multiply(double[] d, int rows, int n, double[] w, int k, double[] e) {
+        Arrays.fill(e, 0, rows*k, 0.0);
+        for (int i0 = 0; i0<k; i0 += INPUT_TILE) {
+            int i1 = Math.min(i0 + INPUT_TILE, k);
+            for (int j0 = 0; j0<n; j0 += NEURON_TILE) {
+                int j1 = Math.min(j0 + NEURON_TILE, n);
+                int s = 0;
+                for (; s+4<=rows; s += 4) {
+                    int e0 = s*k, e1 = e0+k, e2 = e1+k, e3 = e2+k;
+                    for (int j = j0; j<j1; j++) {
+                        double d0 = d[s*n + j];
+                        double d1 = d[(s+1)*n + j];
+                        double d2 = d[(s+2)*n + j];
+                        double d3 = d[(s+3)*n + j];
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            double weight = w[wi];
+                            e[e0+i] += d0*weight;
+                            e[e1+i] += d1*weight;
+                            e[e2+i] += d2*weight;
+                            e[e3+i] += d3*weight;
+                        }
+                    }
+                }
+                for (; s<rows; s++) {
+                    int e0 = s*k;
+                    for (int j = j0; j<j1; j++) {
+                        double d0 = d[s*n + j];
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            e[e0+i] += d0*w[wi];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The product of a block of deltas and float weights, see the double one.
+     */
+    public static void multiply(double[] d, int rows, int n, float[] w, int k, double[] e) {
+        Arrays.fill(e, 0, rows*k, 0.0);
+        for (int i0 = 0; i0<k; i0 += INPUT_TILE) {
+            int i1 = Math.min(i0 + INPUT_TILE, k);
+            for (int j0 = 0; j0<n; j0 += NEURON_TILE) {
+                int j1 = Math.min(j0 + NEURON_TILE, n);
+                int s = 0;
+                for (; s+4<=rows; s += 4) {
+                    int e0 = s*k, e1 = e0+k, e2 = e1+k, e3 = e2+k;
+                    for (int j = j0; j<j1; j++) {
+                        double d0 = d[s*n + j];
+                        double d1 = d[(s+1)*n + j];
+                        double d2 = d[(s+2)*n + j];
+                        double d3 = d[(s+3)*n + j];
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            double weight = w[wi];
+                            e[e0+i] += d0*weight;
+                            e[e1+i] += d1*weight;
+                            e[e2+i] += d2*weight;
+                            e[e3+i] += d3*weight;
+                        }
+                    }
+                }
+                for (; s<rows; s++) {
+                    int e0 = s*k;
+                    for (int j = j0; j<j1; j++) {
+                        double d0 = d[s*n + j];
+                        for (int i = i0, wi = j*k + i0; i<i1; i++, wi++) {
+                            e[e0+i] += d0*w[wi];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the product of a transposed block of deltas and a block of inputs,
+     * the error gradients of all the weights summed over the samples:
+     * g[j*k+i] += sum of d[s*n+j]*a[s*k+i] over s from 0 to rows, for j from
+     * 0 to n and i from 0 to k.
+     *
+     * @param d A block of rows delta vectors of n values.
+     * @param a A block of rows input vectors of k values.
+     * @param rows A count of samples.
+     * @param n A count of neurons.
+     * @param k An input width.
+     * @param g A matrix of n rows of k gradients, added to.
+     */
+    public static void addTransposedProduct(double[] d, double[] a, int rows, int n, int k, double[] g) {
+        for (int i0 = 0; i0<k; i0 += INPUT_TILE) {
+            int i1 = Math.min(i0 + INPUT_TILE, k);
+            for (int j = 0; j<n; j++) {
+                int gj = j*k;
+                int s = 0;
+                for (; s+4<=rows; s += 4) {
+                    double d0 = d[s*n + j];
+                    double d1 = d[(s+1)*n + j];
+                    double d2 = d[(s+2)*n + j];
+                    double d3 = d[(s+3)*n + j];
+                    int a0 = s*k, a1 = a0+k, a2 = a1+k, a3 = a2+k;
+                    for (int i = i0; i<i1; i++) {
+                        g[gj+i] += d0*a[a0+i] + d1*a[a1+i] + d2*a[a2+i] + d3*a[a3+i];
+                    }
+                }
+                for (; s<rows; s++) {
+                    double d0 = d[s*n + j];
+                    int a0 = s*k;
+                    for (int i = i0; i<i1; i++) {
+                        g[gj+i] += d0*a[a0+i];
+                    }
+                }
+            }
+        }
+    }
+}
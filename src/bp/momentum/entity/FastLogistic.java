@@ -0,0 +1,47 @@
+package bp.momentum.entity;
+
+/**
+ * The logistic function 1/(1+exp(-x)) interpolated linearly from a table of 
+ * 128 values per unit on the interval (-16, 16), outside of it the function 
+ * is 0 or 1. The interpolation error is at most h^2/8 times the maximum of 
+ * the second derivative (0.0962) for the step h = 1/128, about 7.3e-7, the 
+ * values cut off outside the interval differ by at most 1.2e-7. The table 
+ * takes 32kB, so it stays in the L1 cache of most processors.
+ * 
+ * @author pseckarova
+ */
+final class FastLogistic {
+    
+    static final double RANGE = 16.0;
+    static final int STEPS_PER_UNIT = 128;
+    
+    private static final double[] TABLE = new double[(int) (2*RANGE*STEPS_PER_UNIT) + 2];
+    
+    static {
+        for (int i = 0; i<TABLE.length; i++) {
+            double x = -RANGE + (double) i / STEPS_PER_UNIT;
+            TABLE[i] = 1/(1+Math.exp(-x));
+        }
+    }
+
+    private FastLogistic() {
+    }
+    
+    /**
+     * @param x An argument.
+     * @return the approximate value of the logistic function.
+     */
+    static double value(double x) {
+        if (x >= RANGE) {
+            return 1.0;
+        }
+        if (!(x > -RANGE)) {
+            // also NaN gives NaN
+            return x != x ? x : 0.0;
+        }
+        double position = (x + RANGE) * STEPS_PER_UNIT;
+        int i = (int) position;
+        double fraction = position - i;
+        return TABLE[i] + (TABLE[i+1] - TABLE[i]) * fraction;
+    }
+}
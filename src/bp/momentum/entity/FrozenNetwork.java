@@ -0,0 +1,126 @@
+package bp.momentum.entity;
+
+/**
+ * An immutable snapshot of a trained network used for inference. It holds 
+ * only copies of the weights and no mutable state, so it can be shared by 
+ * any number of threads, also while the original network is being trained.
+ * 
+ * @author pseckarova
+ */
+public final class FrozenNetwork {
+    
+    /** a count of doubles of one block of weight rows reused from cache */
+    private static final int BLOCK_SIZE = 32 * 1024;
+    
+    private final double[][] weights;
+    private final int[] widths;
+    private final int[] inputWidths;
+    private final float[] lambdas;
+    private final Activation[] activations;
+
+    /**
+     * Creates the snapshot by copying current weights of the given network.
+     * 
+     * @param network A network to be frozen.
+     */
+    FrozenNetwork(Network network) {
+        int count = network.getLayers().size();
+        this.weights = new double[count][];
+        this.widths = new int[count];
+        this.inputWidths = new int[count];
+        this.lambdas = new float[count];
+        this.activations = new Activation[count];
+        
+        for (int l = 0; l<count; l++) {
+            Layer layer = network.getLayers().get(l);
+            weights[l] = layer.copyWeights();
+            widths[l] = layer.getWidth();
+            inputWidths[l] = layer.getInputWidth();
+            lambdas[l] = layer.getLambda();
+            activations[l] = layer.getActivation();
+        }
+    }
+    
+    /**
+     * Computes the network response to one input vector.
+     * 
+     * @param input A vector of network input values.
+     * @return a new vector of network output values.
+     */
+    public double[] predict(double[] input) {
+        double[] current = input;
+        
+        for (int l = 0; l<weights.length; l++) {
+            double[] w = weights[l];
+            int inputWidth = inputWidths[l];
+            int bias = inputWidth - 1;
+            double[] next = new double[widths[l]];
+            
+            for (int n = 0, offset = 0; n<next.length; n++, offset += inputWidth) {
+                // the static 1.0 at the end of the input is multiplied by the last weight
+                double value = w[offset + bias];
+                for (int i = 0; i<bias; i++) {
+                    value += current[i]*w[offset + i];
+                }
+                next[n] = activations[l].apply(value, lambdas[l]);
+            }
+            current = next;
+        }
+        return current;
+    }
+    
+    /**
+     * Computes the network response to a batch of input vectors. Every layer 
+     * is computed as a product of the activations matrix and the transposed 
+     * weights matrix, going through the weights by blocks of rows, so every 
+     * block is reused from cache for all the inputs of the batch.
+     * 
+     * @param inputs Input vectors of the batch.
+     * @return new output vectors, one for every input.
+     */
+    public double[][] predictBatch(double[][] inputs) {
+        int batch = inputs.length;
+        double[][] current = inputs;
+        
+        for (int l = 0; l<weights.length; l++) {
+            double[] w = weights[l];
+            int width = widths[l];
+            int inputWidth = inputWidths[l];
+            int bias = inputWidth - 1;
+            float lambda = lambdas[l];
+            Activation activation = activations[l];
+            double[][] next = new double[batch][width];
+            int blockRows = Math.max(1, BLOCK_SIZE / inputWidth);
+            
+            for (int from = 0; from<width; from += blockRows) {
+                int to = Math.min(width, from + blockRows);
+                for (int s = 0; s<batch; s++) {
+                    double[] in = current[s];
+                    double[] out = next[s];
+                    for (int n = from, offset = from*inputWidth; n<to; n++, offset += inputWidth) {
+                        double value = w[offset + bias];
+                        for (int i = 0; i<bias; i++) {
+                            value += in[i]*w[offset + i];
+                        }
+                        out[n] = value;
+                    }
+                }
+            }
+            for (double[] out : next) {
+                for (int n = 0; n<width; n++) {
+                    out[n] = activation.apply(out[n], lambda);
+                }
+            }
+            current = next;
+        }
+        return current;
+    }
+    
+    public int getInputWidth() {
+        return inputWidths[0] - 1;
+    }
+    
+    public int getOutputWidth() {
+        return widths[widths.length - 1];
+    }
+}
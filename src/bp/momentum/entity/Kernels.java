@@ -0,0 +1,120 @@
+package bp.momentum.entity;
+
+/**
+ * Kernels of the training computations on flat arrays - dot products of 
+ * weight rows and inputs, axpy updates and momentum updates. The scalar 
+ * kernels are used by default, the vector kernels (SIMD by the incubating 
+ * Vector API, see vector/src) are used when the JVM runs with 
+ * --add-modules jdk.incubator.vector. The implementation is selected once 
+ * at startup by the system property bp.momentum.kernels - auto (default), 
+ * scalar or vector. The vector kernels sum in a different order, so their 
+ * results differ from the scalar ones in the last bits.
+ * <p>
+ * The float overloads are used by float32 networks (see Precision), they 
+ * read and write float weight matrices but compute and sum in double, 
+ * into double accumulators.
+ * 
+ * @author pseckarova
+ */
+public abstract class Kernels {
+    
+    public static final String PROPERTY = "bp.momentum.kernels";
+    
+    private static final String VECTOR_CLASS = "bp.momentum.entity.VectorKernels";
+    private static final Kernels INSTANCE = select();
+    
+    /**
+     * @return the kernels selected at startup.
+     */
+    public static Kernels get() {
+        return INSTANCE;
+    }
+    
+    private static Kernels select() {
+        String name = System.getProperty(PROPERTY, "auto");
+        if (name.equalsIgnoreCase("scalar")) {
+            return new ScalarKernels();
+        }
+        Kernels kernels = create("vector");
+        if (kernels == null && name.equalsIgnoreCase("vector")) {
+            System.err.println("The vector kernels are not available, please run with "
+                    + "--add-modules jdk.incubator.vector. Using the scalar kernels.");
+        }
+        return kernels == null ? new ScalarKernels() : kernels;
+    }
+    
+    /**
+     * Creates the kernels of the given name, regardless of the selected ones.
+     * 
+     * @param name scalar or vector.
+     * @return the kernels, or null if they are not available in this JVM.
+     */
+    public static Kernels create(String name) {
+        if (name.equalsIgnoreCase("scalar")) {
+            return new ScalarKernels();
+        }
+        if (!name.equalsIgnoreCase("vector")) {
+            return null;
+        }
+        try {
+            return (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled, or the JVM runs without the vector module
+            return null;
+        }
+    }
+    
+    /**
+     * @return sum of a[aOffset+i]*b[bOffset+i] for i from 0 to length.
+     */
+    public abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+    
+    /**
+     * Computes y[yOffset+i] += alpha*x[xOffset+i] for i from 0 to length.
+     */
+    public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+    
+    /**
+     * Computes the momentum update of one row of weights:
+     * last[offset+i] = rate*input[i] + momentumRate*last[offset+i], 
+     * overall[offset+i] += last[offset+i] for i from 0 to length.
+     */
+    public abstract void momentum(double rate, double[] input, double momentumRate, 
+            double[] last, double[] overall, int offset, int length);
+    
+    /**
+     * Computes target[offset+i] += source[offset+i], source[offset+i] = 0 
+     * for i from 0 to length.
+     */
+    public abstract void addAndClear(double[] target, double[] source, int offset, int length);
+    
+    /**
+     * @return sum of a[aOffset+i]*b[bOffset+i] for i from 0 to length, 
+     * summed in double.
+     */
+    public abstract double dot(double[] a, int aOffset, float[] b, int bOffset, int length);
+    
+    /**
+     * Computes y[yOffset+i] += alpha*x[xOffset+i] for i from 0 to length.
+     */
+    public abstract void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length);
+    
+    /**
+     * The momentum update of one row of float momentum terms, see the 
+     * double one. The terms are rounded to float, their sums are kept 
+     * in double.
+     */
+    public abstract void momentum(double rate, double[] input, double momentumRate, 
+            float[] last, double[] overall, int offset, int length);
+    
+    /**
+     * Computes target[offset+i] += source[offset+i], rounded to float, 
+     * source[offset+i] = 0 for i from 0 to length.
+     */
+    public abstract void addAndClear(float[] target, double[] source, int offset, int length);
+    
+    /**
+     * @return a name of the kernels.
+     */
+    public abstract String getName();
+}
@@ -1,25 +1,166 @@
 package bp.momentum.entity;
 
-import static bp.momentum.BPMomentum.getDoubleArrayFromList;
-import java.io.PrintWriter;
+import bp.momentum.data.SparseVector;
+import bp.momentum.log.LogLevel;
+import bp.momentum.log.TrainingLog;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * A class representing one Adaline neurons layer.
+ * A class representing one Adaline neurons layer. Weights, momentum terms
+ * and accumulated weight changes of all the neurons are stored as flat
+ * row-major matrices (one row of inputWidth values per neuron), the neurons
+ * themselves are only views of their rows. All the buffers used while
+ * training (outputs with the static 1.0 bias slot, deltas and the error
+ * propagation vector) are allocated once here and reused for every sample.
+ * 
+ * Wide layers (width times input width over the parallel threshold) split 
+ * their neurons into chunks computed in parallel on the common fork-join 
+ * pool, small layers are computed sequentially. The loops over weight rows 
+ * are computed by Kernels.
+ * 
+ * The weights are updated by an Optimizer, classical momentum by default. 
+ * Its per-weight state is the momentum matrix, rules with a second moment 
+ * keep it in a float32 matrix of the same shape, allocated only for them.
+ * 
+ * The weights are initialized randomly by the given WeightInit scheme from 
+ * a seed: every neuron gets its own stream split from the layer's stream, 
+ * so a seed gives the same weights whether the rows are filled sequentially 
+ * or in parallel (layers over PARALLEL_INIT_THRESHOLD weights) by any count 
+ * of threads.
+ * 
+ * A float32 layer (see Precision) stores the weights and momentum terms as 
+ * floats in weights32 and lastWeightChange32 instead, the double matrices 
+ * are null then. The accumulated weight changes (overallWeightChange) sum 
+ * the gradients of a whole batch, so they stay double, as do outputs, 
+ * deltas and error propagation.
+ * 
+ * A block of samples can be computed at once by the block methods 
+ * (computeBlockOutputs() ...), as matrix-matrix products by BlockKernels. 
+ * Their buffers hold one row per sample and are allocated by the first 
+ * block, they are independent of the per-sample buffers.
+ * 
+ * A first layer can be given sparse inputs (see SparseVector), then only 
+ * the weights of the non-zero inputs and of the bias are computed and 
+ * updated. The momentum terms of the other weights keep moving their weights 
+ * and decaying in every step of the dense SGD - here that is applied lazily: 
+ * every input column remembers the sparse step its weights are current at 
+ * and the missed steps are applied at once when the column is used again 
+ * (or by applyLazyMomentum() before any dense use of the weights), so the 
+ * weights are the same as if the input was dense.
  * 
  * @author pseckarova
  */
 public class Layer {
+    
+    /**
+     * A count of weights over which the layer initializes its rows in 
+     * parallel.
+     */
+    public static final int PARALLEL_INIT_THRESHOLD = 65536;
+    
     private final ArrayList<Adaline> neurons;
-    private ArrayList<Double> output;
-    private ArrayList<Double> input;
+    private final int width;
+    private final int inputWidth;
+    final Precision precision;
+    final double[] weights;
+    final double[] lastWeightChange;
+    final double[] overallWeightChange;
+    final float[] weights32;
+    final float[] lastWeightChange32;
+    final double[] output;
+    final double[] delta;
+    private final double[] errPropagation;
+    private double[] input;
+    private SparseVector sparseInput;
+    private SparseVector sparseChanges;
+    private long[] syncedSteps;
+    private long sparseSteps;
+    private boolean lazy;
     private final float learningRate;
     private final float momentumRate;
     private final float lambda;
+    final Activation activation;
+    private int parallelThreshold;
+    private RangeTask neuronTasks;
+    private RangeTask inputTasks;
+    private Operation parallelOperation;
+    private double[] parallelVector;
+    private SplittableRandom[] initRandoms;
+    private double initDeviation;
+    private Optimizer optimizer;
+    float[] secondMoment;
+    private long optimizerSteps;
+    double firstCorrection;
+    double secondCorrection;
+    private double[] blockInputs;
+    private double[] blockOutputs;
+    private double[] blockDeltas;
+    private double[] blockErrPropagation;
+    private int blockCapacity;
 
+    private enum Operation {
+        OUTPUT, DELTAS, WEIGHT_CHANGES, ADJUST, ERR_PROPAGATION, INIT
+    }
+    
     /**
-     * A constructor initializing all final fields of this Layer.
+     * A task computing the current parallel operation of the layer for 
+     * a range of neurons (or of inputs in case of error propagation). The 
+     * range is split in halves until it is not wider than the grain, the 
+     * whole tree of tasks is created once and reinitialized for every 
+     * operation, so the parallel computation doesn't allocate.
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Layer layer;
+        private final int from;
+        private final int to;
+        private final RangeTask left;
+        private final RangeTask right;
+
+        RangeTask(Layer layer, int from, int to, int grain) {
+            this.layer = layer;
+            this.from = from;
+            this.to = to;
+            if (to - from > grain) {
+                int middle = (from + to) >>> 1;
+                this.left = new RangeTask(layer, from, middle, grain);
+                this.right = new RangeTask(layer, middle, to, grain);
+            } else {
+                this.left = null;
+                this.right = null;
+            }
+        }
+        
+        /**
+         * Makes this task and all its subtasks ready to be invoked again.
+         */
+        void reset() {
+            reinitialize();
+            if (left != null) {
+                left.reset();
+                right.reset();
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (left != null) {
+                invokeAll(left, right);
+            } else {
+                layer.computeRange(layer.parallelOperation, layer.parallelVector, from, to);
+            }
+        }
+    }
+
+    /**
+     * A constructor of a layer of logistic neurons.
      * 
      * @param learningRate A learning rate (mi) parameter given for learning 
      * of this network by user.
@@ -28,16 +169,218 @@ public class Layer {
      * @param lambda A lambda parameter given for this network by user.
      * @param width A count of neurons in this layer.
      * @param inputWidth A count of neurons in previous layer +1 for static 1.0 
-     * added to beginning of every input vector.
+     * added to end of every input vector.
      */
     public Layer(float learningRate, float momentumRate, float lambda, int width, int inputWidth) {
+        this(learningRate, momentumRate, lambda, width, inputWidth, Activation.LOGISTIC);
+    }
+    
+    /**
+     * A constructor initializing all final fields of this Layer.
+     * 
+     * @param learningRate A learning rate (mi) parameter given for learning 
+     * of this network by user.
+     * @param momentumRate A momentum rate (alfa) parameter given for learning 
+     * of this network by user.
+     * @param lambda A lambda parameter given for this network by user.
+     * @param width A count of neurons in this layer.
+     * @param inputWidth A count of neurons in previous layer +1 for static 1.0 
+     * added to end of every input vector.
+     * @param activation An activation function of the neurons.
+     */
+    public Layer(float learningRate, float momentumRate, float lambda, int width, int inputWidth, 
+            Activation activation) {
+        this(learningRate, momentumRate, lambda, width, inputWidth, activation, Precision.DOUBLE);
+    }
+    
+    /**
+     * A constructor initializing all final fields of this Layer.
+     * 
+     * @param learningRate A learning rate (mi) parameter given for learning 
+     * of this network by user.
+     * @param momentumRate A momentum rate (alfa) parameter given for learning 
+     * of this network by user.
+     * @param lambda A lambda parameter given for this network by user.
+     * @param width A count of neurons in this layer.
+     * @param inputWidth A count of neurons in previous layer +1 for static 1.0 
+     * added to end of every input vector.
+     * @param activation An activation function of the neurons.
+     * @param precision A precision of the weight matrices.
+     */
+    public Layer(float learningRate, float momentumRate, float lambda, int width, int inputWidth, 
+            Activation activation, Precision precision) {
+        this(learningRate, momentumRate, lambda, width, inputWidth, activation, precision, 
+                WeightInit.GAUSSIAN, ThreadLocalRandom.current().nextLong());
+    }
+    
+    /**
+     * A constructor initializing all final fields of this Layer and its 
+     * weights from the given seed.
+     * 
+     * @param learningRate A learning rate (mi) parameter given for learning 
+     * of this network by user.
+     * @param momentumRate A momentum rate (alfa) parameter given for learning 
+     * of this network by user.
+     * @param lambda A lambda parameter given for this network by user.
+     * @param width A count of neurons in this layer.
+     * @param inputWidth A count of neurons in previous layer +1 for static 1.0 
+     * added to end of every input vector.
+     * @param activation An activation function of the neurons.
+     * @param precision A precision of the weight matrices.
+     * @param init A scheme of the random initial weights.
+     * @param seed A seed of the initial weights.
+     */
+    public Layer(float learningRate, float momentumRate, float lambda, int width, int inputWidth, 
+            Activation activation, Precision precision, WeightInit init, long seed) {
         this.learningRate = learningRate;
         this.momentumRate = momentumRate;
         this.lambda = lambda;
+        this.activation = activation;
+        this.width = width;
+        this.inputWidth = inputWidth;
+        this.precision = precision;
+        boolean single = precision == Precision.FLOAT;
+        this.weights = single ? null : new double[width * inputWidth];
+        this.lastWeightChange = single ? null : new double[width * inputWidth];
+        this.overallWeightChange = new double[width * inputWidth];
+        this.weights32 = single ? new float[width * inputWidth] : null;
+        this.lastWeightChange32 = single ? new float[width * inputWidth] : null;
+        this.output = new double[width + 1];
+        this.output[width] = 1.0;
+        this.delta = new double[width];
+        this.errPropagation = new double[inputWidth];
+        this.parallelThreshold = Integer.MAX_VALUE;
+        this.neurons = new ArrayList<>();
+        setOptimizer(Optimizer.MOMENTUM);
+        
+        for(int i = 0; i<width; i++) {
+           neurons.add(new Adaline(this, i, inputWidth));
+        }
+        // init input weights with random values
+        initWeights(init, seed);
+    }
+    
+    /**
+     * Fills the weights with random values of the given scheme, every row 
+     * from its own stream split from the seed in the order of neurons.
+     * 
+     * @param init A scheme of the random weights.
+     * @param seed A seed of the weights.
+     */
+    private void initWeights(WeightInit init, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        initRandoms = new SplittableRandom[width];
+        for (int i = 0; i<width; i++) {
+            initRandoms[i] = random.split();
+        }
+        initDeviation = init.getDeviation(inputWidth, width);
+        
+        if (width > 1 && (long)width * inputWidth > PARALLEL_INIT_THRESHOLD) {
+            computeParallel(Operation.INIT, null, width);
+        } else {
+            computeRange(Operation.INIT, null, 0, width);
+        }
+        initRandoms = null;
+    }
+    
+    /**
+     * A constructor of a replica layer sharing the weights of the given layer.
+     * The replica has its own buffers, momentum terms and weight changes 
+     * (and the other optimizer state), so it can be trained by another 
+     * thread while the weights stay shared.
+     * Replicas are always computed sequentially, the parallelism is already 
+     * given by the threads training them.
+     * 
+     * @param shared A layer whose weights are shared.
+     */
+    Layer(Layer shared) {
+        this.learningRate = shared.learningRate;
+        this.momentumRate = shared.momentumRate;
+        this.lambda = shared.lambda;
+        this.activation = shared.activation;
+        this.width = shared.width;
+        this.inputWidth = shared.inputWidth;
+        this.precision = shared.precision;
+        boolean single = precision == Precision.FLOAT;
+        this.weights = shared.weights;
+        this.lastWeightChange = single ? null : new double[width * inputWidth];
+        this.overallWeightChange = new double[width * inputWidth];
+        this.weights32 = shared.weights32;
+        this.lastWeightChange32 = single ? new float[width * inputWidth] : null;
+        this.output = new double[width + 1];
+        this.output[width] = 1.0;
+        this.delta = new double[width];
+        this.errPropagation = new double[inputWidth];
+        this.parallelThreshold = Integer.MAX_VALUE;
         this.neurons = new ArrayList<>();
+        setOptimizer(shared.optimizer);
         
-        for(int i = width; i>0; i--) {
-           neurons.add(new Adaline(inputWidth));
+        for(int i = 0; i<width; i++) {
+           neurons.add(new Adaline(this, i, inputWidth));
+        }
+    }
+    
+    private boolean isParallel() {
+        return width > 1 && (long)width * inputWidth > parallelThreshold;
+    }
+    
+    private void computeParallel(Operation operation, double[] vector, int size) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        RangeTask tasks = size == width ? neuronTasks : inputTasks;
+        if (tasks == null) {
+            tasks = new RangeTask(this, 0, size, Math.max(1, size / (pool.getParallelism() * 4)));
+            if (size == width) {
+                neuronTasks = tasks;
+            } else {
+                inputTasks = tasks;
+            }
+        } else {
+            tasks.reset();
+        }
+        parallelOperation = operation;
+        parallelVector = vector;
+        pool.invoke(tasks);
+        parallelVector = null;
+    }
+    
+    private void computeRange(Operation operation, double[] vector, int from, int to) {
+        switch (operation) {
+            case OUTPUT:
+                for (int i = from; i<to; i++) {
+                    neurons.get(i).computeOutput(input, lambda);
+                }
+                break;
+            case DELTAS:
+                for (int i = from; i<to; i++) {
+                    neurons.get(i).computeDelta(lambda, vector[i]);
+                }
+                break;
+            case WEIGHT_CHANGES:
+                for (int i = from; i<to; i++) {
+                    neurons.get(i).computeWeightChanges(input, learningRate, momentumRate, null);
+                }
+                break;
+            case ADJUST:
+                for (int i = from; i<to; i++) {
+                    neurons.get(i).adjustWeights();
+                }
+                break;
+            case INIT:
+                for (int i = from; i<to; i++) {
+                    neurons.get(i).initWeights(initRandoms[i], initDeviation);
+                }
+                break;
+            case ERR_PROPAGATION:
+                // the range is of inputs here, every task sums its columns
+                Arrays.fill(errPropagation, from, to, 0.0);
+                for (int n = 0; n<width; n++) {
+                    if (weights32 != null) {
+                        Kernels.get().axpy(delta[n], weights32, n*inputWidth + from, errPropagation, from, to - from);
+                    } else {
+                        Kernels.get().axpy(delta[n], weights, n*inputWidth + from, errPropagation, from, to - from);
+                    }
+                }
+                break;
         }
     }
     
@@ -45,36 +388,170 @@ public class Layer {
      * Computes output vector of this layer for given input.
      * 
      * @param input A vector of this layer's input values.
-     * @return the vector of this layer's neurons' computed outputs.
+     * @param log A training log, null for no logging.
+     * @return the vector of this layer's neurons' computed outputs followed 
+     * by the static 1.0, so it can be used directly as next layer's input. 
+     * The vector is reused by the next call.
      */
-    public ArrayList<Double> computeOutput(ArrayList<Double> input, PrintWriter log) {
+    public double[] computeOutput(double[] input, TrainingLog log) {
         this.input = input; //stored for computation of neurons' deltas later
+        this.sparseInput = null;
+        applyLazyMomentum();
         
-        output = new ArrayList<>();
-        for(Adaline n : neurons) {
-            output.add(n.computeOutput(input,lambda));
-            log.append(String.format(" %+1.6f ",n.getOutput()));
+        if (isParallel()) {
+            computeParallel(Operation.OUTPUT, null, width);
+        } else {
+            for(int i = 0; i<width; i++) {
+                neurons.get(i).computeOutput(input,lambda);
+            }
+        }
+        if (TrainingLog.enabled(log, LogLevel.SAMPLE)) {
+            log.outputValues(output, 0, width);
         }
         return output;
     }
     
+    /**
+     * Computes output vector of this layer for a sparse input, from the 
+     * weights of the non-zero inputs only. Their columns get the momentum 
+     * of the missed steps applied first. Always computed sequentially, the 
+     * work is given by the count of non-zero inputs.
+     * 
+     * @param input A sparse vector of this layer's input values, without 
+     * the static 1.0.
+     * @param log A training log, null for no logging.
+     * @return the vector of this layer's neurons' computed outputs followed 
+     * by the static 1.0. The vector is reused by the next call.
+     */
+    public double[] computeOutput(SparseVector input, TrainingLog log) {
+        this.input = null;
+        this.sparseInput = input; //stored for computation of weight changes later
+        if (syncedSteps == null) {
+            syncedSteps = new long[inputWidth];
+        }
+        
+        int[] indices = input.getIndices();
+        for (int k = 0; k<input.size(); k++) {
+            catchUp(indices[k]);
+        }
+        catchUp(inputWidth - 1);
+        for(int i = 0; i<width; i++) {
+            neurons.get(i).computeOutput(input, lambda);
+        }
+        if (TrainingLog.enabled(log, LogLevel.SAMPLE)) {
+            log.outputValues(output, 0, width);
+        }
+        return output;
+    }
+    
+    /**
+     * Applies the momentum of the sparse steps missed by the given input 
+     * column: in every missed step the momentum term of a weight was 
+     * multiplied by the momentum rate and added to the weight.
+     * 
+     * @param column An index of the input.
+     */
+    private void catchUp(int column) {
+        long missed = sparseSteps - syncedSteps[column];
+        if (missed == 0) {
+            return;
+        }
+        syncedSteps[column] = sparseSteps;
+        double decay = Math.pow(momentumRate, missed);
+        double gain = gain(decay, missed);
+        if (secondMoment != null) {
+            double secondDecay = Math.pow(optimizer.getSecondMomentDecay(), missed);
+            for (int w = column; w<secondMoment.length; w += inputWidth) {
+                secondMoment[w] = (float) (secondMoment[w] * secondDecay);
+            }
+        }
+        
+        if (weights32 != null) {
+            for (int w = column; w<weights32.length; w += inputWidth) {
+                double last = lastWeightChange32[w];
+                weights32[w] = (float) (weights32[w] + last*gain);
+                lastWeightChange32[w] = (float) (last*decay);
+            }
+        } else {
+            for (int w = column; w<weights.length; w += inputWidth) {
+                double last = lastWeightChange[w];
+                weights[w] += last*gain;
+                lastWeightChange[w] = last*decay;
+            }
+        }
+    }
+    
+    /**
+     * @return momentumRate^1 + ... + momentumRate^missed, the sum of the 
+     * decayed momentum terms added to a weight in the missed steps - 
+     * Nesterov momentum adds every term multiplied by momentumRate once more.
+     */
+    private double gain(double decay, long missed) {
+        double gain = momentumRate == 1.0f ? missed : momentumRate * (1.0 - decay) / (1.0 - momentumRate);
+        return optimizer == Optimizer.NESTEROV ? momentumRate * gain : gain;
+    }
+    
+    /**
+     * Applies the momentum of the missed sparse steps to all the weights, so 
+     * they can be read or used densely. Has to be called by the thread 
+     * training this layer, it is called by every dense operation. The 
+     * matrices are walked by rows, with the factors of every column computed 
+     * once.
+     */
+    void applyLazyMomentum() {
+        if (!lazy) {
+            return;
+        }
+        double[] decays = new double[inputWidth];
+        double[] gains = new double[inputWidth];
+        double[] secondDecays = new double[inputWidth];
+        for (int column = 0; column<inputWidth; column++) {
+            long missed = sparseSteps - syncedSteps[column];
+            decays[column] = Math.pow(momentumRate, missed);
+            gains[column] = gain(decays[column], missed);
+            secondDecays[column] = Math.pow(optimizer.getSecondMomentDecay(), missed);
+            syncedSteps[column] = sparseSteps;
+        }
+        
+        for (int n = 0, w = 0; n<width; n++) {
+            for (int column = 0; column<inputWidth; column++, w++) {
+                if (secondMoment != null) {
+                    secondMoment[w] = (float) (secondMoment[w] * secondDecays[column]);
+                }
+                if (weights32 != null) {
+                    double last = lastWeightChange32[w];
+                    weights32[w] = (float) (weights32[w] + last*gains[column]);
+                    lastWeightChange32[w] = (float) (last*decays[column]);
+                } else {
+                    double last = lastWeightChange[w];
+                    weights[w] += last*gains[column];
+                    lastWeightChange[w] = last*decays[column];
+                }
+            }
+        }
+        lazy = false;
+    }
+    
     /**
      * Computes error from the difference in this layer's output compared 
      * to the expected. Sets this layer's deltas.
      * 
      * @param expectedOutput A vector of values, that were expected as output 
      * of this layer.
+     * @param log A training log, null for no logging.
      * @return the computed error of this layer's output.
      */
-    public double computeError(ArrayList<Double> expectedOutput, PrintWriter log) {
+    public double computeError(double[] expectedOutput, TrainingLog log) {
         double error = 0.0;
+        boolean logged = TrainingLog.enabled(log, LogLevel.SAMPLE);
         
-        int i = 0;
-        for(Adaline n : neurons) {
-            double diff = expectedOutput.get(i) - n.getOutput();
-            n.computeDelta(lambda, diff);
+        for(int i = 0; i<width; i++) {
+            double diff = expectedOutput[i] - output[i];
+            neurons.get(i).computeDelta(lambda, diff);
             error += 0.5 * diff * diff;
-            log.append("\noutput diff: " + diff);
+            if (logged) {
+                log.outputDiff(diff);
+            }
         }
         
         return error;
@@ -86,23 +563,26 @@ public class Layer {
      * as a sum of all weights to the N from all the i neurons M_i of this layer 
      * multiplied by that M_i's delta.
      * 
-     * @return the computed error propagation vector.
+     * @return the computed error propagation vector, reused by the next call.
      */
-    public ArrayList<Double> getErrorPropagation() {
-        int inputWidth = neurons.get(0).getInputWidth();
-        Double[] errPropogationArr = new Double[inputWidth];
-        Arrays.fill(errPropogationArr, 0.0);
+    public double[] getErrorPropagation() {
+        applyLazyMomentum();
+        if (isParallel()) {
+            computeParallel(Operation.ERR_PROPAGATION, null, inputWidth);
+            return errPropagation;
+        }
         
-        for (Adaline n : neurons) {
-            Double[] weights = n.getInWeights();
-            
-            for (int i = 0; i<inputWidth; i++) {
-                errPropogationArr[i] += n.getDelta()*weights[i];
-                i++;
-            } 
+        Arrays.fill(errPropagation, 0.0);
+        
+        for (int n = 0; n<width; n++) {
+            if (weights32 != null) {
+                Kernels.get().axpy(delta[n], weights32, n*inputWidth, errPropagation, 0, inputWidth);
+            } else {
+                Kernels.get().axpy(delta[n], weights, n*inputWidth, errPropagation, 0, inputWidth);
+            }
         }
         
-        return new ArrayList(Arrays.asList(errPropogationArr));
+        return errPropagation;
     }
     
     /**
@@ -111,49 +591,487 @@ public class Layer {
      * @param errPropagation a vector of error propagation values explained 
      * by the Layer.getErrorPropagation() method. 
      */
-    public void computeDeltas(ArrayList<Double> errPropagation) {
-        int i = 0;
-        for(Adaline n : neurons) {
-            n.computeDelta(lambda, errPropagation.get(i++));
+    public void computeDeltas(double[] errPropagation) {
+        if (isParallel()) {
+            computeParallel(Operation.DELTAS, errPropagation, width);
+            return;
+        }
+        
+        for(int i = 0; i<width; i++) {
+            neurons.get(i).computeDelta(lambda, errPropagation[i]);
+        }
+    }
+    
+    /**
+     * Computes all input weight changes for all of this layer's neurons, 
+     * only of the weights of non-zero inputs if the last input was sparse.
+     * 
+     * @param log A training log, null for no logging.
+     */
+    public void computeWeightChanges(TrainingLog log) {
+        boolean logged = TrainingLog.enabled(log, LogLevel.WEIGHT);
+        if (sparseInput != null) {
+            if (logged) {
+                // the log shows all the weights as they are in dense SGD
+                applyLazyMomentum();
+            }
+            sparseChanges = sparseInput;
+            for (int i = 0; i<width; i++) {
+                if (logged) {
+                    log.startNeuronWeights(i+1);
+                }
+                neurons.get(i).computeWeightChanges(sparseInput, learningRate, momentumRate, log);
+            }
+            return;
+        }
+        if (isParallel()) {
+            computeParallel(Operation.WEIGHT_CHANGES, null, width);
+            for (int i = 0; logged && i<width; i++) {
+                log.startNeuronWeights(i+1);
+                neurons.get(i).logWeightChanges(log);
+            }
+            return;
+        }
+        
+        for (int i = 0; i<width; i++) {
+            if (logged) {
+                log.startNeuronWeights(i+1);
+            }
+            neurons.get(i).computeWeightChanges(input, learningRate, momentumRate, log);
         }
     }
     
     /**
-     * Computes all input weight changes for all of this layer's neurons.
+     * Adds error gradients for the current sample of all of this layer's 
+     * neurons to overallWeightChange.
      */
-    public void computeWeightChanges(PrintWriter log) {
-        int i = 1;
-        for (Adaline n : neurons) {
-            log.append("\nneuron " + i++ +": ");
-            n.computeWeightChanges(input, learningRate, momentumRate, log);
+    public void accumulateGradients() {
+        for (int i = 0; i<width; i++) {
+            neurons.get(i).accumulateGradient(input);
         }
     }
     
     /**
-     * Adjusts all input weights of all of this layer's neurons.
+     * Computes output vectors of this layer for a block of inputs.
+     * 
+     * @param inputs A block of rows input vectors of inputWidth values, each 
+     * ending with the static 1.0.
+     * @param rows A count of the input vectors.
+     * @return the block of output vectors, each followed by the static 1.0 
+     * (width+1 values apart), so it can be used directly as next layer's 
+     * block of inputs. The block is reused by the next call.
+     */
+    public double[] computeBlockOutputs(double[] inputs, int rows) {
+        applyLazyMomentum();
+        if (blockCapacity < rows) {
+            blockOutputs = new double[rows * (width + 1)];
+            blockDeltas = new double[rows * width];
+            blockErrPropagation = new double[rows * inputWidth];
+            blockCapacity = rows;
+        }
+        this.blockInputs = inputs; //stored for computation of gradients later
+        
+        int stride = width + 1;
+        if (weights32 != null) {
+            BlockKernels.multiplyTransposed(inputs, rows, inputWidth, weights32, width, blockOutputs, stride);
+        } else {
+            BlockKernels.multiplyTransposed(inputs, rows, inputWidth, weights, width, blockOutputs, stride);
+        }
+        for (int s = 0; s<rows; s++) {
+            int o = s*stride;
+            for (int i = 0; i<width; i++) {
+                blockOutputs[o+i] = activation.apply(blockOutputs[o+i], lambda);
+            }
+            blockOutputs[o+width] = 1.0;
+        }
+        return blockOutputs;
+    }
+    
+    /**
+     * Computes error of a block of outputs compared to the expected ones. 
+     * Sets this layer's block of deltas.
+     * 
+     * @param expectedOutputs A block of rows expected output vectors of 
+     * width values.
+     * @param rows A count of the vectors.
+     * @return the sum of the errors of all the outputs.
+     */
+    public double computeBlockError(double[] expectedOutputs, int rows) {
+        double error = 0.0;
+        for (int s = 0; s<rows; s++) {
+            int o = s*(width + 1);
+            for (int i = 0; i<width; i++) {
+                double diff = expectedOutputs[s*width + i] - blockOutputs[o+i];
+                blockDeltas[s*width + i] = activation.delta(diff, blockOutputs[o+i], lambda);
+                error += 0.5 * diff * diff;
+            }
+        }
+        return error;
+    }
+    
+    /**
+     * Computes error propagation vectors of a block for the previous layer, 
+     * see getErrorPropagation().
+     * 
+     * @param rows A count of samples of the block.
+     * @return the block of rows error propagation vectors of inputWidth 
+     * values, reused by the next call.
+     */
+    public double[] getBlockErrorPropagation(int rows) {
+        if (weights32 != null) {
+            BlockKernels.multiply(blockDeltas, rows, width, weights32, inputWidth, blockErrPropagation);
+        } else {
+            BlockKernels.multiply(blockDeltas, rows, width, weights, inputWidth, blockErrPropagation);
+        }
+        return blockErrPropagation;
+    }
+    
+    /**
+     * Computes deltas of a block for all this layer's neurons.
+     * 
+     * @param errPropagation A block of error propagation vectors of the next 
+     * layer, width+1 values apart (the value of the static 1.0 is ignored).
+     * @param rows A count of samples of the block.
+     */
+    public void computeBlockDeltas(double[] errPropagation, int rows) {
+        int stride = width + 1;
+        for (int s = 0; s<rows; s++) {
+            for (int i = 0; i<width; i++) {
+                blockDeltas[s*width + i] = activation.delta(errPropagation[s*stride + i], 
+                        blockOutputs[s*stride + i], lambda);
+            }
+        }
+    }
+    
+    /**
+     * Adds error gradients of all the samples of a block to 
+     * overallWeightChange, see accumulateGradients().
+     * 
+     * @param rows A count of samples of the block.
+     */
+    public void accumulateBlockGradients(int rows) {
+        BlockKernels.addTransposedProduct(blockDeltas, blockInputs, rows, width, inputWidth, overallWeightChange);
+    }
+    
+    /**
+     * Reduces the error gradients accumulated by the given replicas into 
+     * this layer's weight changes, applying learning rate and momentum (or 
+     * the rule of the optimizer) once for the whole batch. The replicas' 
+     * accumulators are cleared. Only the weights with flat indexes from the 
+     * given range are processed, so the reduction can be split between 
+     * threads. Batch training is always 
+     * dense, so there is no lazy momentum to apply.
+     * 
+     * @param replicas Replicas of this layer, see Layer(Layer).
+     * @param from The first flat weight index to reduce.
+     * @param to The flat weight index after the last one to reduce.
+     */
+    public void reduceGradients(Layer[] replicas, int from, int to) {
+        for (Layer replica : replicas) {
+            Kernels.get().addAndClear(overallWeightChange, replica.overallWeightChange, from, to - from);
+        }
+        if (optimizer != Optimizer.MOMENTUM) {
+            for (int w = from; w<to; w++) {
+                overallWeightChange[w] = optimizer.step(this, w, overallWeightChange[w]);
+            }
+            return;
+        }
+        if (weights32 != null) {
+            reduceMomentum32(from, to);
+            return;
+        }
+        for (int w = from; w<to; w++) {
+            lastWeightChange[w] = learningRate*overallWeightChange[w] + momentumRate*lastWeightChange[w];
+            overallWeightChange[w] = lastWeightChange[w];
+        }
+    }
+    
+    private void reduceMomentum32(int from, int to) {
+        for (int w = from; w<to; w++) {
+            lastWeightChange32[w] = (float) (learningRate*overallWeightChange[w] 
+                    + momentumRate*(double) lastWeightChange32[w]);
+            overallWeightChange[w] = lastWeightChange32[w];
+        }
+    }
+    
+    /**
+     * Adjusts all input weights of all of this layer's neurons, only the 
+     * weights of the non-zero inputs if the weight changes were computed 
+     * for a sparse input. That ends a sparse step, the other columns have 
+     * missed it.
      */
     public void adjustWeights() {
-        for (Adaline n : neurons) {
-            n.adjustWeights();
+        countStep();
+        if (sparseChanges != null) {
+            for (int i = 0; i<width; i++) {
+                neurons.get(i).adjustWeights(sparseChanges);
+            }
+            sparseSteps++;
+            int[] indices = sparseChanges.getIndices();
+            for (int k = 0; k<sparseChanges.size(); k++) {
+                syncedSteps[indices[k]] = sparseSteps;
+            }
+            syncedSteps[inputWidth - 1] = sparseSteps;
+            sparseChanges = null;
+            lazy = true;
+            return;
+        }
+        applyLazyMomentum();
+        if (isParallel()) {
+            computeParallel(Operation.ADJUST, null, width);
+            return;
+        }
+        
+        for (int i = 0; i<width; i++) {
+            neurons.get(i).adjustWeights();
         }
     }
     
+    /**
+     * Counts an adjustment of the weights and updates Adam's bias corrections 
+     * for the next step.
+     */
+    private void countStep() {
+        optimizerSteps++;
+        if (optimizer == Optimizer.ADAM) {
+            updateCorrections();
+        }
+    }
+    
+    private void updateCorrections() {
+        long step = optimizerSteps + 1;
+        firstCorrection = momentumRate == 0.0f ? 1.0 : 1.0 / (1.0 - Math.pow(momentumRate, step));
+        secondCorrection = 1.0 / (1.0 - Math.pow(optimizer.getSecondMomentDecay(), step));
+    }
+    
+    /**
+     * Switches the update rule of the weights and resets its state - the 
+     * second moments and the count of steps start from zero. The momentum 
+     * terms stay, unless switching to or from ADAM, whose first moment is 
+     * an average of directions rather than a weight change. Setting the 
+     * current optimizer keeps its state, e.g. the restored one.
+     * 
+     * @param optimizer An optimizer.
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        if (optimizer == this.optimizer) {
+            return;
+        }
+        applyLazyMomentum();
+        if (this.optimizer != null && (optimizer == Optimizer.ADAM || this.optimizer == Optimizer.ADAM)) {
+            if (lastWeightChange32 != null) {
+                Arrays.fill(lastWeightChange32, 0.0f);
+            } else {
+                Arrays.fill(lastWeightChange, 0.0);
+            }
+        }
+        this.optimizer = optimizer;
+        this.secondMoment = optimizer.getSecondMomentDecay() > 0 ? new float[width * inputWidth] : null;
+        this.optimizerSteps = 0;
+        updateCorrections();
+    }
+    
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+    
+    /**
+     * @param w A flat index of a weight.
+     * @return the momentum term of the weight.
+     */
+    double getLastWeightChange(int w) {
+        return lastWeightChange32 != null ? lastWeightChange32[w] : lastWeightChange[w];
+    }
+    
+    /**
+     * @param w A flat index of a weight.
+     * @param change A new momentum term of the weight.
+     */
+    void setLastWeightChange(int w, double change) {
+        if (lastWeightChange32 != null) {
+            lastWeightChange32[w] = (float) change;
+        } else {
+            lastWeightChange[w] = change;
+        }
+    }
+    
+    /**
+     * @return a copy of the momentum terms, one list per neuron.
+     */
     public ArrayList<ArrayList<Double>> getWeightChanges() {
-        ArrayList<ArrayList<Double>> weightChanges = new ArrayList();
-        for(Adaline n : neurons) {
-            weightChanges.add(new ArrayList<>(Arrays.asList(n.getLastWeightChange())));
+        applyLazyMomentum();
+        ArrayList<ArrayList<Double>> weightChanges = new ArrayList<>();
+        for (int n = 0, w = 0; n<width; n++) {
+            ArrayList<Double> row = new ArrayList<>(inputWidth);
+            for (int i = 0; i<inputWidth; i++, w++) {
+                row.add(lastWeightChange32 != null ? lastWeightChange32[w] : lastWeightChange[w]);
+            }
+            weightChanges.add(row);
         }
         return weightChanges;
     }
     
+    /**
+     * Writes the given momentum terms (one list per neuron) into the flat
+     * momentum matrix.
+     *
+     * @param weightChanges A list of width lists of inputWidth values.
+     */
     public void setWeightChanges(ArrayList<ArrayList<Double>> weightChanges) {
-        int i = 0;
-        for(Adaline n : neurons) {
-            n.setLastWeightChange(getDoubleArrayFromList(weightChanges.get(i++)));
+        applyLazyMomentum();
+        int w = 0;
+        for (List<Double> row : weightChanges) {
+            for (Double change : row) {
+                if (lastWeightChange32 != null) {
+                    lastWeightChange32[w++] = change.floatValue();
+                } else {
+                    lastWeightChange[w++] = change;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the weights and momentum terms of this layer into double 
+     * matrices, widening float32 values.
+     * 
+     * @param weightsTarget A matrix of width*inputWidth weights.
+     * @param changesTarget A matrix of width*inputWidth momentum terms.
+     */
+    void copyState(double[] weightsTarget, double[] changesTarget) {
+        applyLazyMomentum();
+        if (weights32 == null) {
+            System.arraycopy(weights, 0, weightsTarget, 0, weights.length);
+            System.arraycopy(lastWeightChange, 0, changesTarget, 0, lastWeightChange.length);
+            return;
+        }
+        for (int w = 0; w<weights32.length; w++) {
+            weightsTarget[w] = weights32[w];
+            changesTarget[w] = lastWeightChange32[w];
+        }
+    }
+    
+    /**
+     * Sets the weights and momentum terms of this layer from double 
+     * matrices, rounding them for a float32 layer, and discards not adjusted 
+     * weight changes.
+     * 
+     * @param weightsSource A matrix of width*inputWidth weights.
+     * @param changesSource A matrix of width*inputWidth momentum terms.
+     */
+    void restoreState(double[] weightsSource, double[] changesSource) {
+        // the restored weights are current, nothing is left to apply
+        if (syncedSteps != null) {
+            Arrays.fill(syncedSteps, sparseSteps);
+        }
+        lazy = false;
+        sparseChanges = null;
+        Arrays.fill(overallWeightChange, 0.0);
+        if (weights32 == null) {
+            System.arraycopy(weightsSource, 0, weights, 0, weights.length);
+            System.arraycopy(changesSource, 0, lastWeightChange, 0, lastWeightChange.length);
+            return;
+        }
+        for (int w = 0; w<weights32.length; w++) {
+            weights32[w] = (float) weightsSource[w];
+            lastWeightChange32[w] = (float) changesSource[w];
+        }
+    }
+    
+    /**
+     * @return the count of weight adjustments done by the optimizer.
+     */
+    long getOptimizerSteps() {
+        return optimizerSteps;
+    }
+    
+    /**
+     * Copies the second moments of the optimizer, see copyState().
+     * 
+     * @param target A matrix of width*inputWidth second moments.
+     */
+    void copySecondMoment(float[] target) {
+        System.arraycopy(secondMoment, 0, target, 0, secondMoment.length);
+    }
+    
+    /**
+     * Sets the optimizer with its state, after restoreState(), without 
+     * resetting the momentum terms as setOptimizer() does.
+     * 
+     * @param optimizer An optimizer.
+     * @param steps A count of weight adjustments done by the optimizer.
+     * @param secondMomentSource A matrix of width*inputWidth second moments, 
+     * null if the optimizer has none.
+     */
+    void restoreOptimizer(Optimizer optimizer, long steps, float[] secondMomentSource) {
+        if (optimizer != this.optimizer) {
+            this.optimizer = optimizer;
+            this.secondMoment = optimizer.getSecondMomentDecay() > 0 ? new float[width * inputWidth] : null;
+        }
+        if (secondMoment != null) {
+            System.arraycopy(secondMomentSource, 0, secondMoment, 0, secondMoment.length);
         }
+        this.optimizerSteps = steps;
+        updateCorrections();
+    }
+    
+    /**
+     * @return a copy of the weight matrix, widened to double for a float32 
+     * layer.
+     */
+    double[] copyWeights() {
+        applyLazyMomentum();
+        if (weights32 == null) {
+            return weights.clone();
+        }
+        double[] copy = new double[weights32.length];
+        for (int w = 0; w<copy.length; w++) {
+            copy[w] = weights32[w];
+        }
+        return copy;
     }
 
     public ArrayList<Adaline> getNeurons() {
         return neurons;
     }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    public float getMomentumRate() {
+        return momentumRate;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @param parallelThreshold A count of weights (width times input width) 
+     * over which the neurons of this layer get computed in parallel.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
 }
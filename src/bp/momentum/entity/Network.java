@@ -1,80 +1,445 @@
 package bp.momentum.entity;
 
+import static bp.momentum.BPMomentum.getPrimitiveArrayFromList;
+import bp.momentum.data.Dataset;
+import bp.momentum.data.SparseVector;
+import bp.momentum.log.LogLevel;
+import bp.momentum.log.TextLog;
+import bp.momentum.log.TrainingLog;
+import bp.momentum.telemetry.PhaseTimer;
+import bp.momentum.telemetry.Telemetry;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
+ * A class representing the whole neural network. The activation, delta and 
+ * error propagation buffers are allocated once with the layers and reused 
+ * for every sample, so training with no log does not allocate. With 
+ * a phase telemetry set, the time of every phase of every layer is measured.
+ * The weight matrices are of double or float32 precision, see Precision.
+ * Gradients of a range of samples can be computed in blocks of 
+ * BlockKernels.BLOCK_ROWS samples, every layer then reads its weights once 
+ * per block instead of once per sample.
  *
  * @author pseckarova
  */
 public class Network {
     private ArrayList<Layer> layers;
+    private final double[] inputBuffer;
+    private final double[] outputBuffer;
+    private double[] blockInputs;
+    private double[] blockExpected;
+    private Telemetry telemetry;
+    private PhaseTimer timer;
     
     public Network(float learning_rate, float momentum_rate, float lambda, ArrayList<Integer> layer_configuration) {
+        this(learning_rate, momentum_rate, lambda, layer_configuration, null);
+    }
+    
+    /**
+     * A constructor of a network with the given activation functions.
+     * 
+     * @param learning_rate A learning rate (mi).
+     * @param momentum_rate A momentum rate (alfa).
+     * @param lambda A lambda parameter of activation functions.
+     * @param layer_configuration Widths of network input and of all the layers.
+     * @param activations Activation functions of all the layers, null for 
+     * logistic layers.
+     */
+    public Network(float learning_rate, float momentum_rate, float lambda, ArrayList<Integer> layer_configuration, 
+            Activation[] activations) {
+        this(learning_rate, momentum_rate, lambda, layer_configuration, activations, Precision.DOUBLE);
+    }
+    
+    /**
+     * A constructor of a network with the given activation functions and 
+     * precision of weight matrices.
+     * 
+     * @param learning_rate A learning rate (mi).
+     * @param momentum_rate A momentum rate (alfa).
+     * @param lambda A lambda parameter of activation functions.
+     * @param layer_configuration Widths of network input and of all the layers.
+     * @param activations Activation functions of all the layers, null for 
+     * logistic layers.
+     * @param precision A precision of weights, momentum terms and weight 
+     * changes.
+     */
+    public Network(float learning_rate, float momentum_rate, float lambda, ArrayList<Integer> layer_configuration, 
+            Activation[] activations, Precision precision) {
+        this(learning_rate, momentum_rate, lambda, layer_configuration, activations, precision, 
+                WeightInit.GAUSSIAN, ThreadLocalRandom.current().nextLong());
+    }
+    
+    /**
+     * A constructor of a network with weights initialized from the given 
+     * seed. Every layer gets its own seed drawn from the network's seed, so 
+     * a seed gives bit-identical networks regardless of the count of threads 
+     * initializing them.
+     * 
+     * @param learning_rate A learning rate (mi).
+     * @param momentum_rate A momentum rate (alfa).
+     * @param lambda A lambda parameter of activation functions.
+     * @param layer_configuration Widths of network input and of all the layers.
+     * @param activations Activation functions of all the layers, null for 
+     * logistic layers.
+     * @param precision A precision of weights, momentum terms and weight 
+     * changes.
+     * @param init A scheme of the random initial weights.
+     * @param seed A seed of the initial weights.
+     */
+    public Network(float learning_rate, float momentum_rate, float lambda, ArrayList<Integer> layer_configuration, 
+            Activation[] activations, Precision precision, WeightInit init, long seed) {
         this.layers = new ArrayList<>();
+        SplittableRandom seeds = new SplittableRandom(seed);
         
         // store width of network input as first layer's input width
         int prev = layer_configuration.get(0); 
-        layer_configuration.remove(0);
         
-        for(Integer l : layer_configuration){
-            layers.add(new Layer(learning_rate, momentum_rate,lambda,l,prev+1));
+        int i = 0;
+        for(Integer l : layer_configuration.subList(1, layer_configuration.size())){
+            Activation activation = activations == null ? Activation.LOGISTIC : activations[i++];
+            layers.add(new Layer(learning_rate, momentum_rate,lambda,l,prev+1, activation, precision, 
+                    init, seeds.nextLong()));
             prev = l;
         }
+        
+        // the static 1 added to the end of the network input vector
+        inputBuffer = new double[layers.get(0).getInputWidth()];
+        inputBuffer[inputBuffer.length-1] = 1.0;
+        outputBuffer = new double[prev];
     }
     
-    public double train(ArrayList<Double> input, ArrayList<Double> expectedOutput, PrintWriter log) {
+    /**
+     * A constructor of a network continuing from the given snapshot, with 
+     * its parameters, topology, weights and momentum terms.
+     * 
+     * @param snapshot A snapshot of a network.
+     */
+    public Network(NetworkSnapshot snapshot) {
+        this(snapshot, Precision.DOUBLE);
+    }
+    
+    /**
+     * A constructor of a network continuing from the given snapshot in the 
+     * given precision. The weights are rounded for a float32 network.
+     * 
+     * @param snapshot A snapshot of a network.
+     * @param precision A precision of weights, momentum terms and weight 
+     * changes.
+     */
+    public Network(NetworkSnapshot snapshot, Precision precision) {
+        this(snapshot.getLearningRate(), snapshot.getMomentumRate(), 
+                snapshot.getLambda(), snapshot.getTopologyList(), snapshot.getActivations(), precision);
+        restore(snapshot);
+    }
+    
+    private Network(Network shared) {
+        this.layers = new ArrayList<>();
+        for (Layer l : shared.layers) {
+            layers.add(new Layer(l));
+        }
+        inputBuffer = shared.inputBuffer.clone();
+        outputBuffer = new double[shared.outputBuffer.length];
+        setTelemetry(shared.telemetry);
+    }
+    
+    /**
+     * Creates a replica of this network sharing its weights. The replica has 
+     * its own activation buffers, momentum terms and weight changes, so it 
+     * can be trained by another thread.
+     * 
+     * @return the replica sharing weights with this network.
+     */
+    public Network replicate() {
+        return new Network(this);
+    }
+    
+    /**
+     * Runs the input through the network and computes weight changes from 
+     * the difference to the expected output. The weights are changed only 
+     * by adjustWeights().
+     * 
+     * @param input A vector of network input values.
+     * @param expectedOutput A vector of expected network output values.
+     * @param log A training log, null for no logging.
+     * @return the error of the network output.
+     */
+    public double train(double[] input, double[] expectedOutput, TrainingLog log) {
         
         run(input, log);
                 
+        return computeWeightChanges(expectedOutput, log);
+    }
+    
+    /**
+     * Runs a sparse input through the network and computes weight changes 
+     * from the difference to the expected output. The first layer computes 
+     * only with the non-zero inputs, see Layer.computeOutput(SparseVector, 
+     * TrainingLog), unless the optimizer is not lazy (Adam).
+     * 
+     * @param input A sparse vector of network input values.
+     * @param expectedOutput A vector of expected network output values.
+     * @param log A training log, null for no logging.
+     * @return the error of the network output.
+     */
+    public double train(SparseVector input, double[] expectedOutput, TrainingLog log) {
+        if (!getOptimizer().isLazy()) {
+            // the missed steps can't be applied lazily, train it densely
+            Arrays.fill(inputBuffer, 0, inputBuffer.length-1, 0.0);
+            for (int k = 0; k<input.size(); k++) {
+                inputBuffer[input.getIndices()[k]] = input.getValues()[k];
+            }
+            forward(null, log);
+            return computeWeightChanges(expectedOutput, log);
+        }
+        
+        run(input, log);
+        
+        return computeWeightChanges(expectedOutput, log);
+    }
+    
+    private double computeWeightChanges(double[] expectedOutput, TrainingLog log) {
         double error = propagateErrorInDeltas(expectedOutput, log);
-        int i = 1;
-        log.append("\n\n== WEIGHTS ==");
-        for (Layer l : layers) {
-            log.append("\n= Layer " + i++ +" =");
-            l.computeWeightChanges(log);
+        boolean logged = TrainingLog.enabled(log, LogLevel.WEIGHT);
+        if (logged) {
+            log.startWeights();
+        }
+        long time = timer == null ? 0 : System.nanoTime();
+        for (int i = 0; i<layers.size(); i++) {
+            if (logged) {
+                log.startLayerWeights(i+1);
+            }
+            layers.get(i).computeWeightChanges(log);
+            if (timer != null) {
+                time = timer.record(PhaseTimer.UPDATE, i, time);
+            }
         }
         
         return error;
     }
     
-    public void run(ArrayList<Double> input, PrintWriter log) {
-        ArrayList<Double> currentValues = new ArrayList<>(input);
+    /**
+     * Runs the input through the network and adds the error gradients to 
+     * the weight changes, without applying learning rate and momentum. Used 
+     * by replicas in batch training, see Layer.reduceGradients().
+     * 
+     * @param input A vector of network input values.
+     * @param expectedOutput A vector of expected network output values.
+     * @return the error of the network output.
+     */
+    public double accumulateGradients(double[] input, double[] expectedOutput) {
+        run(input, null);
+        
+        double error = propagateErrorInDeltas(expectedOutput, null);
+        long time = timer == null ? 0 : System.nanoTime();
+        for (int i = 0; i<layers.size(); i++) {
+            layers.get(i).accumulateGradients();
+            if (timer != null) {
+                time = timer.record(PhaseTimer.UPDATE, i, time);
+            }
+        }
+        
+        return error;
+    }
+    
+    /**
+     * Runs a range of samples through the network in blocks and adds their 
+     * error gradients to the weight changes, like accumulateGradients() for 
+     * every sample. Every block goes through every layer as matrix-matrix 
+     * products, see BlockKernels, so the sums differ from the per-sample 
+     * ones in the last bits.
+     * 
+     * @param dataset A dataset of the samples.
+     * @param from An index of the first sample.
+     * @param to An index after the last sample.
+     * @return the sum of errors of the network output for all the samples.
+     */
+    public double accumulateGradients(Dataset dataset, int from, int to) {
+        int inputWidth = inputBuffer.length;
+        int outputWidth = outputBuffer.length;
+        if (blockInputs == null) {
+            blockInputs = new double[BlockKernels.BLOCK_ROWS * inputWidth];
+            blockExpected = new double[BlockKernels.BLOCK_ROWS * outputWidth];
+        }
+        
+        double error = 0.0;
+        for (int start = from; start<to; start += BlockKernels.BLOCK_ROWS) {
+            int rows = Math.min(BlockKernels.BLOCK_ROWS, to - start);
+            for (int s = 0; s<rows; s++) {
+                System.arraycopy(dataset.getInput(start + s, inputBuffer), 0, 
+                        blockInputs, s*inputWidth, inputWidth - 1);
+                blockInputs[(s+1)*inputWidth - 1] = 1.0;
+                System.arraycopy(dataset.getOutput(start + s, outputBuffer), 0, 
+                        blockExpected, s*outputWidth, outputWidth);
+            }
+            error += accumulateBlockGradients(rows);
+        }
+        inputBuffer[inputWidth - 1] = 1.0;
+        return error;
+    }
+    
+    private double accumulateBlockGradients(int rows) {
+        long time = timer == null ? 0 : System.nanoTime();
+        double[] currentValues = blockInputs;
+        for (int i = 0; i<layers.size(); i++) {
+            currentValues = layers.get(i).computeBlockOutputs(currentValues, rows);
+            if (timer != null) {
+                time = timer.record(PhaseTimer.FORWARD, i, time);
+            }
+        }
+        
+        Layer lastLayer = layers.get(layers.size()-1);
+        double error = lastLayer.computeBlockError(blockExpected, rows);
+        for (int i = layers.size()-2; i>=0; i--) {
+            double[] errPropagation = layers.get(i+1).getBlockErrorPropagation(rows);
+            layers.get(i).computeBlockDeltas(errPropagation, rows);
+            if (timer != null) {
+                time = timer.record(PhaseTimer.BACKWARD, i+1, time);
+            }
+        }
+        if (timer != null) {
+            time = timer.record(PhaseTimer.BACKWARD, 0, time);
+        }
         
-        int i = 1;
-        log.append("\n== OUTPUTS ==");
+        for (int i = 0; i<layers.size(); i++) {
+            layers.get(i).accumulateBlockGradients(rows);
+            if (timer != null) {
+                time = timer.record(PhaseTimer.UPDATE, i, time);
+            }
+        }
+        return error;
+    }
+    
+    public double train(ArrayList<Double> input, ArrayList<Double> expectedOutput, PrintWriter log) {
+        return train(getPrimitiveArrayFromList(input), getPrimitiveArrayFromList(expectedOutput), 
+                new TextLog(log, LogLevel.WEIGHT, 1));
+    }
+
+    /**
+     * Computes the network response to the given input.
+     * 
+     * @param input A vector of network input values.
+     * @param log A training log, null for no logging.
+     * @return the vector of network output values, reused by the next call.
+     */
+    public double[] run(double[] input, TrainingLog log) {
+        // the static 1 at the end of every layer input vector is already 
+        // in place in the input buffer and in every layer's output buffer
+        System.arraycopy(input, 0, inputBuffer, 0, input.length);
+        return forward(null, log);
+    }
+    
+    /**
+     * Computes the network response to the given sparse input.
+     * 
+     * @param input A sparse vector of network input values.
+     * @param log A training log, null for no logging.
+     * @return the vector of network output values, reused by the next call.
+     */
+    public double[] run(SparseVector input, TrainingLog log) {
+        return forward(input, log);
+    }
+    
+    private double[] forward(SparseVector sparseInput, TrainingLog log) {
+        double[] currentValues = inputBuffer;
+        
+        boolean logged = TrainingLog.enabled(log, LogLevel.SAMPLE);
+        if (logged) {
+            log.startOutputs();
+        }
         // get current network response to given input vector
-        for(Layer l : layers) {
-            // add static 1 to the beginning of every input vector
-            currentValues.add(1.0); 
-            
+        long time = timer == null ? 0 : System.nanoTime();
+        for (int i = 0; i<layers.size(); i++) {
             // store output of the current layer, input = output of the previous one
-            log.append("\nLayer " + i++ +":");
-            currentValues = l.computeOutput(currentValues, log);
+            if (logged) {
+                log.startLayerOutputs(i+1);
+            }
+            currentValues = i == 0 && sparseInput != null 
+                    ? layers.get(i).computeOutput(sparseInput, log)
+                    : layers.get(i).computeOutput(currentValues, log);
+            if (timer != null) {
+                time = timer.record(PhaseTimer.FORWARD, i, time);
+            }
+        }
+        System.arraycopy(currentValues, 0, outputBuffer, 0, outputBuffer.length);
+        return outputBuffer;
+    }
+    
+    /**
+     * Computes the error of the network response to the given input, without 
+     * computing any weight changes.
+     * 
+     * @param input A vector of network input values.
+     * @param expectedOutput A vector of expected network output values.
+     * @return the error of the network output.
+     */
+    public double evaluate(double[] input, double[] expectedOutput) {
+        return outputError(run(input, null), expectedOutput);
+    }
+    
+    /**
+     * Computes the error of the network response to the given sparse input, 
+     * without computing any weight changes.
+     * 
+     * @param input A sparse vector of network input values.
+     * @param expectedOutput A vector of expected network output values.
+     * @return the error of the network output.
+     */
+    public double evaluate(SparseVector input, double[] expectedOutput) {
+        return outputError(run(input, null), expectedOutput);
+    }
+    
+    private static double outputError(double[] output, double[] expectedOutput) {
+        double error = 0.0;
+        for (int i = 0; i<output.length; i++) {
+            double diff = expectedOutput[i] - output[i];
+            error += 0.5 * diff * diff;
         }
+        return error;
     }
     
-    private double propagateErrorInDeltas(ArrayList<Double> expectedOutput, PrintWriter log) {
+    public void run(ArrayList<Double> input, PrintWriter log) {
+        run(getPrimitiveArrayFromList(input), new TextLog(log, LogLevel.WEIGHT, 1));
+    }
+
+    private double propagateErrorInDeltas(double[] expectedOutput, TrainingLog log) {
+        long time = timer == null ? 0 : System.nanoTime();
         Layer lastLayer = layers.get(layers.size()-1);
         double error = lastLayer.computeError(expectedOutput, log);
-        ArrayList<Double> errPropagation = lastLayer.getErrorPropagation();
+        // nothing propagates from the first layer to the input
+        double[] errPropagation = layers.size() > 1 ? lastLayer.getErrorPropagation() : null;
+        if (timer != null) {
+            time = timer.record(PhaseTimer.BACKWARD, layers.size()-1, time);
+        }
         
         for (int i = layers.size()-2; i>=0;i--) {
             Layer currentLayer = layers.get(i);
             currentLayer.computeDeltas(errPropagation);
-            errPropagation = currentLayer.getErrorPropagation();
+            if (i > 0) {
+                errPropagation = currentLayer.getErrorPropagation();
+            }
+            if (timer != null) {
+                time = timer.record(PhaseTimer.BACKWARD, i, time);
+            }
         }
         return error;
     }
     
     public void adjustWeights() {
-        for (Layer l : layers) {
-            l.adjustWeights();
+        long time = timer == null ? 0 : System.nanoTime();
+        for (int i = 0; i<layers.size(); i++) {
+            layers.get(i).adjustWeights();
+            if (timer != null) {
+                time = timer.record(PhaseTimer.UPDATE, i, time);
+            }
         }
     }    
 
     public ArrayList<ArrayList<ArrayList<Double>>> getWeightChanges() {
-        ArrayList<ArrayList<ArrayList<Double>>> weightChanges = new ArrayList();
+        ArrayList<ArrayList<ArrayList<Double>>> weightChanges = new ArrayList<>();
         for (Layer l : layers) {
             weightChanges.add(l.getWeightChanges());
         }
@@ -87,4 +452,140 @@ public class Network {
             l.setWeightChanges(weightChanges.get(i++));
         }
     }
+
+    /**
+     * Applies the lazily kept momentum of the sparse steps to all the 
+     * weights of the first layer, see Layer. Dense operations and snapshots 
+     * do it themselves, it is needed only for replicas sharing the weights, 
+     * before their weights are used by another network.
+     */
+    public void applyLazyMomentum() {
+        layers.get(0).applyLazyMomentum();
+    }
+
+    /**
+     * @return widths of network input and of all the layers.
+     */
+    public int[] getTopology() {
+        int[] topology = new int[layers.size() + 1];
+        topology[0] = layers.get(0).getInputWidth() - 1;
+        for (int i = 0; i<layers.size(); i++) {
+            topology[i+1] = layers.get(i).getWidth();
+        }
+        return topology;
+    }
+    
+    /**
+     * Copies current weights, momentum terms and the optimizer state into a 
+     * snapshot. Should be called between adjustWeights() and the next 
+     * train(). Snapshots are always double, float32 weights are widened 
+     * exactly.
+     * 
+     * @param reuse A snapshot of this network to be overwritten, or null.
+     * @param epoch A number of the last trained epoch.
+     * @return the given snapshot if it was of the same topology, otherwise 
+     * a new one.
+     */
+    public NetworkSnapshot snapshot(NetworkSnapshot reuse, int epoch) {
+        Layer first = layers.get(0);
+        int[] topology = getTopology();
+        NetworkSnapshot snapshot = reuse;
+        if (snapshot == null || !snapshot.hasTopology(topology)) {
+            snapshot = new NetworkSnapshot(first.getLearningRate(), first.getMomentumRate(), 
+                    first.getLambda(), topology);
+        }
+        
+        snapshot.setOptimizer(first.getOptimizer(), first.getOptimizerSteps());
+        for (int i = 0; i<layers.size(); i++) {
+            Layer l = layers.get(i);
+            snapshot.getActivations()[i] = l.getActivation();
+            l.copyState(snapshot.getWeights()[i], snapshot.getWeightChanges()[i]);
+            if (snapshot.getSecondMoments() != null) {
+                l.copySecondMoment(snapshot.getSecondMoments()[i]);
+            }
+        }
+        snapshot.setEpoch(epoch);
+        return snapshot;
+    }
+    
+    /**
+     * Sets weights, momentum terms and the optimizer with its state from a 
+     * snapshot of a network of the same topology, discards not adjusted 
+     * weight changes.
+     * 
+     * @param snapshot A snapshot of a network.
+     */
+    public void restore(NetworkSnapshot snapshot) {
+        if (!snapshot.hasTopology(getTopology())) {
+            throw new IllegalArgumentException("The snapshot is of different topology.");
+        }
+        for (int i = 0; i<layers.size(); i++) {
+            Layer l = layers.get(i);
+            l.restoreState(snapshot.getWeights()[i], snapshot.getWeightChanges()[i]);
+            l.restoreOptimizer(snapshot.getOptimizer(), snapshot.getOptimizerSteps(), 
+                    snapshot.getSecondMoments() == null ? null : snapshot.getSecondMoments()[i]);
+        }
+    }
+    
+    /**
+     * Creates an immutable snapshot of current weights for inference, which 
+     * can be shared between threads. Training of this network can continue, 
+     * the snapshot doesn't change.
+     * 
+     * @return the snapshot of this network.
+     */
+    public FrozenNetwork freeze() {
+        return new FrozenNetwork(this);
+    }
+    
+    /**
+     * Sets the threshold of neuron-parallel computation for all the layers, 
+     * see Layer.setParallelThreshold().
+     * 
+     * @param parallelThreshold A count of layer weights over which the layer 
+     * gets computed in parallel.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        for (Layer l : layers) {
+            l.setParallelThreshold(parallelThreshold);
+        }
+    }
+
+    /**
+     * Sets the update rule of the weights of all the layers, see 
+     * Layer.setOptimizer(). Replicas created later use it too.
+     * 
+     * @param optimizer An optimizer.
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        for (Layer l : layers) {
+            l.setOptimizer(optimizer);
+        }
+    }
+    
+    public Optimizer getOptimizer() {
+        return layers.get(0).getOptimizer();
+    }
+
+    /**
+     * Sets the telemetry measuring phases of training of this network and 
+     * of its replicas created later.
+     * 
+     * @param telemetry A telemetry, null for no measuring.
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+        this.timer = telemetry == null ? null : telemetry.createTimer(layers.size());
+    }
+    
+    /**
+     * @return the precision of the weight matrices.
+     */
+    public Precision getPrecision() {
+        return layers.get(0).getPrecision();
+    }
+    
+    public ArrayList<Layer> getLayers() {
+        return layers;
+    }
 }
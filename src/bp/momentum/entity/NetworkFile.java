@@ -0,0 +1,240 @@
+package bp.momentum.entity;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reading and writing network snapshots in a compact binary format. All the 
+ * values are little endian:
+ * <pre>
+ * int     magic "BPMN"
+ * int     format version
+ * float   lambda, learning rate, momentum rate
+ * int     number of the last trained epoch
+ * int     n - count of widths in topology (input and all the layers)
+ * int[n]  topology
+ * int[n-1] activation functions of the layers (ordinals of Activation), 
+ *         not in version 1 files, which are all logistic
+ * int     optimizer (ordinal of Optimizer), 
+ * long    count of its steps, both not in version 1 and 2 files, which 
+ *         are read as MOMENTUM with no steps
+ * (padding to multiple of 8 bytes)
+ * for every layer: double[] weights, double[] momentum terms 
+ *                  (row-major, width x (previous width + 1))
+ * for every layer: float[] second moments of the optimizer, only if it 
+ *                  has them (RMSPROP, ADAM), same shape
+ * </pre>
+ * The file is written to a temporary file first and then moved over the 
+ * target, so a crash while writing never breaks the previous file. The 
+ * file is read by memory mapping.
+ * 
+ * @author pseckarova
+ */
+public class NetworkFile {
+    
+    public static final int MAGIC = 0x4E4D5042;
+    public static final int VERSION = 3;
+    
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private NetworkFile() {
+    }
+    
+    private static int headerSize(int version, int topologyLength) {
+        int size = 4 * (7 + topologyLength);
+        if (version >= 2) {
+            size += 4 * (topologyLength - 1);
+        }
+        if (version >= 3) {
+            size += 4 + 8;
+        }
+        return (size + 7) & ~7;
+    }
+    
+    /**
+     * Writes the snapshot to the file.
+     * 
+     * @param snapshot A snapshot of a network.
+     * @param file A file to be written.
+     * @throws IOException if the file can't be written.
+     */
+    public static void write(NetworkSnapshot snapshot, File file) throws IOException {
+        int[] topology = snapshot.getTopology();
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, 
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            buffer.putFloat(snapshot.getLambda())
+                    .putFloat(snapshot.getLearningRate())
+                    .putFloat(snapshot.getMomentumRate());
+            buffer.putInt(snapshot.getEpoch());
+            buffer.putInt(topology.length);
+            for (int width : topology) {
+                buffer.putInt(width);
+            }
+            for (Activation activation : snapshot.getActivations()) {
+                buffer.putInt(activation.ordinal());
+            }
+            buffer.putInt(snapshot.getOptimizer().ordinal());
+            buffer.putLong(snapshot.getOptimizerSteps());
+            while (buffer.position() < headerSize(VERSION, topology.length)) {
+                buffer.put((byte) 0);
+            }
+            
+            for (int l = 0; l<topology.length-1; l++) {
+                writeDoubles(channel, buffer, snapshot.getWeights()[l]);
+                writeDoubles(channel, buffer, snapshot.getWeightChanges()[l]);
+            }
+            if (snapshot.getSecondMoments() != null) {
+                for (float[] moments : snapshot.getSecondMoments()) {
+                    writeFloats(channel, buffer, moments);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            int count = Math.min(values.length - i, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(values, i, count);
+            buffer.position(buffer.position() + 8*count);
+            i += count;
+            if (buffer.remaining() < 8) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+    
+    private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] values) throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            int count = Math.min(values.length - i, buffer.remaining() / 4);
+            buffer.asFloatBuffer().put(values, i, count);
+            buffer.position(buffer.position() + 4*count);
+            i += count;
+            if (buffer.remaining() < 4) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+    
+    /**
+     * Reads the snapshot from the file.
+     * 
+     * @param file A file written by write().
+     * @return the snapshot.
+     * @throws IOException if the file can't be read or is not a network file.
+     */
+    public static NetworkSnapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            int version = header.getInt(4);
+            if (header.getInt() != MAGIC || header.getInt() < 1 || version > VERSION) {
+                throw new IOException("Not a network file of version up to " + VERSION + ": " + file);
+            }
+            float lambda = header.getFloat();
+            float learningRate = header.getFloat();
+            float momentumRate = header.getFloat();
+            int epoch = header.getInt();
+            int length = header.getInt();
+            if (length < 2) {
+                throw new IOException("Invalid topology in network file: " + file);
+            }
+            
+            int functions = version >= 2 ? length - 1 : 0;
+            int optimizerSize = version >= 3 ? 4 + 8 : 0;
+            ByteBuffer widths = ByteBuffer.allocate(4*(length + functions) + optimizerSize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, widths, 28);
+            int[] topology = new int[length];
+            for (int i = 0; i<length; i++) {
+                topology[i] = widths.getInt();
+            }
+            
+            NetworkSnapshot snapshot = new NetworkSnapshot(learningRate, momentumRate, lambda, topology);
+            Activation[] activations = Activation.values();
+            for (int l = 0; l<functions; l++) {
+                int ordinal = widths.getInt();
+                if (ordinal < 0 || ordinal >= activations.length) {
+                    throw new IOException("Unknown activation function in network file: " + file);
+                }
+                snapshot.getActivations()[l] = activations[ordinal];
+            }
+            if (version >= 3) {
+                int ordinal = widths.getInt();
+                if (ordinal < 0 || ordinal >= Optimizer.values().length) {
+                    throw new IOException("Unknown optimizer in network file: " + file);
+                }
+                snapshot.setOptimizer(Optimizer.values()[ordinal], widths.getLong());
+            }
+            snapshot.setEpoch(epoch);
+            long position = headerSize(version, length);
+            for (int l = 0; l<length-1; l++) {
+                position = readDoubles(channel, position, snapshot.getWeights()[l]);
+                position = readDoubles(channel, position, snapshot.getWeightChanges()[l]);
+            }
+            if (snapshot.getSecondMoments() != null) {
+                for (float[] moments : snapshot.getSecondMoments()) {
+                    position = readFloats(channel, position, moments);
+                }
+            }
+            return snapshot;
+        }
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of network file.");
+            }
+        }
+        buffer.flip();
+    }
+    
+    private static long readDoubles(FileChannel channel, long position, double[] values) throws IOException {
+        long size = 8L * values.length;
+        if (position + size > channel.size()) {
+            throw new IOException("Unexpected end of network file.");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values);
+        return position + size;
+    }
+    
+    private static long readFloats(FileChannel channel, long position, float[] values) throws IOException {
+        long size = 4L * values.length;
+        if (position + size > channel.size()) {
+            throw new IOException("Unexpected end of network file.");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+        return position + size;
+    }
+}
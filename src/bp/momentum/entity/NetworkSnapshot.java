@@ -0,0 +1,159 @@
+package bp.momentum.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A copy of the whole state of a network needed to continue its training - 
+ * parameters, topology, activation functions, weights and momentum terms 
+ * (last weight changes) of all layers and the number of the last trained epoch. Snapshots are created 
+ * by Network.snapshot() and can be reused for the next snapshot of the same 
+ * network to avoid allocation. The state of the optimizer - its count of 
+ * steps and the second moments of RMSPROP and ADAM - is kept too.
+ * 
+ * @author pseckarova
+ */
+public class NetworkSnapshot {
+    private final float learningRate;
+    private final float momentumRate;
+    private final float lambda;
+    private final int[] topology;
+    private final Activation[] activations;
+    private final double[][] weights;
+    private final double[][] weightChanges;
+    private int epoch;
+    private Optimizer optimizer;
+    private long optimizerSteps;
+    private float[][] secondMoments;
+
+    /**
+     * A constructor allocating arrays for weights and momentum terms of all 
+     * layers. The activation functions are logistic and the optimizer is 
+     * MOMENTUM until set.
+     * 
+     * @param learningRate A learning rate (mi) of the network.
+     * @param momentumRate A momentum rate (alfa) of the network.
+     * @param lambda A lambda parameter of the network.
+     * @param topology Widths of network input and of all the layers.
+     */
+    public NetworkSnapshot(float learningRate, float momentumRate, float lambda, int[] topology) {
+        this.learningRate = learningRate;
+        this.momentumRate = momentumRate;
+        this.lambda = lambda;
+        this.topology = topology.clone();
+        this.activations = new Activation[topology.length - 1];
+        Arrays.fill(activations, Activation.LOGISTIC);
+        this.weights = new double[topology.length - 1][];
+        this.weightChanges = new double[topology.length - 1][];
+        this.optimizer = Optimizer.MOMENTUM;
+        
+        for (int l = 1; l<topology.length; l++) {
+            // +1 for static 1.0 added to the end of every layer input
+            weights[l-1] = new double[topology[l] * (topology[l-1] + 1)];
+            weightChanges[l-1] = new double[topology[l] * (topology[l-1] + 1)];
+        }
+    }
+    
+    /**
+     * @param topology Widths of network input and of all the layers.
+     * @return true if this snapshot holds a network of the given topology.
+     */
+    public boolean hasTopology(int[] topology) {
+        return Arrays.equals(this.topology, topology);
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    public float getMomentumRate() {
+        return momentumRate;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public int[] getTopology() {
+        return topology.clone();
+    }
+    
+    /**
+     * @return the topology in the format of Configuration.getNetworkTopology().
+     */
+    public ArrayList<Integer> getTopologyList() {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int width : topology) {
+            result.add(width);
+        }
+        return result;
+    }
+
+    /**
+     * @return activation functions of all layers, can be modified.
+     */
+    public Activation[] getActivations() {
+        return activations;
+    }
+
+    /**
+     * @return flat row-major weight matrices of all layers, see Layer.
+     */
+    public double[][] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return flat row-major momentum terms of all layers, see Layer.
+     */
+    public double[][] getWeightChanges() {
+        return weightChanges;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(int epoch) {
+        this.epoch = epoch;
+    }
+    
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+    
+    /**
+     * @return the count of weight adjustments done by the optimizer.
+     */
+    public long getOptimizerSteps() {
+        return optimizerSteps;
+    }
+    
+    /**
+     * Sets the optimizer and allocates the second moments of all layers if 
+     * it has them.
+     * 
+     * @param optimizer An optimizer.
+     * @param steps A count of weight adjustments done by the optimizer.
+     */
+    public void setOptimizer(Optimizer optimizer, long steps) {
+        this.optimizer = optimizer;
+        this.optimizerSteps = steps;
+        if (optimizer.getSecondMomentDecay() == 0.0) {
+            secondMoments = null;
+        } else if (secondMoments == null) {
+            secondMoments = new float[topology.length - 1][];
+            for (int l = 1; l<topology.length; l++) {
+                secondMoments[l-1] = new float[topology[l] * (topology[l-1] + 1)];
+            }
+        }
+    }
+    
+    /**
+     * @return flat row-major second moments of all layers, see Optimizer, 
+     * or null if the optimizer has none.
+     */
+    public float[][] getSecondMoments() {
+        return secondMoments;
+    }
+}
@@ -0,0 +1,123 @@
+package bp.momentum.entity;
+
+/**
+ * Update rules of the weights. Every rule computes the change of one weight
+ * from its descent direction - delta times input for one sample, or the sum
+ * of them over a batch - and updates the state of the weight kept by the
+ * layer: the momentum term (first moment) in the layer's lastWeightChange
+ * matrix and for RMSPROP and ADAM the second moment in a float32 matrix of
+ * the same shape.
+ * <p>
+ * The momentum rate is the momentum of every rule (beta1 of ADAM), the
+ * learning rate its step size. RMSPROP and ADAM need much smaller learning
+ * rates than MOMENTUM, around 0.001 to 0.05.
+ *
+ * @author pseckarova
+ */
+public enum Optimizer {
+    /** classical momentum, change = rate*direction + momentum*last change, the default */
+    MOMENTUM(0.0) {
+        @Override
+        double step(Layer layer, int w, double direction) {
+            double change = layer.getLearningRate()*direction
+                    + layer.getMomentumRate()*layer.getLastWeightChange(w);
+            layer.setLastWeightChange(w, change);
+            return change;
+        }
+    },
+    /** Nesterov momentum - the momentum term is applied once more, as if
+     * looking ahead to where the momentum moves the weight */
+    NESTEROV(0.0) {
+        @Override
+        double step(Layer layer, int w, double direction) {
+            double change = layer.getLearningRate()*direction
+                    + layer.getMomentumRate()*layer.getLastWeightChange(w);
+            layer.setLastWeightChange(w, change);
+            return layer.getMomentumRate()*change + layer.getLearningRate()*direction;
+        }
+    },
+    /** RMSprop - the direction is divided by the moving root mean square of
+     * the past directions, with momentum on the scaled steps */
+    RMSPROP(0.9) {
+        @Override
+        double step(Layer layer, int w, double direction) {
+            double second = RMSPROP.secondMomentDecay*layer.secondMoment[w]
+                    + (1.0 - RMSPROP.secondMomentDecay)*direction*direction;
+            layer.secondMoment[w] = (float) second;
+            double change = layer.getLearningRate()*direction / (Math.sqrt(second) + EPSILON)
+                    + layer.getMomentumRate()*layer.getLastWeightChange(w);
+            layer.setLastWeightChange(w, change);
+            return change;
+        }
+    },
+    /** Adam - moving averages of the directions and of their squares, with
+     * bias correction of the first steps */
+    ADAM(0.999) {
+        @Override
+        double step(Layer layer, int w, double direction) {
+            double first = layer.getMomentumRate()*layer.getLastWeightChange(w)
+                    + (1.0 - layer.getMomentumRate())*direction;
+            layer.setLastWeightChange(w, first);
+            double second = ADAM.secondMomentDecay*layer.secondMoment[w]
+                    + (1.0 - ADAM.secondMomentDecay)*direction*direction;
+            layer.secondMoment[w] = (float) second;
+            return layer.getLearningRate() * first * layer.firstCorrection
+                    / (Math.sqrt(second * layer.secondCorrection) + EPSILON);
+        }
+    };
+
+    /**
+     * A constant added to the root of the second moment, so weights with
+     * no gradient yet don't divide by zero.
+     */
+    public static final double EPSILON = 1e-8;
+
+    private final double secondMomentDecay;
+
+    private Optimizer(double secondMomentDecay) {
+        this.secondMomentDecay = secondMomentDecay;
+    }
+
+    /**
+     * Computes the change of one weight and updates its state.
+     *
+     * @param layer A layer of the weight.
+     * @param w A flat index of the weight.
+     * @param direction A descent direction of the weight.
+     * @return the change to be added to the weight.
+     */
+    abstract double step(Layer layer, int w, double direction);
+
+    /**
+     * @return the decay of the moving average of squared directions, 0 if
+     * the rule has no second moment.
+     */
+    public double getSecondMomentDecay() {
+        return secondMomentDecay;
+    }
+
+    /**
+     * @return true if the steps missed by a weight with no direction (a zero
+     * sparse input) can be applied at once later, see Layer. Adam's bias
+     * correction changes every step, so it can't.
+     */
+    public boolean isLazy() {
+        return this != ADAM;
+    }
+
+    /**
+     * Parses the optimizer from its name, case insensitive.
+     *
+     * @param name A name of the optimizer.
+     * @return the optimizer, or null if there is no optimizer of that name.
+     */
+    public static Optimizer parse(String name) {
+        String normalized = name.trim();
+        for (Optimizer o : values()) {
+            if (o.name().equalsIgnoreCase(normalized)) {
+                return o;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,53 @@
+package bp.momentum.entity;
+
+/**
+ * Precisions of the weight matrices of a network - the weights and momentum
+ * terms of all layers. The accumulated weight changes, which sum the
+ * gradients of a whole batch, are always double, so are activations, deltas
+ * and error propagation vectors (one value per neuron) and the sums of dot
+ * products and of error propagation.
+ *
+ * @author pseckarova
+ */
+public enum Precision {
+    /** float64 matrices, the default */
+    DOUBLE(8),
+    /** float32 matrices, half the memory and bandwidth of DOUBLE */
+    FLOAT(4);
+
+    private final int valueSize;
+
+    private Precision(int valueSize) {
+        this.valueSize = valueSize;
+    }
+
+    /**
+     * @return a count of bytes of one value.
+     */
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    /**
+     * Parses the precision from its name, case insensitive. Also accepts
+     * float32/float64 and f32/f64.
+     *
+     * @param name A name of the precision.
+     * @return the precision, or null if there is no precision of that name.
+     */
+    public static Precision parse(String name) {
+        String normalized = name.trim().toLowerCase();
+        if (normalized.equals("float32") || normalized.equals("f32") || normalized.equals("single")) {
+            return FLOAT;
+        }
+        if (normalized.equals("float64") || normalized.equals("f64")) {
+            return DOUBLE;
+        }
+        for (Precision p : values()) {
+            if (p.name().equalsIgnoreCase(normalized)) {
+                return p;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,80 @@
+package bp.momentum.entity;
+
+/**
+ * Plain loops, summing in the order of indexes.
+ * 
+ * @author pseckarova
+ */
+final class ScalarKernels extends Kernels {
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double value = 0.0;
+        for (int i = 0; i<length; i++) {
+            value += a[aOffset+i]*b[bOffset+i];
+        }
+        return value;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i<length; i++) {
+            y[yOffset+i] += alpha*x[xOffset+i];
+        }
+    }
+
+    @Override
+    public void momentum(double rate, double[] input, double momentumRate, 
+            double[] last, double[] overall, int offset, int length) {
+        for (int i = 0, w = offset; i<length; i++, w++) {
+            last[w] = rate*input[i] + momentumRate*last[w];
+            overall[w] += last[w];
+        }
+    }
+
+    @Override
+    public void addAndClear(double[] target, double[] source, int offset, int length) {
+        for (int w = offset; w<offset+length; w++) {
+            target[w] += source[w];
+            source[w] = 0.0;
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, float[] b, int bOffset, int length) {
+        double value = 0.0;
+        for (int i = 0; i<length; i++) {
+            value += a[aOffset+i]*b[bOffset+i];
+        }
+        return value;
+    }
+
+    @Override
+    public void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i<length; i++) {
+            y[yOffset+i] += alpha*x[xOffset+i];
+        }
+    }
+
+    @Override
+    public void momentum(double rate, double[] input, double momentumRate, 
+            float[] last, double[] overall, int offset, int length) {
+        for (int i = 0, w = offset; i<length; i++, w++) {
+            last[w] = (float) (rate*input[i] + momentumRate*last[w]);
+            overall[w] += last[w];
+        }
+    }
+
+    @Override
+    public void addAndClear(float[] target, double[] source, int offset, int length) {
+        for (int w = offset; w<offset+length; w++) {
+            target[w] = (float) (target[w] + source[w]);
+            source[w] = 0.0;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,57 @@
+package bp.momentum.entity;
+
+/**
+ * Schemes of the random initialization of weights. All of them draw the
+ * weights from a normal distribution with zero mean, they differ in its
+ * standard deviation. The counts of inputs include the static 1.0 of the
+ * bias.
+ *
+ * @author pseckarova
+ */
+public enum WeightInit {
+    /** deviation 1/sqrt(inputs), the default */
+    GAUSSIAN,
+    /** Xavier (Glorot) - deviation sqrt(2/(inputs + neurons)), for logistic and tanh layers */
+    XAVIER,
+    /** He - deviation sqrt(2/inputs), for ReLU layers */
+    HE;
+
+    /**
+     * @param inputWidth A count of inputs of a neuron.
+     * @param width A count of neurons of the layer.
+     * @return the standard deviation of the weights of the layer.
+     */
+    public double getDeviation(int inputWidth, int width) {
+        switch (this) {
+            case XAVIER:
+                return Math.sqrt(2.0 / (inputWidth + width));
+            case HE:
+                return Math.sqrt(2.0 / inputWidth);
+            default:
+                return 1.0 / Math.sqrt(inputWidth);
+        }
+    }
+
+    /**
+     * Parses the scheme from its name, case insensitive. Also accepts
+     * glorot for XAVIER and normal for GAUSSIAN.
+     *
+     * @param name A name of the scheme.
+     * @return the scheme, or null if there is no scheme of that name.
+     */
+    public static WeightInit parse(String name) {
+        String normalized = name.trim().toLowerCase();
+        if (normalized.equals("glorot")) {
+            return XAVIER;
+        }
+        if (normalized.equals("normal")) {
+            return GAUSSIAN;
+        }
+        for (WeightInit init : values()) {
+            if (init.name().equalsIgnoreCase(normalized)) {
+                return init;
+            }
+        }
+        return null;
+    }
+}
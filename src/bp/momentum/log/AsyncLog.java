@@ -0,0 +1,247 @@
+package bp.momentum.log;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A training log keeping the formatting off the training thread. Records are 
+ * written as pre-structured primitive values (a record type, its numeric 
+ * arguments and values) into a ring buffer and a background thread decodes 
+ * them and formats them by a TextLog. Large vectors are split into several 
+ * records, so every record fits into the ring. If the ring is full, the 
+ * training thread waits for the writer thread.
+ * 
+ * There has to be only one thread writing the records.
+ * 
+ * @author pseckarova
+ */
+public class AsyncLog extends TrainingLog implements Runnable {
+    
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    
+    private static final int EPOCH_START = 1;
+    private static final int EPOCH_END = 2;
+    private static final int SAMPLE = 3;
+    private static final int OUTPUTS = 4;
+    private static final int LAYER_OUTPUTS = 5;
+    private static final int OUTPUT_VALUES = 6;
+    private static final int OUTPUT_DIFF = 7;
+    private static final int WEIGHTS = 8;
+    private static final int LAYER_WEIGHTS = 9;
+    private static final int NEURON_WEIGHTS = 10;
+    private static final int WEIGHT_VALUES = 11;
+    
+    private final TextLog target;
+    private final double[] ring;
+    private final int mask;
+    private final int maxChunk;
+    private final Thread writerThread;
+    private long position;
+    private volatile long published;
+    private volatile long consumed;
+    private volatile boolean closed;
+
+    /**
+     * A constructor starting the background writer thread.
+     * 
+     * @param target A log formatting the records, used only by the writer thread.
+     * @param capacity A count of values the ring buffer holds, rounded up 
+     * to a power of two.
+     */
+    public AsyncLog(TextLog target, int capacity) {
+        super(target.getLevel(), target.getSampling());
+        this.target = target;
+        int size = Integer.highestOneBit(Math.max(64, capacity - 1) << 1);
+        this.ring = new double[size];
+        this.mask = size - 1;
+        this.maxChunk = size / 4;
+        this.writerThread = new Thread(this, "training-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+    
+    private void reserve(int count) {
+        while (position + count - consumed > ring.length) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(10_000);
+        }
+    }
+    
+    private void put(double value) {
+        ring[(int)(position++ & mask)] = value;
+    }
+    
+    private void publish() {
+        published = position;
+    }
+    
+    private void record(int type, double argument) {
+        reserve(2);
+        put(type);
+        put(argument);
+        publish();
+    }
+
+    @Override
+    protected void writeEpochStart(int epoch) {
+        record(EPOCH_START, epoch);
+    }
+
+    @Override
+    protected void writeEpochEnd(int epoch, double error) {
+        reserve(3);
+        put(EPOCH_END);
+        put(epoch);
+        put(error);
+        publish();
+    }
+
+    @Override
+    public void startSample(int index) {
+        record(SAMPLE, index);
+    }
+
+    @Override
+    public void startOutputs() {
+        record(OUTPUTS, 0);
+    }
+
+    @Override
+    public void startLayerOutputs(int layer) {
+        record(LAYER_OUTPUTS, layer);
+    }
+
+    @Override
+    public void outputValues(double[] values, int offset, int count) {
+        while (count > 0) {
+            int chunk = Math.min(count, maxChunk);
+            reserve(chunk + 2);
+            put(OUTPUT_VALUES);
+            put(chunk);
+            for (int i = offset; i<offset+chunk; i++) {
+                put(values[i]);
+            }
+            publish();
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    @Override
+    public void outputDiff(double diff) {
+        record(OUTPUT_DIFF, diff);
+    }
+
+    @Override
+    public void startWeights() {
+        record(WEIGHTS, 0);
+    }
+
+    @Override
+    public void startLayerWeights(int layer) {
+        record(LAYER_WEIGHTS, layer);
+    }
+
+    @Override
+    public void startNeuronWeights(int neuron) {
+        record(NEURON_WEIGHTS, neuron);
+    }
+
+    @Override
+    public void weightValues(double[] weights, double[] changes, int offset, int count) {
+        while (count > 0) {
+            int chunk = Math.min(count, maxChunk / 2);
+            reserve(2*chunk + 2);
+            put(WEIGHT_VALUES);
+            put(chunk);
+            for (int i = offset; i<offset+chunk; i++) {
+                put(weights[i]);
+                put(changes[i]);
+            }
+            publish();
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+    
+    /**
+     * The loop of the writer thread, decoding and formatting the records 
+     * until the log is closed and the ring is empty.
+     */
+    @Override
+    public void run() {
+        double[] first = new double[maxChunk];
+        double[] second = new double[maxChunk];
+        long read = 0;
+        
+        while (true) {
+            long available = published;
+            if (read == available) {
+                if (closed && read == published) {
+                    break;
+                }
+                target.flush();
+                LockSupport.parkNanos(1_000_000);
+                continue;
+            }
+            while (read < available) {
+                int type = (int) ring[(int)(read++ & mask)];
+                double argument = ring[(int)(read++ & mask)];
+                switch (type) {
+                    case EPOCH_START:
+                        target.writeEpochStart((int) argument);
+                        break;
+                    case EPOCH_END:
+                        target.writeEpochEnd((int) argument, ring[(int)(read++ & mask)]);
+                        break;
+                    case SAMPLE:
+                        target.startSample((int) argument);
+                        break;
+                    case OUTPUTS:
+                        target.startOutputs();
+                        break;
+                    case LAYER_OUTPUTS:
+                        target.startLayerOutputs((int) argument);
+                        break;
+                    case OUTPUT_VALUES:
+                        for (int i = 0; i<(int) argument; i++) {
+                            first[i] = ring[(int)(read++ & mask)];
+                        }
+                        target.outputValues(first, 0, (int) argument);
+                        break;
+                    case OUTPUT_DIFF:
+                        target.outputDiff(argument);
+                        break;
+                    case WEIGHTS:
+                        target.startWeights();
+                        break;
+                    case LAYER_WEIGHTS:
+                        target.startLayerWeights((int) argument);
+                        break;
+                    case NEURON_WEIGHTS:
+                        target.startNeuronWeights((int) argument);
+                        break;
+                    case WEIGHT_VALUES:
+                        for (int i = 0; i<(int) argument; i++) {
+                            first[i] = ring[(int)(read++ & mask)];
+                            second[i] = ring[(int)(read++ & mask)];
+                        }
+                        target.weightValues(first, second, 0, (int) argument);
+                        break;
+                }
+                consumed = read;
+            }
+        }
+        target.close();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
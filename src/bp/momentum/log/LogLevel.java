@@ -0,0 +1,32 @@
+package bp.momentum.log;
+
+/**
+ * Levels of detail of the training log, every level includes the previous ones.
+ * 
+ * @author pseckarova
+ */
+public enum LogLevel {
+    /** nothing is logged */
+    OFF, 
+    /** a summary line with error after every epoch */
+    EPOCH, 
+    /** outputs and output differences for every sample */
+    SAMPLE, 
+    /** every weight and its last change for every sample */
+    WEIGHT;
+    
+    /**
+     * Parses the level from its name, case insensitive.
+     * 
+     * @param name A name of the level.
+     * @return the level, or null if there is no level of that name.
+     */
+    public static LogLevel parse(String name) {
+        for (LogLevel l : values()) {
+            if (l.name().equalsIgnoreCase(name.trim())) {
+                return l;
+            }
+        }
+        return null;
+    }
+}
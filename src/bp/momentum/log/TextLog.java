@@ -0,0 +1,94 @@
+package bp.momentum.log;
+
+import java.io.PrintWriter;
+
+/**
+ * A training log formatting the records to text synchronously.
+ * 
+ * @author pseckarova
+ */
+public class TextLog extends TrainingLog {
+    private final PrintWriter writer;
+
+    /**
+     * @param writer A writer the text is written to.
+     * @param level A level of detail of this log.
+     * @param sampling Only every sampling-th epoch gets logged.
+     */
+    public TextLog(PrintWriter writer, LogLevel level, int sampling) {
+        super(level, sampling);
+        this.writer = writer;
+    }
+
+    @Override
+    protected void writeEpochStart(int epoch) {
+        writer.append("\n\n iteration no.").append(String.valueOf(epoch));
+    }
+
+    @Override
+    protected void writeEpochEnd(int epoch, double error) {
+        writer.append("\n iteration no.").append(String.valueOf(epoch))
+                .append(" error: ").append(String.valueOf(error));
+    }
+
+    @Override
+    public void startSample(int index) {
+        writer.append("\n\n===== INPUT no.").append(String.valueOf(index)).append(" =====\n");
+    }
+
+    @Override
+    public void startOutputs() {
+        writer.append("\n== OUTPUTS ==");
+    }
+
+    @Override
+    public void startLayerOutputs(int layer) {
+        writer.append("\nLayer ").append(String.valueOf(layer)).append(":");
+    }
+
+    @Override
+    public void outputValues(double[] values, int offset, int count) {
+        for (int i = offset; i<offset+count; i++) {
+            writer.append(String.format(" %+1.6f ", values[i]));
+        }
+    }
+
+    @Override
+    public void outputDiff(double diff) {
+        writer.append("\noutput diff: ").append(String.valueOf(diff));
+    }
+
+    @Override
+    public void startWeights() {
+        writer.append("\n\n== WEIGHTS ==");
+    }
+
+    @Override
+    public void startLayerWeights(int layer) {
+        writer.append("\n= Layer ").append(String.valueOf(layer)).append(" =");
+    }
+
+    @Override
+    public void startNeuronWeights(int neuron) {
+        writer.append("\nneuron ").append(String.valueOf(neuron)).append(": ");
+    }
+
+    @Override
+    public void weightValues(double[] weights, double[] changes, int offset, int count) {
+        for (int i = offset; i<offset+count; i++) {
+            writer.append(String.format(" %+1.6f (%+1.6f) ", weights[i], changes[i]));
+        }
+    }
+    
+    /**
+     * Flushes the underlying writer.
+     */
+    public void flush() {
+        writer.flush();
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+}
@@ -0,0 +1,110 @@
+package bp.momentum.log;
+
+/**
+ * A log of the training. Callers check isEnabled() for the level of detail 
+ * before writing any record, so a disabled level costs only that check. 
+ * Only every n-th epoch is logged if sampling is set to n.
+ * 
+ * All the records of one log are expected to be written by one thread.
+ * 
+ * @author pseckarova
+ */
+public abstract class TrainingLog {
+    private final LogLevel level;
+    private final int sampling;
+    private boolean sampled;
+
+    /**
+     * @param level A level of detail of this log.
+     * @param sampling Only every sampling-th epoch gets logged.
+     */
+    protected TrainingLog(LogLevel level, int sampling) {
+        this.level = level;
+        this.sampling = Math.max(1, sampling);
+        this.sampled = true;
+    }
+    
+    /**
+     * @param level A level of detail.
+     * @return true if records of the given level are written in current epoch.
+     */
+    public boolean isEnabled(LogLevel level) {
+        return sampled && level != LogLevel.OFF && level.compareTo(this.level) <= 0;
+    }
+    
+    /**
+     * @param log A log, may be null.
+     * @param level A level of detail.
+     * @return true if the log is not null and the level is enabled in it.
+     */
+    public static boolean enabled(TrainingLog log, LogLevel level) {
+        return log != null && log.isEnabled(level);
+    }
+    
+    /**
+     * Starts a new epoch, decides whether it is sampled for logging.
+     * 
+     * @param epoch A number of the epoch, starting from 1.
+     */
+    public void startEpoch(int epoch) {
+        sampled = (epoch - 1) % sampling == 0;
+        if (isEnabled(LogLevel.SAMPLE)) {
+            writeEpochStart(epoch);
+        }
+    }
+    
+    /**
+     * Ends the epoch, writes its summary.
+     * 
+     * @param epoch A number of the epoch, starting from 1.
+     * @param error A sum of errors of all the samples of the epoch.
+     */
+    public void endEpoch(int epoch, double error) {
+        if (isEnabled(LogLevel.EPOCH)) {
+            writeEpochEnd(epoch, error);
+        }
+    }
+    
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    public int getSampling() {
+        return sampling;
+    }
+    
+    protected abstract void writeEpochStart(int epoch);
+    
+    protected abstract void writeEpochEnd(int epoch, double error);
+    
+    public abstract void startSample(int index);
+    
+    public abstract void startOutputs();
+    
+    public abstract void startLayerOutputs(int layer);
+    
+    public abstract void outputValues(double[] values, int offset, int count);
+    
+    public abstract void outputDiff(double diff);
+    
+    public abstract void startWeights();
+    
+    public abstract void startLayerWeights(int layer);
+    
+    public abstract void startNeuronWeights(int neuron);
+    
+    /**
+     * Writes weights and their last changes.
+     * 
+     * @param weights An array of weights.
+     * @param changes An array of weight changes, indexed as weights.
+     * @param offset An index of the first weight to be written.
+     * @param count A count of weights to be written.
+     */
+    public abstract void weightValues(double[] weights, double[] changes, int offset, int count);
+    
+    /**
+     * Writes all pending records and closes the underlying writer.
+     */
+    public abstract void close();
+}
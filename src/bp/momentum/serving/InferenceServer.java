@@ -0,0 +1,215 @@
+package bp.momentum.serving;
+
+import bp.momentum.entity.FrozenNetwork;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A server answering predictions of a trained network over TCP. The
+ * protocol is line based, in UTF-8:
+ * <pre>
+ * client:  input values separated by ';', e.g. 1;0
+ * server:  output values separated by ';', or "error " and a message
+ * client:  stats
+ * server:  the count of requests, batches and latency percentiles
+ * </pre>
+ * A client can send any number of requests over one connection, every one
+ * is answered before the next one is read. Every connection is handled by
+ * its own virtual thread where the JVM has them (Java 21 and newer),
+ * otherwise by a pooled platform thread. The predictions of all the
+ * connections are computed in micro-batches, see MicroBatcher.
+ * <p>
+ * Every REPORT_INTERVAL seconds with some requests the throughput of the
+ * interval and the latencies since the start are printed.
+ *
+ * @author pseckarova
+ */
+public class InferenceServer {
+
+    /** seconds between two reports of the throughput */
+    public static final int REPORT_INTERVAL = 10;
+
+    private final FrozenNetwork network;
+    private final int port;
+    private final MicroBatcher batcher;
+    private boolean virtualThreads;
+
+    /**
+     * @param network A network computing the predictions.
+     * @param port A port to listen on.
+     * @param maxBatch A max count of requests of one batch.
+     * @param maxWaitMicros A max time the oldest request of a batch waits
+     * for the others, in microseconds.
+     */
+    public InferenceServer(FrozenNetwork network, int port, int maxBatch, int maxWaitMicros) {
+        this.network = network;
+        this.port = port;
+        this.batcher = new MicroBatcher(network, maxBatch, maxWaitMicros * 1000L);
+    }
+
+    /**
+     * Creates an executor running every task by a new virtual thread, by
+     * reflection, so the program still runs on older JVMs, where a cached
+     * pool of platform threads is used instead.
+     */
+    private ExecutorService createConnectionExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtualThreads = true;
+            return executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "inference-connection-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Serves the clients until the program is stopped, then prints the
+     * summary.
+     *
+     * @param out A stream the reports are printed to.
+     * @throws IOException if the port can't be listened on.
+     */
+    public void run(PrintStream out) throws IOException {
+        ExecutorService connections = createConnectionExecutor();
+        long start = System.nanoTime();
+        Thread reporter = new Thread(() -> report(out), "inference-report");
+        reporter.setDaemon(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            batcher.shutdown();
+            out.println(String.format("Inference server stopped after %.3f s: %s.",
+                    (System.nanoTime() - start) / 1e9, getStatistics()));
+        }));
+
+        try (ServerSocket server = new ServerSocket(port)) {
+            out.println(String.format("Inference server listening on port %d (%s threads, batches of up to "
+                    + "%d requests).", server.getLocalPort(), virtualThreads ? "virtual" : "platform",
+                    batcher.getMaxBatch()));
+            reporter.start();
+            while (true) {
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+        }
+    }
+
+    private void report(PrintStream out) {
+        long lastRequests = 0;
+        while (true) {
+            try {
+                Thread.sleep(REPORT_INTERVAL * 1000L);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long requests = batcher.getRequests();
+            if (requests > lastRequests) {
+                out.println(String.format("%.0f requests/s, %s.",
+                        (double) (requests - lastRequests) / REPORT_INTERVAL, getStatistics()));
+                lastRequests = requests;
+            }
+        }
+    }
+
+    /**
+     * @return the counts of requests and batches and the latencies since the
+     * start.
+     */
+    public String getStatistics() {
+        long requests = batcher.getRequests();
+        long batches = batcher.getBatches();
+        return String.format("%d requests in %d batches (%.1f per batch), latency %s",
+                requests, batches, batches == 0 ? 0.0 : (double) requests / batches,
+                batcher.getLatencies());
+    }
+
+    /**
+     * Answers the requests of one client until it disconnects.
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                        StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(),
+                        StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(answer(line.trim()));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client disconnected
+        }
+    }
+
+    private String answer(String line) {
+        if (line.equals("stats")) {
+            return getStatistics();
+        }
+        double[] input;
+        try {
+            input = parseVector(line);
+        } catch (NumberFormatException e) {
+            return "error The input values have to be numbers separated by ';'.";
+        }
+        if (input.length != network.getInputWidth()) {
+            return String.format("error The input has %d values, the network expects %d.",
+                    input.length, network.getInputWidth());
+        }
+        try {
+            return formatVector(batcher.submit(input).get());
+        } catch (ExecutionException e) {
+            return "error " + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "error The request was interrupted.";
+        }
+    }
+
+    /**
+     * @param line Values separated by ';'.
+     * @return the vector of the values.
+     * @throws NumberFormatException if a value is not a number.
+     */
+    static double[] parseVector(String line) {
+        String[] values = line.split(";");
+        double[] vector = new double[values.length];
+        for (int i = 0; i<values.length; i++) {
+            vector[i] = Double.parseDouble(values[i].trim());
+        }
+        return vector;
+    }
+
+    /**
+     * @param vector A vector.
+     * @return the values of the vector separated by ';'.
+     */
+    static String formatVector(double[] vector) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i<vector.length; i++) {
+            if (i > 0) {
+                builder.append(';');
+            }
+            builder.append(vector[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package bp.momentum.serving;
+
+import bp.momentum.data.Dataset;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark of an inference server. Every client has its own connection
+ * and thread and sends the input vectors of the training set one after
+ * another, each after the answer of the previous one (a closed loop), so the
+ * count of clients is the count of concurrent requests. The latencies are
+ * measured by the clients, including the network; the statistics of the
+ * server are printed too.
+ *
+ * @author pseckarova
+ */
+public class LoadGenerator {
+
+    /** a max count of distinct requests prepared from the training set */
+    private static final int MAX_DISTINCT = 10000;
+
+    private final String host;
+    private final int port;
+    private final String[] lines;
+    private final int clients;
+    private final int requests;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param address An address of the server, host:port.
+     * @param dataset A dataset whose input vectors are sent.
+     * @param clients A count of concurrent clients.
+     * @param requests A count of requests sent by every client.
+     * @throws IllegalArgumentException if the address is not host:port.
+     */
+    public LoadGenerator(String address, Dataset dataset, int clients, int requests) {
+        int colon = address.lastIndexOf(':');
+        try {
+            this.port = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The server address has to be host:port.");
+        }
+        this.host = colon > 0 ? address.substring(0, colon) : "localhost";
+        this.clients = clients;
+        this.requests = requests;
+        this.lines = new String[Math.min(dataset.size(), MAX_DISTINCT)];
+        double[] buffer = new double[dataset.getInputWidth()];
+        for (int i = 0; i<lines.length; i++) {
+            lines[i] = InferenceServer.formatVector(dataset.getInput(i, buffer));
+        }
+    }
+
+    /**
+     * Runs all the clients and prints their summary and the statistics of
+     * the server.
+     *
+     * @param out A stream the results are printed to.
+     * @throws IOException if the server can't be reached.
+     */
+    public void run(PrintStream out) throws IOException {
+        Socket[] sockets = new Socket[clients];
+        try {
+            for (int c = 0; c<clients; c++) {
+                sockets[c] = new Socket(host, port);
+                sockets[c].setTcpNoDelay(true);
+            }
+            Thread[] threads = new Thread[clients];
+            long start = System.nanoTime();
+            for (int c = 0; c<clients; c++) {
+                Socket socket = sockets[c];
+                int first = c * lines.length / clients;
+                threads[c] = new Thread(() -> send(socket, first), "load-client-" + c);
+                threads[c].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long count = latencies.getCount();
+            out.println(String.format("%d clients, %d requests in %.3f s: %.0f requests/s, latency %s, %d errors.",
+                    clients, count, seconds, count / seconds, latencies, errors.get()));
+            out.println("Server: " + exchange(sockets[0], "stats"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the requests of one client, starting at the given sample.
+     */
+    private void send(Socket socket, int first) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            for (int r = 0; r<requests; r++) {
+                long start = System.nanoTime();
+                out.write(lines[(first + r) % lines.length]);
+                out.write('\n');
+                out.flush();
+                String answer = in.readLine();
+                if (answer == null) {
+                    throw new IOException("The server closed the connection.");
+                }
+                latencies.record(System.nanoTime() - start);
+                if (answer.startsWith("error")) {
+                    errors.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("A client lost the server! " + e.getMessage());
+        }
+    }
+
+    private static String exchange(Socket socket, String line) throws IOException {
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        out.write(line);
+        out.write('\n');
+        out.flush();
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8)).readLine();
+    }
+}
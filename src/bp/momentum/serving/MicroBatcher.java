@@ -0,0 +1,186 @@
+package bp.momentum.serving;
+
+import bp.momentum.entity.FrozenNetwork;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent predictions into batches computed by one forward
+ * pass of the network (see FrozenNetwork.predictBatch()), so the weights are
+ * read from memory once for the whole batch instead of once per request.
+ * <p>
+ * A background thread takes the waiting requests, up to the max batch size.
+ * The batching is adaptive: if the last batch had a single request, there
+ * is no concurrent load and the batch is computed at once, as waiting for
+ * other requests would only add to the latency. Otherwise the thread waits
+ * for more requests until the batch is full or the max wait has passed
+ * since the oldest request of the batch arrived.
+ * <p>
+ * The queue of waiting requests is bounded, a request over it is refused
+ * at once.
+ *
+ * @author pseckarova
+ */
+public class MicroBatcher {
+
+    /** a count of waiting requests per request of the max batch size */
+    private static final int QUEUE_BATCHES = 64;
+
+    private final FrozenNetwork network;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request> queue;
+    private final Thread dispatcher;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile boolean running = true;
+
+    private static final class Request {
+        private final double[] input;
+        private final long arrival;
+        private final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        Request(double[] input) {
+            this.input = input;
+            this.arrival = System.nanoTime();
+        }
+    }
+
+    /**
+     * @param network A network computing the predictions.
+     * @param maxBatch A max count of requests of one batch.
+     * @param maxWaitNanos A max time the oldest request of a batch waits for
+     * the others, in nanoseconds.
+     */
+    public MicroBatcher(FrozenNetwork network, int maxBatch, long maxWaitNanos) {
+        this.network = network;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWaitNanos;
+        this.queue = new ArrayBlockingQueue<>(maxBatch * QUEUE_BATCHES);
+        this.dispatcher = new Thread(this::dispatch, "inference-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues a prediction.
+     *
+     * @param input A vector of network input values.
+     * @return the future output vector, failed with IllegalStateException if
+     * the queue is full or the batcher was shut down.
+     */
+    public CompletableFuture<double[]> submit(double[] input) {
+        Request request = new Request(input);
+        if (!running || !queue.offer(request)) {
+            request.result.completeExceptionally(new IllegalStateException("The server is overloaded."));
+        }
+        return request.result;
+    }
+
+    private void dispatch() {
+        ArrayList<Request> batch = new ArrayList<>(maxBatch);
+        int lastSize = 1;
+        while (running) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                if (lastSize > 1) {
+                    long deadline = first.arrival + maxWaitNanos;
+                    long remaining;
+                    while (batch.size() < maxBatch && (remaining = deadline - System.nanoTime()) > 0) {
+                        Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatch - batch.size());
+                    }
+                }
+                compute(batch);
+                lastSize = batch.size();
+                batch.clear();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        for (Request request : batch) {
+            request.result.completeExceptionally(new IllegalStateException("The server was shut down."));
+        }
+    }
+
+    private void compute(ArrayList<Request> batch) {
+        double[][] inputs = new double[batch.size()][];
+        for (int r = 0; r<inputs.length; r++) {
+            inputs[r] = batch.get(r).input;
+        }
+        double[][] outputs;
+        try {
+            outputs = network.predictBatch(inputs);
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        for (int r = 0; r<outputs.length; r++) {
+            Request request = batch.get(r);
+            latencies.record(now - request.arrival);
+            request.result.complete(outputs[r]);
+        }
+        requests.addAndGet(outputs.length);
+        batches.incrementAndGet();
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /**
+     * @return latencies of the computed requests, from their arrival until
+     * their result is ready.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return a count of the computed requests.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return a count of the computed batches.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Stops the background thread, the waiting requests fail.
+     */
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new IllegalStateException("The server was shut down."));
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package bp.momentum.streaming;
+
+import bp.momentum.data.Dataset;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An unbounded stream of samples, one per line: the input values followed
+ * by the expected output values, all separated by ';'. A background thread
+ * parses the lines into a fixed count of sample buffers, which are recycled
+ * once trained, so the memory stays bounded however long the stream is.
+ * <p>
+ * When the trainer falls behind, all the buffers are full and the reading
+ * thread waits for a free one - it stops reading the source, so a pipe or
+ * a socket fills up and the producer is slowed down instead of the samples
+ * being queued in memory. The time it waited is measured.
+ * <p>
+ * The source is given as "-" (the standard input), "tcp:host:port" (a
+ * connection to the producer) or a name of a file, which is followed like
+ * tail -f: at its end the thread waits for more lines to be appended, so
+ * that stream ends only when it is closed.
+ *
+ * @author pseckarova
+ */
+public class SampleStream implements Closeable {
+
+    /** milliseconds between two checks of a followed file for new lines */
+    private static final int FOLLOW_POLL = 100;
+
+    private static final Sample END = new Sample(0, 0);
+
+    private final BufferedReader reader;
+    private final Closeable source;
+    private final int inputWidth;
+    private final int outputWidth;
+    private final BlockingQueue<Sample> free;
+    private final BlockingQueue<Sample> filled;
+    private final Thread readerThread;
+    private volatile boolean closed;
+    private volatile long blockedNanos;
+    private volatile long skipped;
+    private boolean ended;
+
+    private static final class Sample {
+        private final double[] input;
+        private final double[] output;
+
+        Sample(int inputWidth, int outputWidth) {
+            this.input = new double[inputWidth];
+            this.output = new double[outputWidth];
+        }
+    }
+
+    /**
+     * A chunk of samples taken from the stream, trained as a dataset and
+     * then released back to the stream.
+     */
+    public static final class Chunk implements Dataset {
+        private final Sample[] samples;
+        private final int inputWidth;
+        private final int outputWidth;
+        private int size;
+
+        private Chunk(int capacity, int inputWidth, int outputWidth) {
+            this.samples = new Sample[capacity];
+            this.inputWidth = inputWidth;
+            this.outputWidth = outputWidth;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int getInputWidth() {
+            return inputWidth;
+        }
+
+        @Override
+        public int getOutputWidth() {
+            return outputWidth;
+        }
+
+        @Override
+        public double[] getInput(int index, double[] buffer) {
+            System.arraycopy(samples[index].input, 0, buffer, 0, inputWidth);
+            return buffer;
+        }
+
+        @Override
+        public double[] getOutput(int index, double[] buffer) {
+            System.arraycopy(samples[index].output, 0, buffer, 0, outputWidth);
+            return buffer;
+        }
+    }
+
+    /**
+     * A stream which doesn't end at the end of a file, but waits for more
+     * data until it is closed.
+     */
+    private final class FollowingInputStream extends InputStream {
+        private final InputStream in;
+
+        FollowingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                int count = in.read(b, off, len);
+                if (count > 0 || closed) {
+                    return count;
+                }
+                try {
+                    Thread.sleep(FOLLOW_POLL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens the source and starts reading it.
+     *
+     * @param source "-", "tcp:host:port" or a name of a file.
+     * @param inputWidth A count of input values of a sample.
+     * @param outputWidth A count of output values of a sample.
+     * @param capacity A count of sample buffers.
+     * @throws IOException if the source can't be opened.
+     */
+    public SampleStream(String source, int inputWidth, int outputWidth, int capacity) throws IOException {
+        InputStream in;
+        if (source.equals("-")) {
+            in = System.in;
+        } else if (source.startsWith("tcp:")) {
+            String address = source.substring(4);
+            int colon = address.lastIndexOf(':');
+            int port;
+            try {
+                port = Integer.parseInt(address.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IOException("The stream address has to be tcp:host:port.");
+            }
+            in = new Socket(colon > 0 ? address.substring(0, colon) : "localhost", port).getInputStream();
+        } else {
+            in = new FollowingInputStream(new FileInputStream(source));
+        }
+        this.source = in;
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.inputWidth = inputWidth;
+        this.outputWidth = outputWidth;
+        // one more for the end of the stream, so it never waits
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.filled = new ArrayBlockingQueue<>(capacity + 1);
+        for (int s = 0; s<capacity; s++) {
+            free.add(new Sample(inputWidth, outputWidth));
+        }
+        this.readerThread = new Thread(this::read, "sample-stream-reader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    private void read() {
+        try {
+            String line;
+            while (!closed && (line = reader.readLine()) != null) {
+                Sample sample = free.poll();
+                if (sample == null) {
+                    long start = System.nanoTime();
+                    sample = free.take();
+                    blockedNanos += System.nanoTime() - start;
+                }
+                if (parse(line, sample)) {
+                    filled.put(sample);
+                } else {
+                    free.put(sample);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("The sample stream was interrupted! " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+        filled.offer(END);
+    }
+
+    /**
+     * Parses a line into the sample buffer, blank and malformed lines are
+     * skipped.
+     *
+     * @return true if the line is a sample.
+     */
+    private boolean parse(String line, Sample sample) {
+        if (line.trim().isEmpty()) {
+            return false;
+        }
+        String[] values = line.split(";");
+        if (values.length != inputWidth + outputWidth) {
+            skipped++;
+            return false;
+        }
+        try {
+            for (int i = 0; i<inputWidth; i++) {
+                sample.input[i] = Double.parseDouble(values[i].trim());
+            }
+            for (int o = 0; o<outputWidth; o++) {
+                sample.output[o] = Double.parseDouble(values[inputWidth + o].trim());
+            }
+        } catch (NumberFormatException e) {
+            skipped++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param capacity A max count of samples of the chunk.
+     * @return a chunk for next().
+     */
+    public Chunk createChunk(int capacity) {
+        return new Chunk(capacity, inputWidth, outputWidth);
+    }
+
+    /**
+     * Fills the chunk by the samples read so far, up to its capacity. It
+     * waits only for the first sample, a chunk is not held back for more.
+     *
+     * @param chunk A released chunk.
+     * @param timeoutMillis A max time to wait for the first sample.
+     * @return the count of samples of the chunk, 0 if none came in time,
+     * -1 at the end of the stream.
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    public int next(Chunk chunk, long timeoutMillis) throws InterruptedException {
+        chunk.size = 0;
+        if (ended) {
+            return -1;
+        }
+        Sample sample = filled.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        while (sample != null) {
+            if (sample == END) {
+                ended = true;
+                break;
+            }
+            chunk.samples[chunk.size++] = sample;
+            sample = chunk.size < chunk.samples.length ? filled.poll() : null;
+        }
+        return chunk.size == 0 && ended ? -1 : chunk.size;
+    }
+
+    /**
+     * Returns the samples of a trained chunk to the reading thread.
+     *
+     * @param chunk A chunk filled by next().
+     */
+    public void release(Chunk chunk) {
+        for (int s = 0; s<chunk.size; s++) {
+            free.add(chunk.samples[s]);
+            chunk.samples[s] = null;
+        }
+        chunk.size = 0;
+    }
+
+    /**
+     * @return nanoseconds the reading thread waited for the trainer.
+     */
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * @return a count of the malformed lines skipped.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Stops reading and closes the source.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        readerThread.interrupt();
+        if (source != System.in) {
+            source.close();
+        }
+    }
+}
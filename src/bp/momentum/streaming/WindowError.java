@@ -0,0 +1,71 @@
+package bp.momentum.streaming;
+
+/**
+ * A moving window of the errors of the last samples trained from a stream.
+ * The error of a sample is computed before the network is adjusted by it,
+ * so it is the error of a sample the network hasn't seen yet. The sum of
+ * the window is kept up to date, adding a sample costs the same whatever
+ * the window size.
+ *
+ * @author pseckarova
+ */
+public class WindowError {
+    private final double[] errors;
+    private int next;
+    private int size;
+    private double sum;
+    private int sinceResum;
+
+    /**
+     * @param window A count of the last samples in the window.
+     */
+    public WindowError(int window) {
+        this.errors = new double[window];
+    }
+
+    /**
+     * Adds samples of the same error, replacing the oldest ones.
+     *
+     * @param error An error of every sample.
+     * @param count A count of the samples.
+     */
+    public void add(double error, int count) {
+        for (int s = 0; s<count; s++) {
+            sum += error - errors[next];
+            errors[next] = error;
+            next = next + 1 == errors.length ? 0 : next + 1;
+            size = Math.min(size + 1, errors.length);
+        }
+        // rounding errors of the running sum are dropped once per window
+        sinceResum += count;
+        if (sinceResum >= errors.length) {
+            sum = 0.0;
+            for (double e : errors) {
+                sum += e;
+            }
+            sinceResum = 0;
+        }
+    }
+
+    /**
+     * @return the sum of errors of the samples in the window.
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return a count of the samples in the window, lower than the window
+     * size only until it fills up.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the mean error of a sample in the window.
+     */
+    public double getMean() {
+        return size == 0 ? 0.0 : sum / size;
+    }
+}
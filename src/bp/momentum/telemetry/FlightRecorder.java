@@ -0,0 +1,34 @@
+package bp.momentum.telemetry;
+
+/**
+ * Commits the flight recorder events of the training. The implementation 
+ * using the jdk.jfr API lives in the separate jfr/src source tree compiled 
+ * for Java 11, so the main sources build for Java 8. It is loaded by 
+ * reflection and is not used when it wasn't compiled or the JVM has no 
+ * flight recorder.
+ * 
+ * @author pseckarova
+ */
+abstract class FlightRecorder {
+    
+    private static final String EVENTS_CLASS = "bp.momentum.telemetry.FlightRecorderEvents";
+    
+    /**
+     * @return the flight recorder events, or null if they are not available 
+     * in this JVM.
+     */
+    static FlightRecorder create() {
+        try {
+            return (FlightRecorder) Class.forName(EVENTS_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled, or the JVM has no flight recorder
+            return null;
+        }
+    }
+    
+    abstract void epoch(int epoch, double error, long samples, long nanos);
+    
+    abstract boolean isLayerPhasesEnabled();
+    
+    abstract void layerPhases(int epoch, int layer, long forward, long backward, long update);
+}
@@ -0,0 +1,35 @@
+package bp.momentum.telemetry;
+
+/**
+ * Time spent by one network (or one replica of it) in the phases of 
+ * training, per layer. Every timer is written only by the thread training 
+ * its network, Telemetry sums all the timers when reading, so the sums can 
+ * be slightly behind while training runs.
+ * 
+ * @author pseckarova
+ */
+public final class PhaseTimer {
+    public static final int FORWARD = 0;
+    public static final int BACKWARD = 1;
+    public static final int UPDATE = 2;
+    
+    final long[][] nanos;
+
+    PhaseTimer(int layers) {
+        this.nanos = new long[3][layers];
+    }
+    
+    /**
+     * Adds the time since the given start to the phase of the layer.
+     * 
+     * @param phase FORWARD, BACKWARD or UPDATE.
+     * @param layer An index of the layer.
+     * @param start A System.nanoTime() at the start of the phase.
+     * @return the current System.nanoTime(), a start of the next phase.
+     */
+    public long record(int phase, int layer, long start) {
+        long now = System.nanoTime();
+        nanos[phase][layer] += now - start;
+        return now;
+    }
+}
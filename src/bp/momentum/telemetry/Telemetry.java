@@ -0,0 +1,275 @@
+package bp.momentum.telemetry;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Telemetry of the training - error, throughput and allocation rate of 
+ * epochs, and on the phase level the time every layer spends in forward 
+ * pass, backward pass and weight update, summed over the phase timers of 
+ * all the networks (replicas) training. The values are exposed by a JMX 
+ * MBean and committed as flight recorder events after every epoch, if the 
+ * JVM has the flight recorder.
+ * <p>
+ * When the telemetry is off, networks have no phase timer and the training 
+ * pays only a null check per phase.
+ * 
+ * @author pseckarova
+ */
+public class Telemetry {
+    
+    public static final String OBJECT_NAME = "bp.momentum:type=Training";
+    
+    private static final FlightRecorder FLIGHT_RECORDER = FlightRecorder.create();
+    
+    private final TelemetryLevel level;
+    private final List<PhaseTimer> timers;
+    private long[][] epochStartNanos;
+    private ObjectName registeredName;
+    
+    private long epochStart;
+    private volatile int epoch;
+    private volatile double lastEpochError;
+    private volatile long lastEpochNanos;
+    private volatile long lastEpochSamples;
+    private volatile long totalSamples;
+    private volatile long lastEpochDataWaitNanos;
+    private volatile long totalDataWaitNanos;
+    
+    private long lastAllocatedBytes;
+    private long lastAllocationTime;
+
+    /**
+     * @param level A level of detail.
+     */
+    public Telemetry(TelemetryLevel level) {
+        this.level = level;
+        this.timers = new CopyOnWriteArrayList<>();
+        this.lastAllocationTime = System.nanoTime();
+        this.lastAllocatedBytes = getAllocatedBytes();
+    }
+    
+    /**
+     * Creates a phase timer of a network, which is summed with the others.
+     * 
+     * @param layers A count of layers of the network.
+     * @return the timer, or null if the phases are not measured.
+     */
+    public PhaseTimer createTimer(int layers) {
+        if (level != TelemetryLevel.PHASE) {
+            return null;
+        }
+        PhaseTimer timer = new PhaseTimer(layers);
+        timers.add(timer);
+        return timer;
+    }
+    
+    /**
+     * Registers the MBean to the platform MBean server.
+     */
+    public void register() {
+        if (level == TelemetryLevel.OFF) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new TrainingStats(this), name);
+                registeredName = name;
+            }
+        } catch (JMException e) {
+            System.err.println("Unable to register the telemetry MBean! " + e.getMessage());
+        }
+    }
+    
+    public void startEpoch() {
+        if (level == TelemetryLevel.OFF) {
+            return;
+        }
+        if (epochStartNanos == null) {
+            epochStartNanos = new long[][] {getPhaseNanos(PhaseTimer.FORWARD), 
+                getPhaseNanos(PhaseTimer.BACKWARD), getPhaseNanos(PhaseTimer.UPDATE)};
+        }
+        epochStart = System.nanoTime();
+    }
+    
+    /**
+     * Records a trained epoch and commits its flight recorder events.
+     * 
+     * @param epoch A number of the epoch.
+     * @param error The error of the epoch.
+     * @param samples A count of samples trained in the epoch.
+     */
+    public void endEpoch(int epoch, double error, long samples) {
+        if (level == TelemetryLevel.OFF) {
+            return;
+        }
+        long nanos = System.nanoTime() - epochStart;
+        this.epoch = epoch;
+        this.lastEpochError = error;
+        this.lastEpochNanos = nanos;
+        this.lastEpochSamples = samples;
+        this.totalSamples += samples;
+        
+        if (FLIGHT_RECORDER != null) {
+            FLIGHT_RECORDER.epoch(epoch, error, samples, nanos);
+            if (level == TelemetryLevel.PHASE && FLIGHT_RECORDER.isLayerPhasesEnabled()) {
+                long[][] phases = {getPhaseNanos(PhaseTimer.FORWARD), 
+                    getPhaseNanos(PhaseTimer.BACKWARD), getPhaseNanos(PhaseTimer.UPDATE)};
+                for (int l = 0; l<phases[0].length; l++) {
+                    FLIGHT_RECORDER.layerPhases(epoch, l+1, 
+                            phases[0][l] - epochStartNanos[0][l], 
+                            phases[1][l] - epochStartNanos[1][l], 
+                            phases[2][l] - epochStartNanos[2][l]);
+                }
+                epochStartNanos = phases;
+            }
+        }
+    }
+    
+    /**
+     * Records the time the training waited for samples in an epoch, see 
+     * EpochPipeline.
+     * 
+     * @param nanos Nanoseconds of waiting.
+     */
+    public void recordDataWait(long nanos) {
+        if (level == TelemetryLevel.OFF) {
+            return;
+        }
+        lastEpochDataWaitNanos = nanos;
+        totalDataWaitNanos += nanos;
+    }
+    
+    /**
+     * Unregisters the MBean.
+     */
+    public void close() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            System.err.println("Unable to unregister the telemetry MBean! " + e.getMessage());
+        }
+        registeredName = null;
+    }
+    
+    /**
+     * Prints the throughput and the time of phases per layer.
+     * 
+     * @param out A stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        if (level == TelemetryLevel.OFF) {
+            return;
+        }
+        out.println(String.format("samples: %d, last epoch: %.0f samples/s, waited for data: %.3f ms", 
+                totalSamples, getSamplesPerSecond(), totalDataWaitNanos / 1e6));
+        long[] forward = getPhaseNanos(PhaseTimer.FORWARD);
+        long[] backward = getPhaseNanos(PhaseTimer.BACKWARD);
+        long[] update = getPhaseNanos(PhaseTimer.UPDATE);
+        for (int l = 0; l<forward.length; l++) {
+            out.println(String.format("layer %d: forward %.3f ms, backward %.3f ms, update %.3f ms", 
+                    l+1, forward[l] / 1e6, backward[l] / 1e6, update[l] / 1e6));
+        }
+    }
+    
+    /**
+     * @param phase PhaseTimer.FORWARD, BACKWARD or UPDATE.
+     * @return the nanoseconds spent in the phase by every layer, summed 
+     * over all the timers.
+     */
+    public long[] getPhaseNanos(int phase) {
+        long[] sums = null;
+        for (PhaseTimer timer : timers) {
+            long[] nanos = timer.nanos[phase];
+            if (sums == null) {
+                sums = new long[nanos.length];
+            }
+            for (int l = 0; l<nanos.length; l++) {
+                sums[l] += nanos[l];
+            }
+        }
+        return sums == null ? new long[0] : sums;
+    }
+    
+    /**
+     * @return bytes allocated per second by all threads since the previous 
+     * call, or -1 if the JVM doesn't measure allocation.
+     */
+    public synchronized double getAllocationRate() {
+        long bytes = getAllocatedBytes();
+        if (bytes < 0) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        double rate = now == lastAllocationTime ? 0.0 
+                : (bytes - lastAllocatedBytes) * 1e9 / (now - lastAllocationTime);
+        lastAllocatedBytes = bytes;
+        lastAllocationTime = now;
+        return rate;
+    }
+    
+    private static long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : allocation.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    public TelemetryLevel getLevel() {
+        return level;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public double getLastEpochError() {
+        return lastEpochError;
+    }
+
+    public long getLastEpochNanos() {
+        return lastEpochNanos;
+    }
+
+    /**
+     * @return samples trained per second in the last epoch.
+     */
+    public double getSamplesPerSecond() {
+        long nanos = lastEpochNanos;
+        return nanos == 0 ? 0.0 : lastEpochSamples * 1e9 / nanos;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public long getLastEpochDataWaitNanos() {
+        return lastEpochDataWaitNanos;
+    }
+
+    public long getTotalDataWaitNanos() {
+        return totalDataWaitNanos;
+    }
+}
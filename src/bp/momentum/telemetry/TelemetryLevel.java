@@ -0,0 +1,31 @@
+package bp.momentum.telemetry;
+
+/**
+ * Levels of detail of the training telemetry, every level includes the 
+ * previous ones.
+ * 
+ * @author pseckarova
+ */
+public enum TelemetryLevel {
+    /** nothing is measured */
+    OFF, 
+    /** error, throughput and allocation rate of every epoch */
+    EPOCH, 
+    /** also forward, backward and update time of every layer */
+    PHASE;
+    
+    /**
+     * Parses the level from its name, case insensitive.
+     * 
+     * @param name A name of the level.
+     * @return the level, or null if there is no level of that name.
+     */
+    public static TelemetryLevel parse(String name) {
+        for (TelemetryLevel l : values()) {
+            if (l.name().equalsIgnoreCase(name.trim())) {
+                return l;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package bp.momentum.telemetry;
+
+/**
+ * The JMX view of a Telemetry.
+ * 
+ * @author pseckarova
+ */
+class TrainingStats implements TrainingStatsMBean {
+    private final Telemetry telemetry;
+
+    TrainingStats(Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    @Override
+    public int getEpoch() {
+        return telemetry.getEpoch();
+    }
+
+    @Override
+    public double getLastEpochError() {
+        return telemetry.getLastEpochError();
+    }
+
+    @Override
+    public double getLastEpochSeconds() {
+        return telemetry.getLastEpochNanos() / 1e9;
+    }
+
+    @Override
+    public double getSamplesPerSecond() {
+        return telemetry.getSamplesPerSecond();
+    }
+
+    @Override
+    public long getTotalSamples() {
+        return telemetry.getTotalSamples();
+    }
+
+    @Override
+    public double getLastEpochDataWaitSeconds() {
+        return telemetry.getLastEpochDataWaitNanos() / 1e9;
+    }
+
+    @Override
+    public double getTotalDataWaitSeconds() {
+        return telemetry.getTotalDataWaitNanos() / 1e9;
+    }
+
+    @Override
+    public double getAllocationRate() {
+        return telemetry.getAllocationRate();
+    }
+
+    @Override
+    public long[] getForwardNanos() {
+        return telemetry.getPhaseNanos(PhaseTimer.FORWARD);
+    }
+
+    @Override
+    public long[] getBackwardNanos() {
+        return telemetry.getPhaseNanos(PhaseTimer.BACKWARD);
+    }
+
+    @Override
+    public long[] getUpdateNanos() {
+        return telemetry.getPhaseNanos(PhaseTimer.UPDATE);
+    }
+}
@@ -0,0 +1,46 @@
+package bp.momentum.telemetry;
+
+/**
+ * A JMX view of the training telemetry, registered as 
+ * bp.momentum:type=Training.
+ * 
+ * @author pseckarova
+ */
+public interface TrainingStatsMBean {
+    
+    int getEpoch();
+    
+    double getLastEpochError();
+    
+    double getLastEpochSeconds();
+    
+    /**
+     * @return samples trained per second in the last epoch.
+     */
+    double getSamplesPerSecond();
+    
+    long getTotalSamples();
+    
+    /**
+     * @return seconds the training waited for samples in the last epoch.
+     */
+    double getLastEpochDataWaitSeconds();
+    
+    double getTotalDataWaitSeconds();
+    
+    /**
+     * @return bytes allocated per second by all threads since the previous 
+     * call, or -1 if the JVM doesn't measure allocation.
+     */
+    double getAllocationRate();
+    
+    /**
+     * @return total nanoseconds of forward pass per layer, empty unless 
+     * the telemetry level is phase.
+     */
+    long[] getForwardNanos();
+    
+    long[] getBackwardNanos();
+    
+    long[] getUpdateNanos();
+}
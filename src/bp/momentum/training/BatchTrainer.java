@@ -0,0 +1,133 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.entity.Layer;
+import bp.momentum.entity.Network;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A class training a network by mini-batch (or full-batch) gradient descent. 
+ * Samples of one batch are split into contiguous chunks, every chunk is run 
+ * through forward and backward pass by its own replica of the network on a 
+ * fork-join pool, in blocks of samples computed as matrix-matrix products 
+ * (see Network.accumulateGradients(Dataset, int, int)). The gradients 
+ * accumulated by the replicas are then reduced into the network's weight 
+ * changes, with learning rate and momentum applied once per batch, and the 
+ * weights are adjusted.
+ * 
+ * @author pseckarova
+ */
+public class BatchTrainer implements EpochTrainer {
+    private final Network network;
+    private final Network[] replicas;
+    private final Layer[][] replicaLayers;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    /**
+     * A constructor creating the thread pool and one replica of the network 
+     * for every thread.
+     * 
+     * @param network A network to be trained.
+     * @param batchSize A count of samples processed before weights get adjusted.
+     * @param threads A count of threads computing the gradients.
+     */
+    public BatchTrainer(Network network, int batchSize, int threads) {
+        this.network = network;
+        this.batchSize = batchSize;
+        this.pool = new ForkJoinPool(threads);
+        this.replicas = new Network[threads];
+        
+        for (int i = 0; i<threads; i++) {
+            replicas[i] = network.replicate();
+        }
+        
+        int layerCount = network.getLayers().size();
+        this.replicaLayers = new Layer[layerCount][threads];
+        for (int l = 0; l<layerCount; l++) {
+            for (int i = 0; i<threads; i++) {
+                replicaLayers[l][i] = replicas[i].getLayers().get(l);
+            }
+        }
+    }
+    
+    /**
+     * Trains the network by one pass through the whole training set.
+     * 
+     * @param dataset The training set.
+     * @return the sum of errors of all the samples.
+     */
+    @Override
+    public double trainEpoch(Dataset dataset) {
+        double error = 0.0;
+        for (int start = 0; start<dataset.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, dataset.size());
+            error += trainBatch(dataset, start, end);
+        }
+        return error;
+    }
+    
+    private double trainBatch(Dataset dataset, int start, int end) {
+        int chunks = Math.min(replicas.length, end - start);
+        
+        List<Callable<Double>> gradientTasks = new ArrayList<>(chunks);
+        for (int k = 0; k<chunks; k++) {
+            Network replica = replicas[k];
+            int from = start + (end - start) * k / chunks;
+            int to = start + (end - start) * (k + 1) / chunks;
+            gradientTasks.add(() -> replica.accumulateGradients(dataset, from, to));
+        }
+        double error = 0.0;
+        for (double chunkError : invokeAll(gradientTasks)) {
+            error += chunkError;
+        }
+        
+        List<Callable<Double>> reduceTasks = new ArrayList<>();
+        for (int l = 0; l<replicaLayers.length; l++) {
+            Layer layer = network.getLayers().get(l);
+            Layer[] layerReplicas = replicaLayers[l];
+            int size = layer.getWidth() * layer.getInputWidth();
+            int ranges = Math.min(replicas.length, Math.max(1, size / 4096));
+            for (int k = 0; k<ranges; k++) {
+                int from = (int)((long)size * k / ranges);
+                int to = (int)((long)size * (k + 1) / ranges);
+                reduceTasks.add(() -> {
+                    layer.reduceGradients(layerReplicas, from, to);
+                    return 0.0;
+                });
+            }
+        }
+        invokeAll(reduceTasks);
+        
+        network.adjustWeights();
+        return error;
+    }
+    
+    private List<Double> invokeAll(List<Callable<Double>> tasks) {
+        List<Double> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<Double> f : pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch training was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch training failed.", e.getCause());
+        }
+        return results;
+    }
+    
+    /**
+     * Stops the threads of the pool.
+     */
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,115 @@
+package bp.momentum.training;
+
+import bp.momentum.entity.Network;
+import bp.momentum.entity.NetworkFile;
+import bp.momentum.entity.NetworkSnapshot;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * A class writing periodic checkpoints of a trained network by a background 
+ * thread. The training thread only copies weights and momentum terms into 
+ * a spare snapshot (see Network.snapshot()) and hands it over, the file is 
+ * written while the training continues. If a checkpoint is requested before 
+ * the previous one was taken by the writer, the pending one gets replaced, 
+ * so the training never waits for the disk.
+ * 
+ * @author pseckarova
+ */
+public class Checkpointer implements Runnable {
+    private final File file;
+    private final Thread writerThread;
+    private final ArrayDeque<NetworkSnapshot> spare;
+    private NetworkSnapshot pending;
+    private boolean closed;
+
+    /**
+     * A constructor starting the writer thread.
+     * 
+     * @param file A file the checkpoints are written to, see NetworkFile.
+     */
+    public Checkpointer(File file) {
+        this.file = file;
+        this.spare = new ArrayDeque<>();
+        this.writerThread = new Thread(this, "checkpoint-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+    
+    /**
+     * Takes a snapshot of the network and passes it to the writer thread. 
+     * Has to be called between adjustWeights() and the next train().
+     * 
+     * @param network A trained network.
+     * @param epoch A number of the last trained epoch.
+     */
+    public void checkpoint(Network network, int epoch) {
+        NetworkSnapshot target;
+        synchronized (this) {
+            if (pending != null) {
+                target = pending;
+                pending = null;
+            } else {
+                target = spare.poll();
+            }
+        }
+        
+        target = network.snapshot(target, epoch);
+        
+        synchronized (this) {
+            pending = target;
+            notifyAll();
+        }
+    }
+    
+    @Override
+    public void run() {
+        while (true) {
+            NetworkSnapshot snapshot;
+            synchronized (this) {
+                while (pending == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending == null) {
+                    return;
+                }
+                snapshot = pending;
+                pending = null;
+            }
+            
+            try {
+                NetworkFile.write(snapshot, file);
+            } catch (IOException e) {
+                System.err.println("Unable to write the checkpoint " + file + ": " + e.getMessage());
+            }
+            
+            synchronized (this) {
+                spare.add(snapshot);
+            }
+        }
+    }
+    
+    /**
+     * Writes the final checkpoint and waits until it is written.
+     * 
+     * @param network A trained network.
+     * @param epoch A number of the last trained epoch.
+     */
+    public void close(Network network, int epoch) {
+        checkpoint(network, epoch);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.data.SparseVector;
+import bp.momentum.entity.Network;
+import bp.momentum.entity.NetworkSnapshot;
+import java.io.PrintStream;
+
+/**
+ * A class deciding when the training stops. The training stops when the 
+ * error reaches the target, after the maximal count of epochs, after the 
+ * time limit, or when the error doesn't improve for the given count of 
+ * epochs (patience). If a validation set is given, it is evaluated every 
+ * few epochs, the patience applies to the validation error instead of the 
+ * training error and the weights of the best validation error are kept, 
+ * so they can be restored at the end.
+ * 
+ * @author pseckarova
+ */
+public class ConvergenceMonitor {
+    
+    /**
+     * A relative decrease of error which counts as an improvement.
+     */
+    public static final double MIN_IMPROVEMENT = 1e-4;
+    
+    private final double targetError;
+    private final int maxEpochs;
+    private final long maxNanos;
+    private final int patience;
+    private final long startTime;
+    
+    private Network network;
+    private Dataset validation;
+    private int validationInterval;
+    private double[] inputBuffer;
+    private double[] outputBuffer;
+    private SparseVector sparseBuffer;
+    private NetworkSnapshot best;
+    
+    private int epochs;
+    private int lastEpoch;
+    private double lastError;
+    private double bestError;
+    private int bestEpoch;
+    private int sinceImprovement;
+    private StopReason reason;
+
+    /**
+     * @param targetError An error at which the training stops.
+     * @param maxEpochs A maximal count of epochs trained, 0 for no limit.
+     * @param maxSeconds A time limit of the training in seconds, 0 for no limit.
+     * @param patience A count of epochs without improvement after which 
+     * the training stops, 0 for no limit.
+     */
+    public ConvergenceMonitor(double targetError, int maxEpochs, int maxSeconds, int patience) {
+        this.targetError = targetError;
+        this.maxEpochs = maxEpochs;
+        this.maxNanos = maxSeconds * 1_000_000_000L;
+        this.patience = patience;
+        this.startTime = System.nanoTime();
+        this.bestError = Double.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Sets the held-out validation set used for early stopping.
+     * 
+     * @param network The trained network.
+     * @param validation A validation set, not used for training.
+     * @param interval A count of epochs between evaluations of the validation set.
+     */
+    public void setValidation(Network network, Dataset validation, int interval) {
+        this.network = network;
+        this.validation = validation;
+        this.validationInterval = interval;
+        this.inputBuffer = new double[validation.getInputWidth()];
+        this.outputBuffer = new double[validation.getOutputWidth()];
+        this.sparseBuffer = new SparseVector(16);
+    }
+    
+    /**
+     * Records a trained epoch and decides whether the training continues.
+     * 
+     * @param epoch A number of the epoch.
+     * @param error The training error of the epoch.
+     * @return the reason to stop, or null if the training continues.
+     */
+    public StopReason update(int epoch, double error) {
+        epochs++;
+        lastEpoch = epoch;
+        lastError = error;
+        
+        if (validation == null) {
+            checkImprovement(error, epoch, 1);
+        } else if (epochs % validationInterval == 0) {
+            if (checkImprovement(evaluate(), epoch, validationInterval)) {
+                best = network.snapshot(best, epoch);
+            }
+        }
+        
+        if (error <= targetError) {
+            reason = StopReason.TARGET_ERROR;
+        } else if (maxEpochs > 0 && epochs >= maxEpochs) {
+            reason = StopReason.MAX_EPOCHS;
+        } else if (maxNanos > 0 && System.nanoTime() - startTime >= maxNanos) {
+            reason = StopReason.MAX_TIME;
+        } else if (patience > 0 && sinceImprovement >= patience) {
+            reason = validation == null ? StopReason.PLATEAU : StopReason.VALIDATION;
+        }
+        return reason;
+    }
+    
+    /**
+     * Stops the training for a reason decided outside of the monitor, the 
+     * next update() returns it.
+     * 
+     * @param reason A reason to stop.
+     */
+    public void stop(StopReason reason) {
+        this.reason = reason;
+    }
+    
+    private boolean checkImprovement(double error, int epoch, int elapsed) {
+        if (error < bestError * (1 - MIN_IMPROVEMENT)) {
+            bestError = error;
+            bestEpoch = epoch;
+            sinceImprovement = 0;
+            return true;
+        }
+        sinceImprovement += elapsed;
+        return false;
+    }
+    
+    /**
+     * @return the sum of errors of the network over the validation set.
+     */
+    public double evaluate() {
+        double error = 0.0;
+        boolean sparse = validation.isSparse();
+        for (int i = 0; i<validation.size(); i++) {
+            if (sparse) {
+                error += network.evaluate(validation.getSparseInput(i, sparseBuffer), 
+                        validation.getOutput(i, outputBuffer));
+            } else {
+                error += network.evaluate(validation.getInput(i, inputBuffer), 
+                        validation.getOutput(i, outputBuffer));
+            }
+        }
+        return error;
+    }
+    
+    /**
+     * Restores the weights of the best validation error, if a validation 
+     * set is used.
+     * 
+     * @return the number of the epoch the network's weights are from.
+     */
+    public int restoreBest() {
+        if (best == null || best.getEpoch() == lastEpoch) {
+            return lastEpoch;
+        }
+        network.restore(best);
+        return best.getEpoch();
+    }
+    
+    /**
+     * Prints why the training stopped, the count of epochs and the time.
+     * 
+     * @param out A stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        out.println(String.format("Training stopped: %s.", 
+                reason == null ? "interrupted" : reason.getDescription()));
+        out.println(String.format("epochs: %d (last epoch %d), time: %.3f s, training error: %s", 
+                epochs, lastEpoch, (System.nanoTime() - startTime) / 1e9, lastError));
+        if (validation != null && best != null) {
+            out.println(String.format("best validation error: %s in epoch %d, "
+                    + "the network keeps the weights of this epoch", bestError, bestEpoch));
+        }
+    }
+
+    public StopReason getReason() {
+        return reason;
+    }
+
+    public int getEpochs() {
+        return epochs;
+    }
+}
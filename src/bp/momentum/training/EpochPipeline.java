@@ -0,0 +1,231 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.data.SparseVector;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A stage between the training set and a trainer, feeding the trainer by
+ * chunks of samples. Every epoch the order of samples is shuffled by
+ * a seeded generator, so runs with the same seed train in the same orders.
+ * While the trainer trains one chunk, a background thread copies the samples
+ * of the next chunk in the new order into a second buffer - reading (and
+ * decoding) a memory mapped or float32 dataset overlaps with training. The
+ * time the trainer waited for a chunk to be loaded is measured.
+ * <p>
+ * The next epoch's first chunk is loaded while the last chunk of an epoch is
+ * trained, so every epoch but the first starts without waiting.
+ * <p>
+ * Samples of a sparse dataset are copied as sparse vectors, so the chunks
+ * stay sparse too.
+ *
+ * @author pseckarova
+ */
+public class EpochPipeline {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final Dataset source;
+    private final int[] order;
+    private final Random random;
+    private final int chunkSize;
+    private final Chunk[] buffers;
+    private final ExecutorService loader;
+    private Future<Chunk> pending;
+    private int position;
+    private int loads;
+    private long lastWaitNanos;
+    private long totalWaitNanos;
+
+    /**
+     * A buffer of one chunk of samples, reused for every other chunk. The
+     * vectors are allocated once, so loading doesn't allocate (sparse
+     * vectors grow only up to the most non-zero values of a sample).
+     */
+    private static final class Chunk implements Dataset {
+        private final double[][] inputs;
+        private final SparseVector[] sparseInputs;
+        private final double[][] outputs;
+        private final int inputWidth;
+        private int size;
+
+        Chunk(int capacity, int inputWidth, int outputWidth, boolean sparse) {
+            this.inputWidth = inputWidth;
+            this.inputs = sparse ? null : new double[capacity][inputWidth];
+            this.sparseInputs = sparse ? new SparseVector[capacity] : null;
+            this.outputs = new double[capacity][outputWidth];
+            for (int s = 0; sparse && s<capacity; s++) {
+                sparseInputs[s] = new SparseVector(16);
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int getInputWidth() {
+            return inputWidth;
+        }
+
+        @Override
+        public int getOutputWidth() {
+            return outputs[0].length;
+        }
+
+        @Override
+        public double[] getInput(int index, double[] buffer) {
+            return inputs != null ? inputs[index] : sparseInputs[index].toDense(buffer);
+        }
+
+        @Override
+        public double[] getOutput(int index, double[] buffer) {
+            return outputs[index];
+        }
+
+        @Override
+        public boolean isSparse() {
+            return sparseInputs != null;
+        }
+
+        @Override
+        public SparseVector getSparseInput(int index, SparseVector buffer) {
+            return sparseInputs[index];
+        }
+    }
+
+    /**
+     * A constructor starting the loading thread and loading the first chunk.
+     *
+     * @param source The training set.
+     * @param chunkSize A count of samples of one chunk.
+     * @param seed A seed of the shuffling.
+     * @param shuffle false to keep the order of the training set.
+     */
+    public EpochPipeline(Dataset source, int chunkSize, long seed, boolean shuffle) {
+        this.source = source;
+        this.chunkSize = Math.max(1, Math.min(chunkSize, source.size()));
+        this.order = new int[source.size()];
+        for (int i = 0; i<order.length; i++) {
+            order[i] = i;
+        }
+        this.random = shuffle ? new Random(seed) : null;
+        this.buffers = new Chunk[] {
+            new Chunk(this.chunkSize, source.getInputWidth(), source.getOutputWidth(), source.isSparse()),
+            new Chunk(this.chunkSize, source.getInputWidth(), source.getOutputWidth(), source.isSparse())
+        };
+        this.loader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "sample-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.position = order.length;
+        this.pending = loader.submit(this::loadNext);
+    }
+
+    /**
+     * Loads the next chunk into the buffer not being trained. Runs on the
+     * loading thread.
+     */
+    private Chunk loadNext() {
+        if (position == order.length) {
+            position = 0;
+            if (random != null) {
+                // Fisher-Yates shuffle of the previous order
+                for (int i = order.length - 1; i>0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                }
+            }
+        }
+        Chunk chunk = buffers[loads++ & 1];
+        chunk.size = Math.min(chunkSize, order.length - position);
+        for (int s = 0; s<chunk.size; s++) {
+            int index = order[position + s];
+            if (chunk.sparseInputs != null) {
+                SparseVector input = source.getSparseInput(index, chunk.sparseInputs[s]);
+                if (input != chunk.sparseInputs[s]) {
+                    chunk.sparseInputs[s].set(input);
+                }
+            } else {
+                double[] input = source.getInput(index, chunk.inputs[s]);
+                if (input != chunk.inputs[s]) {
+                    System.arraycopy(input, 0, chunk.inputs[s], 0, chunk.inputs[s].length);
+                }
+            }
+            double[] output = source.getOutput(index, chunk.outputs[s]);
+            if (output != chunk.outputs[s]) {
+                System.arraycopy(output, 0, chunk.outputs[s], 0, chunk.outputs[s].length);
+            }
+        }
+        position += chunk.size;
+        return chunk;
+    }
+
+    /**
+     * Trains the network by one pass through the whole training set in a new
+     * order, chunk by chunk.
+     *
+     * @param trainer A trainer of the network.
+     * @return the sum of errors of all the samples.
+     */
+    public double trainEpoch(EpochTrainer trainer) {
+        double error = 0.0;
+        long wait = 0;
+        int trained = 0;
+        while (trained < order.length) {
+            long start = System.nanoTime();
+            Chunk chunk = await();
+            wait += System.nanoTime() - start;
+            // the chunk isn't the buffer being loaded now
+            pending = loader.submit(this::loadNext);
+            error += trainer.trainEpoch(chunk);
+            trained += chunk.size;
+        }
+        lastWaitNanos = wait;
+        totalWaitNanos += wait;
+        return error;
+    }
+
+    private Chunk await() {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Loading of samples was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Loading of samples failed.", e.getCause());
+        }
+    }
+
+    /**
+     * @return nanoseconds the trainer waited for samples in the last epoch.
+     */
+    public long getLastWaitNanos() {
+        return lastWaitNanos;
+    }
+
+    /**
+     * @return nanoseconds the trainer waited for samples in all the epochs.
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * Stops the loading thread.
+     */
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+}
@@ -0,0 +1,53 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import java.io.PrintStream;
+
+/**
+ * A strategy of training a network by passes through the whole training set.
+ * 
+ * @author pseckarova
+ */
+public interface EpochTrainer {
+    
+    /**
+     * Trains the network by one pass through the whole training set.
+     * 
+     * @param dataset The training set.
+     * @return the sum of errors of all the samples.
+     */
+    double trainEpoch(Dataset dataset);
+    
+    /**
+     * Completes an epoch after its last chunk was trained.
+     * 
+     * @param error The sum of errors of all the samples of the epoch.
+     * @return the error of the epoch, the given one unless the trainer 
+     * knows a better one (see DistributedTrainer).
+     */
+    default double finishEpoch(double error) {
+        return error;
+    }
+    
+    /**
+     * @return true if the training was stopped by the trainer itself, 
+     * regardless of the convergence criteria.
+     */
+    default boolean isStopped() {
+        return false;
+    }
+    
+    /**
+     * Prints statistics of the training, if the trainer collects any.
+     * 
+     * @param out A stream to print to.
+     */
+    default void printStatistics(PrintStream out) {
+    }
+    
+    /**
+     * Stops the threads used by the trainer, if any.
+     */
+    default void shutdown() {
+    }
+}
@@ -0,0 +1,150 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.data.SparseVector;
+import bp.momentum.entity.Network;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A class training a network by asynchronous lock-free SGD (Hogwild). Every 
+ * worker thread iterates over its own shard of the training set and adjusts 
+ * the shared weights after every sample without any locking, so some updates 
+ * can get lost or interleaved. Every worker trains its own replica of the 
+ * network, so activations, deltas and momentum terms stay per thread - only 
+ * the weights are shared. With a sparse dataset every replica keeps its own 
+ * lazy momentum (see Layer) and applies it to the shared weights at the end 
+ * of every epoch.
+ * 
+ * @author pseckarova
+ */
+public class HogwildTrainer implements EpochTrainer {
+    private final Network[] replicas;
+    private final double[][] inputBuffers;
+    private final double[][] outputBuffers;
+    private final SparseVector[] sparseBuffers;
+    private final long[] samples;
+    private final long[] nanos;
+    private final ExecutorService pool;
+
+    /**
+     * A constructor starting the worker threads.
+     * 
+     * @param network A network whose weights are trained.
+     * @param threads A count of worker threads.
+     */
+    public HogwildTrainer(Network network, int threads) {
+        this.replicas = new Network[threads];
+        this.samples = new long[threads];
+        this.nanos = new long[threads];
+        int[] topology = network.getTopology();
+        this.inputBuffers = new double[threads][topology[0]];
+        this.outputBuffers = new double[threads][topology[topology.length-1]];
+        this.sparseBuffers = new SparseVector[threads];
+        this.pool = Executors.newFixedThreadPool(threads);
+        
+        for (int i = 0; i<threads; i++) {
+            replicas[i] = network.replicate();
+            sparseBuffers[i] = new SparseVector(16);
+        }
+    }
+    
+    /**
+     * Trains the network by one pass through the whole training set, every 
+     * worker passing through its own contiguous shard.
+     * 
+     * @param dataset The training set.
+     * @return the sum of errors of all the samples.
+     */
+    @Override
+    public double trainEpoch(Dataset dataset) {
+        int size = dataset.size();
+        int shards = Math.min(replicas.length, size);
+        boolean sparse = dataset.isSparse();
+        
+        List<Callable<Double>> tasks = new ArrayList<>(shards);
+        for (int k = 0; k<shards; k++) {
+            int worker = k;
+            int from = (int)((long)size * k / shards);
+            int to = (int)((long)size * (k + 1) / shards);
+            tasks.add(() -> {
+                Network replica = replicas[worker];
+                double[] inputBuffer = inputBuffers[worker];
+                double[] outputBuffer = outputBuffers[worker];
+                SparseVector sparseBuffer = sparseBuffers[worker];
+                long start = System.nanoTime();
+                double error = 0.0;
+                for (int i = from; i<to; i++) {
+                    if (sparse) {
+                        error += replica.train(dataset.getSparseInput(i, sparseBuffer), 
+                                dataset.getOutput(i, outputBuffer), null);
+                    } else {
+                        error += replica.train(dataset.getInput(i, inputBuffer), 
+                                dataset.getOutput(i, outputBuffer), null);
+                    }
+                    replica.adjustWeights();
+                }
+                replica.applyLazyMomentum();
+                nanos[worker] += System.nanoTime() - start;
+                samples[worker] += to - from;
+                return error;
+            });
+        }
+        
+        double error = 0.0;
+        try {
+            for (Future<Double> f : pool.invokeAll(tasks)) {
+                error += f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Hogwild training was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Hogwild training failed.", e.getCause());
+        }
+        return error;
+    }
+    
+    /**
+     * @return the count of samples per second trained by every worker thread 
+     * so far, measured over the time the thread was actually training.
+     */
+    public double[] getSamplesPerSecond() {
+        double[] rates = new double[replicas.length];
+        for (int i = 0; i<rates.length; i++) {
+            rates[i] = nanos[i] == 0 ? 0.0 : samples[i] * 1e9 / nanos[i];
+        }
+        return rates;
+    }
+    
+    /**
+     * Prints the throughput of every worker thread.
+     * 
+     * @param out A stream to print to.
+     */
+    @Override
+    public void printStatistics(PrintStream out) {
+        double[] rates = getSamplesPerSecond();
+        double total = 0.0;
+        for (int i = 0; i<rates.length; i++) {
+            out.println(String.format("worker %d: %d samples, %.0f samples/s", 
+                    i+1, samples[i], rates[i]));
+            total += rates[i];
+        }
+        out.println(String.format("total: %.0f samples/s", total));
+    }
+    
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
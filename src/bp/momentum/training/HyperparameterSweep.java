@@ -0,0 +1,180 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A sweep training many candidate networks with different hyperparameters
+ * concurrently on a bounded thread pool, all of them on one shared read-only
+ * dataset. The candidates are trained by successive halving: in every round
+ * all the running candidates are trained up to the epoch budget of the
+ * round, then the worse half of them (by the training error) is stopped and
+ * the budget is doubled for the next round. The last round's budget is the
+ * maximal count of epochs, so every candidate surviving to the end gets it
+ * whole. Candidates reaching the target error stop at once.
+ *
+ * @author pseckarova
+ */
+public class HyperparameterSweep {
+
+    /**
+     * The maximal count of epochs of one candidate, if no limit is given.
+     */
+    public static final int DEFAULT_MAX_EPOCHS = 100000;
+
+    private static final Comparator<SweepCandidate> BY_ERROR =
+            Comparator.comparingDouble(SweepCandidate::getError);
+
+    /**
+     * Candidates reaching the target error first by epochs and time, then
+     * the others by the error of their last epoch.
+     */
+    private static final Comparator<SweepCandidate> BY_RANK =
+            Comparator.comparing((SweepCandidate c) -> !c.hasReachedTarget())
+            .thenComparing((a, b) -> a.hasReachedTarget()
+                    ? Integer.compare(a.getEpochs(), b.getEpochs())
+                    : Double.compare(a.getError(), b.getError()))
+            .thenComparingLong(SweepCandidate::getNanos);
+
+    private final Dataset dataset;
+    private final List<SweepCandidate> candidates;
+    private final double targetError;
+    private final int maxEpochs;
+    private final long maxNanos;
+    private final int threads;
+    private long nanos;
+
+    /**
+     * @param dataset The training set, shared by all the candidates.
+     * @param targetError An error at which the training of a candidate stops.
+     * @param maxEpochs A maximal count of epochs of one candidate, 0 for 
+     * DEFAULT_MAX_EPOCHS.
+     * @param maxSeconds A time limit of the whole sweep in seconds, 0 for no
+     * limit.
+     * @param threads A count of candidates trained at once.
+     */
+    public HyperparameterSweep(Dataset dataset, double targetError, int maxEpochs,
+            int maxSeconds, int threads) {
+        this.dataset = dataset;
+        this.candidates = new ArrayList<>();
+        this.targetError = targetError;
+        this.maxEpochs = maxEpochs > 0 ? maxEpochs : DEFAULT_MAX_EPOCHS;
+        this.maxNanos = maxSeconds * 1_000_000_000L;
+        this.threads = threads;
+    }
+
+    public void addCandidate(SweepCandidate candidate) {
+        candidates.add(candidate);
+    }
+
+    public List<SweepCandidate> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Trains all the candidates by successive halving.
+     *
+     * @return the candidates ranked from the best one.
+     */
+    public List<SweepCandidate> run() {
+        long start = System.nanoTime();
+        long deadline = maxNanos > 0 ? start + maxNanos : Long.MAX_VALUE;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<SweepCandidate> running = new ArrayList<>(candidates);
+
+        // one round more than halvings of the candidates down to one
+        int rounds = 32 - Integer.numberOfLeadingZeros(Math.max(1, candidates.size()));
+        try {
+            for (int round = 1; !running.isEmpty(); round++) {
+                int budget = round >= rounds ? maxEpochs
+                        : Math.max(1, maxEpochs >> (rounds - round));
+                List<Future<?>> futures = new ArrayList<>(running.size());
+                for (SweepCandidate c : running) {
+                    futures.add(pool.submit(() -> c.train(dataset, budget, targetError, deadline)));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+
+                for (SweepCandidate c : running) {
+                    if (c.isStopped()) {
+                        c.stop(c.getReason(), round);
+                    }
+                }
+                running.removeIf(SweepCandidate::isStopped);
+                if (budget >= maxEpochs || System.nanoTime() >= deadline) {
+                    for (SweepCandidate c : running) {
+                        c.stop(budget >= maxEpochs ? StopReason.MAX_EPOCHS : StopReason.MAX_TIME, round);
+                    }
+                    break;
+                }
+
+                running.sort(BY_ERROR);
+                List<SweepCandidate> losers = running.subList((running.size() + 1) / 2, running.size());
+                for (SweepCandidate c : losers) {
+                    c.stop(StopReason.HALVED, round);
+                }
+                losers.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The sweep was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("A candidate failed.", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        nanos = System.nanoTime() - start;
+
+        List<SweepCandidate> ranked = new ArrayList<>(candidates);
+        ranked.sort(BY_RANK);
+        return ranked;
+    }
+
+    /**
+     * Prints the table of the candidates ranked from the best one, with their
+     * epochs to the target error and training time.
+     *
+     * @param ranked The candidates returned by run().
+     * @param out A stream to print to.
+     */
+    public void printTable(List<SweepCandidate> ranked, PrintStream out) {
+        out.println(String.format("Sweep of %d candidates on %d threads: %.3f s, target error %.4g.",
+                candidates.size(), threads, nanos / 1e9, targetError));
+        out.println(String.format("%4s %8s %8s %8s  %-16s %9s %8s %12s %9s  %s",
+                "rank", "rate", "momentum", "lambda", "topology", "to target", "epochs",
+                "error", "time [s]", "stopped"));
+        int rank = 1;
+        for (SweepCandidate c : ranked) {
+            out.println(String.format("%4d %8s %8s %8s  %-16s %9s %8d %12.6g %9.3f  %s",
+                    rank++, c.getLearningRate(), c.getMomentumRate(), c.getLambda(),
+                    formatTopology(c), c.hasReachedTarget() ? Integer.toString(c.getEpochs()) : "-",
+                    c.getEpochs(), c.getError(), c.getNanos() / 1e9, formatReason(c)));
+        }
+    }
+
+    private static String formatTopology(SweepCandidate c) {
+        StringBuilder s = new StringBuilder();
+        for (Integer width : c.getTopology()) {
+            s.append(s.length() == 0 ? "" : ";").append(width);
+        }
+        return s.toString();
+    }
+
+    private static String formatReason(SweepCandidate c) {
+        if (c.getReason() == null) {
+            return "-";
+        }
+        return c.getReason().name().toLowerCase().replace('_', ' ') + " in round " + c.getRound();
+    }
+}
@@ -0,0 +1,57 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.data.SparseVector;
+import bp.momentum.entity.Network;
+import bp.momentum.log.LogLevel;
+import bp.momentum.log.TrainingLog;
+
+/**
+ * A class training a network by SGD with momentum, adjusting the weights 
+ * after every sample, on the calling thread. Samples of a sparse dataset 
+ * are trained as sparse vectors.
+ * 
+ * @author pseckarova
+ */
+public class SequentialTrainer implements EpochTrainer {
+    private final Network network;
+    private final TrainingLog log;
+    private final double[] inputBuffer;
+    private final double[] outputBuffer;
+    private final SparseVector sparseBuffer;
+
+    /**
+     * @param network A network to be trained.
+     * @param log A training log, null for no logging.
+     */
+    public SequentialTrainer(Network network, TrainingLog log) {
+        this.network = network;
+        this.log = log;
+        int[] topology = network.getTopology();
+        this.inputBuffer = new double[topology[0]];
+        this.outputBuffer = new double[topology[topology.length-1]];
+        this.sparseBuffer = new SparseVector(16);
+    }
+
+    @Override
+    public double trainEpoch(Dataset dataset) {
+        double error = 0.0;
+        boolean logged = TrainingLog.enabled(log, LogLevel.SAMPLE);
+        boolean sparse = dataset.isSparse();
+        
+        for (int i = 0; i<dataset.size(); i++) {
+            if (logged) {
+                log.startSample(i);
+            }
+            if (sparse) {
+                error += network.train(dataset.getSparseInput(i, sparseBuffer), 
+                        dataset.getOutput(i, outputBuffer), log);
+            } else {
+                error += network.train(dataset.getInput(i, inputBuffer), 
+                        dataset.getOutput(i, outputBuffer), log);
+            }
+            network.adjustWeights();
+        }
+        return error;
+    }
+}
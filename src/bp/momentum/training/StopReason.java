@@ -0,0 +1,27 @@
+package bp.momentum.training;
+
+/**
+ * A reason why the training stopped.
+ * 
+ * @author pseckarova
+ */
+public enum StopReason {
+    TARGET_ERROR("the target error was reached"),
+    MAX_EPOCHS("the maximal count of epochs was reached"),
+    MAX_TIME("the time limit was reached"),
+    PLATEAU("the training error stopped improving"),
+    VALIDATION("the validation error stopped improving"),
+    HALVED("the candidate was eliminated by successive halving"),
+    DIVERGED("the training error is not a number"),
+    COORDINATOR("the distributed training was stopped");
+    
+    private final String description;
+
+    private StopReason(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
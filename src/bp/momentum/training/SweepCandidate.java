@@ -0,0 +1,172 @@
+package bp.momentum.training;
+
+import bp.momentum.data.Dataset;
+import bp.momentum.entity.Activation;
+import bp.momentum.entity.Network;
+import bp.momentum.entity.Optimizer;
+import bp.momentum.entity.Precision;
+import bp.momentum.entity.WeightInit;
+import java.util.ArrayList;
+
+/**
+ * One combination of hyperparameters of a sweep with its own network,
+ * trained sequentially by one thread of the sweep at a time. The network is
+ * created lazily by the first training, so candidates eliminated before
+ * training don't take any memory.
+ *
+ * @author pseckarova
+ */
+public class SweepCandidate {
+    private final float learningRate;
+    private final float momentumRate;
+    private final float lambda;
+    private final ArrayList<Integer> topology;
+    private final Activation[] activations;
+    private final Precision precision;
+    private final WeightInit init;
+    private final long seed;
+    private final Optimizer optimizer;
+    private SequentialTrainer trainer;
+    private int epochs;
+    private double error;
+    private long nanos;
+    private StopReason reason;
+    private int round;
+
+    /**
+     * @param learningRate A learning rate (mi).
+     * @param momentumRate A momentum rate (alfa).
+     * @param lambda A lambda parameter of activation functions.
+     * @param topology Widths of network input and of all the layers.
+     * @param activations Activation functions of all the layers.
+     * @param precision A precision of the weight matrices.
+     * @param init A scheme of the random initial weights.
+     * @param seed A seed of the initial weights, candidates of the same 
+     * topology and seed start from the same weights.
+     * @param optimizer An update rule of the weights.
+     */
+    public SweepCandidate(float learningRate, float momentumRate, float lambda,
+            ArrayList<Integer> topology, Activation[] activations, Precision precision, 
+            WeightInit init, long seed, Optimizer optimizer) {
+        this.learningRate = learningRate;
+        this.momentumRate = momentumRate;
+        this.lambda = lambda;
+        this.topology = topology;
+        this.activations = activations;
+        this.precision = precision;
+        this.init = init;
+        this.seed = seed;
+        this.optimizer = optimizer;
+        this.error = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Trains the network until the given count of epochs is trained, the
+     * target error is reached or the deadline passes.
+     *
+     * @param dataset The training set, shared by all the candidates.
+     * @param budget A count of epochs the candidate should have trained.
+     * @param targetError An error at which the training stops.
+     * @param deadline A System.nanoTime() at which the training stops.
+     */
+    void train(Dataset dataset, int budget, double targetError, long deadline) {
+        long start = System.nanoTime();
+        if (trainer == null) {
+            Network network = new Network(learningRate, momentumRate, lambda,
+                    topology, activations, precision, init, seed);
+            network.setOptimizer(optimizer);
+            trainer = new SequentialTrainer(network, null);
+        }
+        while (epochs < budget && reason == null) {
+            error = trainer.trainEpoch(dataset);
+            epochs++;
+            if (error <= targetError) {
+                reason = StopReason.TARGET_ERROR;
+            } else if (Double.isNaN(error)) {
+                reason = StopReason.DIVERGED;
+            } else if (System.nanoTime() >= deadline) {
+                reason = StopReason.MAX_TIME;
+            }
+        }
+        nanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Stops the training of this candidate and releases its network.
+     *
+     * @param reason A reason of the stop.
+     * @param round A number of the round of the sweep, in which it stopped.
+     */
+    void stop(StopReason reason, int round) {
+        if (this.reason == null) {
+            this.reason = reason;
+        }
+        this.round = round;
+        trainer = null;
+    }
+
+    /**
+     * @return true if the candidate has stopped training.
+     */
+    public boolean isStopped() {
+        return reason != null;
+    }
+
+    /**
+     * @return true if the candidate has reached the target error.
+     */
+    public boolean hasReachedTarget() {
+        return reason == StopReason.TARGET_ERROR;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    public float getMomentumRate() {
+        return momentumRate;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public ArrayList<Integer> getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return a count of trained epochs.
+     */
+    public int getEpochs() {
+        return epochs;
+    }
+
+    /**
+     * @return the error of the last trained epoch.
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * @return the time spent training this candidate, in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return the reason why the candidate stopped, or null if it didn't.
+     */
+    public StopReason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the number of the round in which the candidate stopped.
+     */
+    public int getRound() {
+        return round;
+    }
+}
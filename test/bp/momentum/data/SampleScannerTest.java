@@ -0,0 +1,130 @@
+package bp.momentum.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the number parser of SampleScanner against Double.parseDouble() and
+ * the parallel parsing of large texts against the expected rows.
+ *
+ * @author pseckarova
+ */
+public class SampleScannerTest {
+
+    private static final String[] EDGE_CASES = {
+        "0", "-0", "+0", "-0.0", "1.", ".5", "-.5", "+1.5", "007", "0.000123",
+        // 15 and 16 significant digits
+        "123456789012345", "999999999999999", "0.123456789012345", "1.23456789012345e7",
+        "1234567890123456", "9007199254740993", "0.1234567890123456", "12345678901234567890",
+        // the exponents of the exact powers of ten and just over them
+        "1e22", "1e23", "1e-22", "1e-23", "-1E+22", "-1E+23", "123456789012345e22",
+        "123456789012345e-22", "1.5e-22", "1.5e22", "1e400", "1e-400",
+        " 2.5 ", "\t-3\r", "1e", "1e+", "e5", ".", "-", "", "1.2.3", "1x", "NaN", "-Infinity"
+    };
+
+    /**
+     * Parses the value embedded between other characters, so the parser has
+     * to keep to the given range.
+     */
+    private static double parse(String value) {
+        char[] text = ("x;" + value + ";y").toCharArray();
+        return SampleScanner.parseDouble(text, 2, 2 + value.length());
+    }
+
+    private static void assertParsedLikeJava(String value) {
+        double expected;
+        try {
+            expected = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            try {
+                double actual = parse(value);
+                fail("\"" + value + "\" was parsed as " + actual);
+            } catch (NumberFormatException expectedToo) {
+                // both rejected it
+            }
+            return;
+        }
+        assertEquals("\"" + value + "\"", Double.doubleToRawLongBits(expected),
+                Double.doubleToRawLongBits(parse(value)));
+    }
+
+    private static void appendDigits(StringBuilder value, SplittableRandom random, int count) {
+        for (int d = 0; d<count; d++) {
+            value.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+
+    @Test
+    public void edgeCasesAreParsedLikeJava() {
+        for (String value : EDGE_CASES) {
+            assertParsedLikeJava(value);
+        }
+    }
+
+    @Test
+    public void randomNumbersAreParsedLikeJava() {
+        SplittableRandom random = new SplittableRandom(3L);
+        for (int n = 0; n<200000; n++) {
+            StringBuilder value = new StringBuilder();
+            int sign = random.nextInt(4);
+            if (sign == 1) {
+                value.append('-');
+            } else if (sign == 2) {
+                value.append('+');
+            }
+            appendDigits(value, random, random.nextInt(18));
+            if (random.nextBoolean()) {
+                value.append('.');
+                appendDigits(value, random, random.nextInt(18));
+            }
+            if (random.nextInt(3) == 0) {
+                value.append(random.nextBoolean() ? 'e' : 'E');
+                if (random.nextBoolean()) {
+                    value.append(random.nextBoolean() ? '-' : '+');
+                }
+                appendDigits(value, random, random.nextInt(3));
+            }
+            assertParsedLikeJava(value.toString());
+        }
+    }
+
+    @Test
+    public void parallelChunksKeepTheOrderOfRows() {
+        SplittableRandom random = new SplittableRandom(5L);
+        StringBuilder text = new StringBuilder("inputs;outputs\n");
+        List<double[]> expected = new ArrayList<>();
+        while (text.length() < 3 * SampleScanner.PARALLEL_THRESHOLD + 1000) {
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                text.append("# a comment, 1;2;3\n");
+            } else if (kind == 1) {
+                text.append('\n');
+            } else {
+                double[] row = new double[1 + random.nextInt(6)];
+                for (int v = 0; v<row.length; v++) {
+                    row[v] = random.nextBoolean() ? random.nextInt(1000) : random.nextDouble() * 100 - 50;
+                    text.append(v > 0 ? ";" : "").append(row[v]);
+                }
+                text.append(kind == 2 ? ";\r\n" : "\n");
+                expected.add(row);
+            }
+        }
+        // the last line has no line end
+        text.append("1;2");
+        expected.add(new double[] {1, 2});
+        char[] chars = text.toString().toCharArray();
+        assertTrue("parsed in chunks", chars.length > 2 * SampleScanner.PARALLEL_THRESHOLD);
+
+        List<double[]> rows = SampleScanner.parseRows(chars, 0, chars.length, ';', ';');
+        assertEquals(expected.size(), rows.size());
+        for (int r = 0; r<rows.size(); r++) {
+            assertArrayEquals("row " + r, expected.get(r), rows.get(r), 0.0);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package bp.momentum.distributed;
+
+import bp.momentum.data.ArrayDataset;
+import bp.momentum.data.Dataset;
+import bp.momentum.entity.Network;
+import bp.momentum.entity.Precision;
+import bp.momentum.entity.WeightInit;
+import bp.momentum.training.BatchTrainer;
+import bp.momentum.training.ConvergenceMonitor;
+import bp.momentum.training.EpochTrainer;
+import bp.momentum.training.StopReason;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a distributed training on the local machine - a coordinator on an
+ * ephemeral port and workers on threads of this JVM. The training set of 11
+ * samples makes uneven shards (3, 4 and 4 samples), so the workers have
+ * different counts of synchronizations per epoch.
+ *
+ * @author pseckarova
+ */
+public class DistributedTrainingTest {
+
+    private static final int WORKERS = 3;
+    private static final int BATCH_SIZE = 2;
+    private static final int TIMEOUT = 60;
+    private static final Dataset DATASET = createDataset();
+
+    private ExecutorService threads;
+
+    private static final class WorkerResult {
+        private final int epochs;
+        private final StopReason reason;
+        private final double[][] weights;
+
+        WorkerResult(int epochs, StopReason reason, double[][] weights) {
+            this.epochs = epochs;
+            this.reason = reason;
+            this.weights = weights;
+        }
+    }
+
+    private static Dataset createDataset() {
+        double[][] inputs = new double[11][];
+        double[][] outputs = new double[11][];
+        for (int s = 0; s<inputs.length; s++) {
+            int a = s & 1;
+            int b = (s >> 1) & 1;
+            inputs[s] = new double[] {a, b};
+            outputs[s] = new double[] {a ^ b};
+        }
+        return new ArrayDataset(inputs, outputs);
+    }
+
+    @Before
+    public void setUp() {
+        threads = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    /**
+     * Trains one worker the way BPMomentum does, until its monitor stops it.
+     */
+    private static WorkerResult train(int port, long seed, int maxEpochs, double targetError) throws IOException {
+        Network network = new Network(0.7f, 0.8f, 1.0f, new ArrayList<>(Arrays.asList(2, 4, 1)), null,
+                Precision.DOUBLE, WeightInit.GAUSSIAN, seed);
+        WorkerConnection connection = WorkerConnection.connect("localhost:" + port, network, DATASET.size());
+        Dataset shard = connection.getShard(DATASET);
+        EpochTrainer trainer = new DistributedTrainer(new BatchTrainer(network, BATCH_SIZE, 1),
+                connection, BATCH_SIZE);
+        ConvergenceMonitor monitor = new ConvergenceMonitor(targetError, maxEpochs, 0, 0);
+        int epoch = 0;
+        double error;
+        do {
+            error = trainer.finishEpoch(trainer.trainEpoch(shard));
+            epoch++;
+            if (trainer.isStopped()) {
+                monitor.stop(StopReason.COORDINATOR);
+            }
+        } while (monitor.update(epoch, error) == null);
+        trainer.shutdown();
+        return new WorkerResult(epoch, monitor.getReason(), network.snapshot(null, epoch).getWeights());
+    }
+
+    /**
+     * Starts the coordinator and the workers and waits for all of them.
+     *
+     * @param maxEpochs Max epochs of every worker.
+     * @return the results of the workers.
+     */
+    private List<WorkerResult> run(SyncMode mode, boolean momentum, int[] maxEpochs, double targetError)
+            throws Exception {
+        Coordinator coordinator = new Coordinator(0, WORKERS, mode, 1, momentum);
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        Future<?> coordinatorDone = threads.submit((Callable<Void>) () -> {
+            coordinator.run(out);
+            return null;
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (coordinator.getLocalPort() == 0) {
+            assertTrue("the coordinator listens", System.nanoTime() < deadline && !coordinatorDone.isDone());
+            Thread.sleep(10);
+        }
+        int port = coordinator.getLocalPort();
+
+        List<Future<WorkerResult>> workers = new ArrayList<>();
+        for (int w = 0; w<WORKERS; w++) {
+            long seed = 1000 + w;
+            int max = maxEpochs[w];
+            workers.add(threads.submit(() -> train(port, seed, max, targetError)));
+        }
+        List<WorkerResult> results = new ArrayList<>();
+        for (Future<WorkerResult> worker : workers) {
+            results.add(worker.get(TIMEOUT, TimeUnit.SECONDS));
+        }
+        coordinatorDone.get(TIMEOUT, TimeUnit.SECONDS);
+        return results;
+    }
+
+    private static void assertSameEnd(List<WorkerResult> results) {
+        WorkerResult first = results.get(0);
+        for (WorkerResult result : results) {
+            assertEquals("epochs of every worker", first.epochs, result.epochs);
+            assertEquals(first.reason, result.reason);
+            for (int l = 0; l<first.weights.length; l++) {
+                // all the workers continue from the last average
+                assertArrayEquals(first.weights[l], result.weights[l], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void syncWorkersStopAtTheSameEpoch() throws Exception {
+        List<WorkerResult> results = run(SyncMode.SYNC, false, new int[] {300, 300, 300}, 0.5);
+        assertSameEnd(results);
+    }
+
+    @Test
+    public void syncWithMomentumWorkersStopAtTheSameEpoch() throws Exception {
+        List<WorkerResult> results = run(SyncMode.SYNC, true, new int[] {300, 300, 300}, 0.5);
+        assertSameEnd(results);
+    }
+
+    @Test
+    public void asyncWorkersFinish() throws Exception {
+        List<WorkerResult> results = run(SyncMode.ASYNC, true, new int[] {20, 30, 40}, 0.0);
+        for (int w = 0; w<WORKERS; w++) {
+            // async workers stop independently, each by its own monitor
+            assertEquals(StopReason.MAX_EPOCHS, results.get(w).reason);
+            assertEquals(10 * (w + 2), results.get(w).epochs);
+        }
+    }
+
+    @Test
+    public void workerAtMaxEpochsStopsItsPeers() throws Exception {
+        List<WorkerResult> results = run(SyncMode.SYNC, false, new int[] {5, 1000, 1000}, 0.0);
+        int stopped = 0;
+        for (WorkerResult result : results) {
+            if (result.reason == StopReason.MAX_EPOCHS) {
+                assertEquals(5, result.epochs);
+                stopped++;
+            } else {
+                // the peers get STOP in the epoch after
+                assertEquals(StopReason.COORDINATOR, result.reason);
+                assertEquals(6, result.epochs);
+            }
+        }
+        assertEquals("workers stopped by max epochs", 1, stopped);
+    }
+}
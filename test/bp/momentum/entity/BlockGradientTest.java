@@ -0,0 +1,93 @@
+package bp.momentum.entity;
+
+import bp.momentum.data.Dataset;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the error gradients accumulated in blocks (see BlockKernels) with
+ * the ones accumulated sample by sample, on shapes leaving ragged tails of
+ * every tile - a count of samples not divisible by BLOCK_ROWS, an input not
+ * divisible by INPUT_TILE and layers not divisible by NEURON_TILE nor by 4.
+ *
+ * @author pseckarova
+ */
+public class BlockGradientTest {
+
+    private static void assertBlockedEqualsPerSample(Precision precision, double tolerance,
+            int samples, Integer... topology) {
+        Dataset dataset = TestNetworks.createDataset(samples, topology[0], topology[topology.length - 1]);
+        Network perSample = TestNetworks.create(precision, topology);
+        Network blocked = TestNetworks.create(precision, topology);
+
+        double expectedError = 0.0;
+        double[] input = new double[dataset.getInputWidth()];
+        double[] output = new double[dataset.getOutputWidth()];
+        for (int s = 0; s<samples; s++) {
+            expectedError += perSample.accumulateGradients(dataset.getInput(s, input),
+                    dataset.getOutput(s, output));
+        }
+        double error = blocked.accumulateGradients(dataset, 0, samples);
+        assertEquals("error", expectedError, error, tolerance * Math.max(1.0, Math.abs(expectedError)));
+
+        double largest = 0.0;
+        for (int l = 0; l<perSample.getLayers().size(); l++) {
+            Layer expected = perSample.getLayers().get(l);
+            Layer actual = blocked.getLayers().get(l);
+            int count = expected.getWidth() * expected.getInputWidth();
+            for (int w = 0; w<count; w++) {
+                double want = expected.overallWeightChange[w];
+                double got = actual.overallWeightChange[w];
+                assertEquals("gradient of weight " + w + " of layer " + (l+1), want, got,
+                        tolerance * Math.max(1.0, Math.abs(want)));
+                largest = Math.max(largest, Math.abs(want));
+            }
+        }
+        assertTrue("some gradients accumulated", largest > 0.0);
+    }
+
+    @Test
+    public void raggedTailsDouble() {
+        assertBlockedEqualsPerSample(Precision.DOUBLE, 1e-14, 150, 300, 70, 67, 3);
+    }
+
+    @Test
+    public void raggedTailsFloat() {
+        assertBlockedEqualsPerSample(Precision.FLOAT, 1e-14, 150, 300, 70, 67, 3);
+    }
+
+    @Test
+    public void singleShortBlockDouble() {
+        assertBlockedEqualsPerSample(Precision.DOUBLE, 1e-14, 5, 3, 5, 1);
+    }
+
+    @Test
+    public void singleShortBlockFloat() {
+        assertBlockedEqualsPerSample(Precision.FLOAT, 1e-14, 5, 3, 5, 1);
+    }
+
+    @Test
+    public void floatGradientsAreSummedInDouble() {
+        Integer[] topology = {300, 70, 67, 3};
+        Dataset dataset = TestNetworks.createDataset(150, topology[0], topology[topology.length - 1]);
+        Network single = TestNetworks.create(Precision.FLOAT, topology);
+        // the same weights, widened exactly
+        Network widened = new Network(single.snapshot(null, 0), Precision.DOUBLE);
+        single.accumulateGradients(dataset, 0, dataset.size());
+        widened.accumulateGradients(dataset, 0, dataset.size());
+        for (int l = 0; l<single.getLayers().size(); l++) {
+            double[] want = widened.getLayers().get(l).overallWeightChange;
+            double[] got = single.getLayers().get(l).overallWeightChange;
+            for (int w = 0; w<want.length; w++) {
+                assertEquals("gradient of weight " + w + " of layer " + (l+1), want[w], got[w],
+                        1e-14 * Math.max(1.0, Math.abs(want[w])));
+            }
+        }
+    }
+
+    @Test
+    public void exactTilesDouble() {
+        assertBlockedEqualsPerSample(Precision.DOUBLE, 1e-14, 128, 256, 64, 4);
+    }
+}
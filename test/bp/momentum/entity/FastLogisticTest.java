@@ -0,0 +1,50 @@
+package bp.momentum.entity;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the documented error bounds of FastLogistic against the exact
+ * logistic function.
+ *
+ * @author pseckarova
+ */
+public class FastLogisticTest {
+
+    /** h^2/8 times the maximum of the second derivative, 1/(6*sqrt(3)) */
+    private static final double INTERPOLATION_BOUND =
+            1.0 / (8.0 * FastLogistic.STEPS_PER_UNIT * FastLogistic.STEPS_PER_UNIT) / (6.0 * Math.sqrt(3.0));
+
+    private static double logistic(double x) {
+        return 1/(1+Math.exp(-x));
+    }
+
+    @Test
+    public void interpolationErrorIsWithinBound() {
+        assertTrue("about 7.3e-7", INTERPOLATION_BOUND < 7.4e-7);
+        double largest = 0.0;
+        // the step is not a fraction of the table's step, so every point
+        // falls elsewhere between two table values
+        for (double x = -FastLogistic.RANGE; x<FastLogistic.RANGE; x += 1.7e-5) {
+            double error = Math.abs(FastLogistic.value(x) - logistic(x));
+            largest = Math.max(largest, error);
+        }
+        assertTrue("largest error " + largest, largest <= INTERPOLATION_BOUND);
+    }
+
+    @Test
+    public void cutOffErrorIsWithinBound() {
+        for (double x = FastLogistic.RANGE; x<40.0; x += 0.01) {
+            assertEquals(logistic(x), FastLogistic.value(x), 1.2e-7);
+            assertEquals(logistic(-x), FastLogistic.value(-x), 1.2e-7);
+        }
+        assertEquals(1.0, FastLogistic.value(Double.POSITIVE_INFINITY), 0.0);
+        assertEquals(0.0, FastLogistic.value(Double.NEGATIVE_INFINITY), 0.0);
+    }
+
+    @Test
+    public void notANumberStaysNotANumber() {
+        assertTrue(Double.isNaN(FastLogistic.value(Double.NaN)));
+    }
+}
@@ -0,0 +1,73 @@
+package bp.momentum.entity;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that training a network allocates nothing once all the buffers are
+ * preallocated - a steady-state epoch must not allocate a single byte.
+ *
+ * @author pseckarova
+ */
+public class NetworkAllocationTest {
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * @return the bytes allocated by all the live threads, the calling one
+     * and the workers of the common fork-join pool.
+     */
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads, long[] ids) {
+        long bytes = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(ids)) {
+            bytes += Math.max(0, allocated);
+        }
+        return bytes;
+    }
+
+    /**
+     * Trains the network until compiled, then measures 1000 epochs.
+     *
+     * @return the bytes allocated by the measured epochs.
+     */
+    private static long measureEpochs(Network network) {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        for (int e = 0; e<20000; e++) {
+            TestNetworks.trainXorEpoch(network);
+        }
+
+        long[] ids = threads.getAllThreadIds();
+        // the measuring allocates the array of the results, the same every time
+        allocatedBytes(threads, ids);
+        long first = allocatedBytes(threads, ids);
+        long before = allocatedBytes(threads, ids);
+        long measuring = before - first;
+        for (int e = 0; e<1000; e++) {
+            TestNetworks.trainXorEpoch(network);
+        }
+        return allocatedBytes(threads, ids) - before - measuring;
+    }
+
+    @Test
+    public void steadyStateEpochAllocatesNothing() {
+        Network network = TestNetworks.create(2, 30, 30, 1);
+        assertEquals("bytes allocated by 1000 epochs", 0, measureEpochs(network));
+    }
+
+    @Test
+    public void parallelLayersAllocateNothing() {
+        Network network = TestNetworks.create(2, 30, 30, 1);
+        // every layer computes its neurons by the fork-join pool
+        network.setParallelThreshold(0);
+        assertEquals("bytes allocated by 1000 parallel epochs", 0, measureEpochs(network));
+    }
+}
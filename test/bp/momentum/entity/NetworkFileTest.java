@@ -0,0 +1,162 @@
+package bp.momentum.entity;
+
+import bp.momentum.training.Checkpointer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that network files keep the whole state of a network.
+ *
+ * @author pseckarova
+ */
+public class NetworkFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return a trained network whose matrices don't fit the write buffer of
+     * NetworkFile at once.
+     */
+    private static Network createTrainedNetwork() {
+        Network network = new Network(0.3f, 0.6f, 1.5f, new ArrayList<>(Arrays.asList(2, 400, 400, 1)),
+                new Activation[] {Activation.TANH, Activation.RELU, Activation.LOGISTIC},
+                Precision.DOUBLE, WeightInit.XAVIER, TestNetworks.SEED);
+        for (int s = 0; s<10; s++) {
+            network.train(new double[] {s & 1, (s >> 1) & 1}, new double[] {s & 1}, null);
+            network.adjustWeights();
+        }
+        return network;
+    }
+
+    static void assertSnapshotsEqual(NetworkSnapshot expected, NetworkSnapshot actual) {
+        assertEquals(expected.getLearningRate(), actual.getLearningRate(), 0.0f);
+        assertEquals(expected.getMomentumRate(), actual.getMomentumRate(), 0.0f);
+        assertEquals(expected.getLambda(), actual.getLambda(), 0.0f);
+        assertEquals(expected.getEpoch(), actual.getEpoch());
+        assertArrayEquals(expected.getTopology(), actual.getTopology());
+        assertArrayEquals(expected.getActivations(), actual.getActivations());
+        assertEquals(expected.getOptimizer(), actual.getOptimizer());
+        assertEquals(expected.getOptimizerSteps(), actual.getOptimizerSteps());
+        for (int l = 0; l<expected.getWeights().length; l++) {
+            assertArrayEquals(expected.getWeights()[l], actual.getWeights()[l], 0.0);
+            assertArrayEquals(expected.getWeightChanges()[l], actual.getWeightChanges()[l], 0.0);
+        }
+    }
+
+    @Test
+    public void roundTripKeepsTheWholeState() throws IOException {
+        NetworkSnapshot snapshot = createTrainedNetwork().snapshot(null, 17);
+        File file = folder.newFile();
+        NetworkFile.write(snapshot, file);
+        assertSnapshotsEqual(snapshot, NetworkFile.read(file));
+    }
+
+    @Test
+    public void restoredNetworkComputesTheSameOutput() throws IOException {
+        Network network = createTrainedNetwork();
+        File file = folder.newFile();
+        NetworkFile.write(network.snapshot(null, 10), file);
+        Network restored = new Network(NetworkFile.read(file));
+        double[] input = {0.25, 0.75};
+        assertArrayEquals(network.run(input, null).clone(), restored.run(input, null).clone(), 0.0);
+    }
+
+    @Test
+    public void checkpointerWritesTheLastCheckpoint() throws IOException {
+        Network network = createTrainedNetwork();
+        File file = new File(folder.getRoot(), "checkpoint.bin");
+        Checkpointer checkpointer = new Checkpointer(file);
+        checkpointer.checkpoint(network, 1);
+        checkpointer.checkpoint(network, 2);
+        checkpointer.close(network, 3);
+        assertSnapshotsEqual(network.snapshot(null, 3), NetworkFile.read(file));
+        assertEquals("no temporary file left", 1, folder.getRoot().list().length);
+    }
+
+    /**
+     * Writes the snapshot in the format of an older version, see NetworkFile.
+     */
+    private static void writeOldVersion(NetworkSnapshot snapshot, int version, File file) throws IOException {
+        int[] topology = snapshot.getTopology();
+        int count = 0;
+        for (double[] weights : snapshot.getWeights()) {
+            count += 2 * weights.length;
+        }
+        int header = 4 * (7 + topology.length + (version >= 2 ? topology.length - 1 : 0));
+        header = (header + 7) & ~7;
+        ByteBuffer buffer = ByteBuffer.allocate(header + 8 * count).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(NetworkFile.MAGIC).putInt(version);
+        buffer.putFloat(snapshot.getLambda()).putFloat(snapshot.getLearningRate())
+                .putFloat(snapshot.getMomentumRate());
+        buffer.putInt(snapshot.getEpoch()).putInt(topology.length);
+        for (int width : topology) {
+            buffer.putInt(width);
+        }
+        if (version >= 2) {
+            for (Activation activation : snapshot.getActivations()) {
+                buffer.putInt(activation.ordinal());
+            }
+        }
+        buffer.position(header);
+        for (int l = 0; l<topology.length-1; l++) {
+            for (double weight : snapshot.getWeights()[l]) {
+                buffer.putDouble(weight);
+            }
+            for (double change : snapshot.getWeightChanges()[l]) {
+                buffer.putDouble(change);
+            }
+        }
+        Files.write(file.toPath(), buffer.array());
+    }
+
+    @Test
+    public void versionOneFileIsReadAsLogistic() throws IOException {
+        NetworkSnapshot snapshot = createTrainedNetwork().snapshot(null, 5);
+        File file = folder.newFile();
+        writeOldVersion(snapshot, 1, file);
+        NetworkSnapshot read = NetworkFile.read(file);
+        // version 1 had no activation functions, all the layers were logistic,
+        // and no optimizer state
+        Arrays.fill(snapshot.getActivations(), Activation.LOGISTIC);
+        snapshot.setOptimizer(Optimizer.MOMENTUM, 0);
+        assertSnapshotsEqual(snapshot, read);
+    }
+
+    @Test
+    public void versionTwoFileIsReadWithMomentum() throws IOException {
+        Network network = createTrainedNetwork();
+        network.setOptimizer(Optimizer.RMSPROP);
+        NetworkSnapshot snapshot = network.snapshot(null, 5);
+        File file = folder.newFile();
+        writeOldVersion(snapshot, 2, file);
+        NetworkSnapshot read = NetworkFile.read(file);
+        assertEquals(Optimizer.MOMENTUM, read.getOptimizer());
+        assertEquals(0, read.getOptimizerSteps());
+        snapshot.setOptimizer(Optimizer.MOMENTUM, 0);
+        assertSnapshotsEqual(snapshot, read);
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "2;4;1\n1;0;1\n".getBytes("UTF-8"));
+        try {
+            NetworkFile.read(file);
+            fail("a text file was read as a network");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package bp.momentum.entity;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that training resumed from a checkpoint continues exactly as if it
+ * was never interrupted, including the state of the optimizer.
+ *
+ * @author pseckarova
+ */
+public class OptimizerCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void trainEpochs(Network network, int epochs) {
+        for (int e = 0; e<epochs; e++) {
+            TestNetworks.trainXorEpoch(network);
+        }
+    }
+
+    private static Network createNetwork(Optimizer optimizer) {
+        return TestNetworks.create(optimizer, 0.01f, 2, 5, 1);
+    }
+
+    private void assertResumesExactly(Optimizer optimizer) throws IOException {
+        Network network = createNetwork(optimizer);
+        trainEpochs(network, 50);
+        File file = folder.newFile();
+        NetworkFile.write(network.snapshot(null, 50), file);
+
+        NetworkSnapshot read = NetworkFile.read(file);
+        assertEquals(optimizer, read.getOptimizer());
+        assertEquals(50 * TestNetworks.XOR_INPUTS.length, read.getOptimizerSteps());
+        Network resumed = new Network(read);
+        // as BPMomentum does, the configured optimizer is set after resuming
+        resumed.setOptimizer(optimizer);
+
+        trainEpochs(network, 20);
+        trainEpochs(resumed, 20);
+        NetworkSnapshot expected = network.snapshot(null, 70);
+        NetworkSnapshot actual = resumed.snapshot(null, 70);
+        for (int l = 0; l<expected.getWeights().length; l++) {
+            assertArrayEquals(expected.getWeights()[l], actual.getWeights()[l], 0.0);
+            assertArrayEquals(expected.getWeightChanges()[l], actual.getWeightChanges()[l], 0.0);
+        }
+    }
+
+    @Test
+    public void adamResumesExactly() throws IOException {
+        assertResumesExactly(Optimizer.ADAM);
+    }
+
+    @Test
+    public void rmspropResumesExactly() throws IOException {
+        assertResumesExactly(Optimizer.RMSPROP);
+    }
+
+    @Test
+    public void momentumResumesExactly() throws IOException {
+        assertResumesExactly(Optimizer.MOMENTUM);
+    }
+
+    @Test
+    public void switchingToAdamResetsMomentumTerms() {
+        Network network = createNetwork(Optimizer.MOMENTUM);
+        trainEpochs(network, 10);
+        network.setOptimizer(Optimizer.ADAM);
+        for (double[] changes : network.snapshot(null, 10).getWeightChanges()) {
+            for (double change : changes) {
+                assertEquals(0.0, change, 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package bp.momentum.entity;
+
+import bp.momentum.data.SparseVector;
+import java.util.SplittableRandom;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that training by sparse input vectors, where the momentum of the
+ * weights of zero inputs is applied lazily, gives the same network as
+ * training by the same vectors dense.
+ *
+ * @author pseckarova
+ */
+public class SparseMomentumTest {
+
+    private static final int INPUTS = 50;
+    private static final int NON_ZERO = 4;
+    private static final int SAMPLES = 300;
+
+    private static double[][] createInputs() {
+        SplittableRandom random = new SplittableRandom(TestNetworks.SEED);
+        double[][] inputs = new double[SAMPLES][INPUTS];
+        for (double[] input : inputs) {
+            for (int k = 0; k<NON_ZERO; k++) {
+                input[random.nextInt(INPUTS)] = random.nextDouble();
+            }
+        }
+        return inputs;
+    }
+
+    private static void assertSparseEqualsDense(Optimizer optimizer, float learningRate, double tolerance) {
+        Network sparse = TestNetworks.create(optimizer, learningRate, INPUTS, 8, 2);
+        Network dense = TestNetworks.create(optimizer, learningRate, INPUTS, 8, 2);
+        double[][] inputs = createInputs();
+        double[] expected = new double[2];
+        for (int s = 0; s<SAMPLES; s++) {
+            expected[0] = s % 2;
+            expected[1] = 1 - s % 2;
+            double denseError = dense.train(inputs[s], expected, null);
+            dense.adjustWeights();
+            double sparseError = sparse.train(SparseVector.of(inputs[s]), expected, null);
+            sparse.adjustWeights();
+            assertEquals("error of sample " + s, denseError, sparseError, tolerance);
+        }
+
+        NetworkSnapshot want = dense.snapshot(null, 1);
+        NetworkSnapshot got = sparse.snapshot(null, 1);
+        for (int l = 0; l<want.getWeights().length; l++) {
+            for (int w = 0; w<want.getWeights()[l].length; w++) {
+                assertEquals("weight " + w + " of layer " + (l+1),
+                        want.getWeights()[l][w], got.getWeights()[l][w], tolerance);
+                assertEquals("momentum term " + w + " of layer " + (l+1),
+                        want.getWeightChanges()[l][w], got.getWeightChanges()[l][w], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void lazyMomentumEqualsDense() {
+        assertSparseEqualsDense(Optimizer.MOMENTUM, 0.3f, 1e-12);
+    }
+
+    @Test
+    public void lazyNesterovEqualsDense() {
+        assertSparseEqualsDense(Optimizer.NESTEROV, 0.3f, 1e-12);
+    }
+
+    @Test
+    public void lazyRmspropEqualsDense() {
+        // the float32 second moments are rounded every dense step, but only
+        // once for all the missed ones, at a learning rate fit for RMSPROP
+        assertSparseEqualsDense(Optimizer.RMSPROP, 0.01f, 1e-6);
+    }
+
+    @Test
+    public void adamTrainsSparseInputDensely() {
+        assertSparseEqualsDense(Optimizer.ADAM, 0.01f, 0.0);
+    }
+}
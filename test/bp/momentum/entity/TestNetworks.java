@@ -0,0 +1,95 @@
+package bp.momentum.entity;
+
+import bp.momentum.data.ArrayDataset;
+import bp.momentum.data.Dataset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The networks and datasets shared by the tests of this package. All of them
+ * are seeded by SEED, so every run of a test trains the same network.
+ *
+ * @author pseckarova
+ */
+final class TestNetworks {
+
+    /** the seed of the weights and of the random datasets */
+    static final long SEED = 20240611L;
+    static final float LEARNING_RATE = 0.7f;
+    static final float MOMENTUM_RATE = 0.8f;
+    static final float LAMBDA = 1.0f;
+
+    /** the XOR truth table */
+    static final double[][] XOR_INPUTS = {{1, 1}, {1, 0}, {0, 1}, {0, 0}};
+    static final double[][] XOR_OUTPUTS = {{0}, {1}, {1}, {0}};
+
+    private TestNetworks() {
+    }
+
+    /**
+     * @return a logistic network of the given precision and weights.
+     */
+    static Network create(float learningRate, Precision precision, WeightInit init, long seed,
+            Integer... topology) {
+        return new Network(learningRate, MOMENTUM_RATE, LAMBDA, new ArrayList<>(Arrays.asList(topology)), null,
+                precision, init, seed);
+    }
+
+    /**
+     * @return a double network of Gaussian weights of SEED.
+     */
+    static Network create(Integer... topology) {
+        return create(Precision.DOUBLE, topology);
+    }
+
+    /**
+     * @return a network of Gaussian weights of SEED.
+     */
+    static Network create(Precision precision, Integer... topology) {
+        return create(LEARNING_RATE, precision, WeightInit.GAUSSIAN, SEED, topology);
+    }
+
+    /**
+     * @return a double network of Gaussian weights of SEED, adjusted by the
+     * given optimizer.
+     */
+    static Network create(Optimizer optimizer, float learningRate, Integer... topology) {
+        Network network = create(learningRate, Precision.DOUBLE, WeightInit.GAUSSIAN, SEED, topology);
+        network.setOptimizer(optimizer);
+        return network;
+    }
+
+    /**
+     * @return a dataset of random values from 0 to 1, drawn from SEED.
+     */
+    static Dataset createDataset(int samples, int inputs, int outputs) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        double[][] in = new double[samples][inputs];
+        double[][] out = new double[samples][outputs];
+        for (int s = 0; s<samples; s++) {
+            for (int i = 0; i<inputs; i++) {
+                in[s][i] = random.nextDouble();
+            }
+            for (int o = 0; o<outputs; o++) {
+                out[s][o] = random.nextDouble();
+            }
+        }
+        return new ArrayDataset(in, out);
+    }
+
+    /**
+     * Trains one epoch of XOR by SGD, adjusting the weights after every
+     * sample.
+     *
+     * @return the sum of the errors of the samples.
+     */
+    static double trainXorEpoch(Network network) {
+        double error = 0.0;
+        for (int s = 0; s<XOR_INPUTS.length; s++) {
+            error += network.train(XOR_INPUTS[s], XOR_OUTPUTS[s], null);
+            network.adjustWeights();
+        }
+        return error;
+    }
+}
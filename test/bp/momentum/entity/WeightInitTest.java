@@ -0,0 +1,99 @@
+package bp.momentum.entity;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the initial weights depend only on the seed - not on the count
+ * of threads of the common fork-join pool, which fills the rows of layers
+ * over PARALLEL_INIT_THRESHOLD weights.
+ *
+ * @author pseckarova
+ */
+public class WeightInitTest {
+
+    /** the middle layer is initialized in parallel */
+    private static final Integer[] TOPOLOGY = {30, 300, 300, 2};
+
+    private static Network createNetwork(WeightInit init, long seed) {
+        return TestNetworks.create(TestNetworks.LEARNING_RATE, Precision.DOUBLE, init, seed, TOPOLOGY);
+    }
+
+    /**
+     * @return a hash of all the weights, equal only for bit-identical ones.
+     */
+    private static String weightsHash(Network network) {
+        StringBuilder hash = new StringBuilder();
+        for (double[] weights : network.snapshot(null, 0).getWeights()) {
+            hash.append(Arrays.hashCode(weights)).append(';');
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Prints the hash of the weights of every scheme, run by the test in JVMs
+     * of different common pool parallelism.
+     *
+     * @param args A seed.
+     */
+    public static void main(String[] args) {
+        long seed = Long.parseLong(args[0]);
+        for (WeightInit init : WeightInit.values()) {
+            System.out.println(init + " " + weightsHash(createNetwork(init, seed)));
+        }
+    }
+
+    private static String runWithParallelism(int parallelism, long seed) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java,
+                "-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + parallelism,
+                "-cp", System.getProperty("java.class.path"), WeightInitTest.class.getName(),
+                Long.toString(seed)).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        }
+        assertEquals("exit code of " + output, 0, process.waitFor());
+        return output.toString();
+    }
+
+    @Test
+    public void sameSeedGivesSameWeights() {
+        for (WeightInit init : WeightInit.values()) {
+            NetworkSnapshot first = createNetwork(init, TestNetworks.SEED).snapshot(null, 0);
+            NetworkSnapshot second = createNetwork(init, TestNetworks.SEED).snapshot(null, 0);
+            for (int l = 0; l<first.getWeights().length; l++) {
+                assertArrayEquals(first.getWeights()[l], second.getWeights()[l], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void differentSeedsGiveDifferentWeights() {
+        assertFalse(weightsHash(createNetwork(WeightInit.GAUSSIAN, TestNetworks.SEED))
+                .equals(weightsHash(createNetwork(WeightInit.GAUSSIAN, TestNetworks.SEED + 1))));
+    }
+
+    @Test
+    public void weightsDoNotDependOnPoolSize() throws IOException, InterruptedException {
+        assertTrue("the middle layer is initialized in parallel",
+                TOPOLOGY[2] * (TOPOLOGY[1] + 1) > Layer.PARALLEL_INIT_THRESHOLD);
+        String single = runWithParallelism(1, TestNetworks.SEED);
+        assertEquals(WeightInit.values().length, single.split("\n").length);
+        assertEquals(single, runWithParallelism(2, TestNetworks.SEED));
+        assertEquals(single, runWithParallelism(5, TestNetworks.SEED));
+    }
+}
@@ -0,0 +1,160 @@
+package bp.momentum.entity;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels using SIMD instructions by the incubating Vector API, with the 
+ * widest vectors of the processor (4 doubles for AVX2, 8 for AVX-512). 
+ * The tails shorter than a vector are computed by scalar loops. Compiled 
+ * separately for Java 17 (see -post-compile in build.xml) and loaded by 
+ * Kernels only if the JVM runs with --add-modules jdk.incubator.vector.
+ * The float overloads load floats of half the vector width and widen them 
+ * to the double lanes, so they compute in double like the scalar ones.
+ * 
+ * @author pseckarova
+ */
+final class VectorKernels extends Kernels {
+    
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    /** floats of the same count of lanes as SPECIES */
+    private static final VectorSpecies<Float> HALF = VectorSpecies.of(float.class, 
+            VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i<bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset+i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset+i);
+            sum = va.fma(vb, sum);
+        }
+        double value = sum.reduceLanes(VectorOperators.ADD);
+        for (; i<length; i++) {
+            value += a[aOffset+i]*b[bOffset+i];
+        }
+        return value;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        for (; i<bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset+i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset+i);
+            vx.fma(va, vy).intoArray(y, yOffset+i);
+        }
+        for (; i<length; i++) {
+            y[yOffset+i] += alpha*x[xOffset+i];
+        }
+    }
+
+    @Override
+    public void momentum(double rate, double[] input, double momentumRate, 
+            double[] last, double[] overall, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i<bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, input, i);
+            DoubleVector vl = DoubleVector.fromArray(SPECIES, last, offset+i);
+            DoubleVector change = vx.mul(rate).add(vl.mul(momentumRate));
+            change.intoArray(last, offset+i);
+            DoubleVector.fromArray(SPECIES, overall, offset+i).add(change).intoArray(overall, offset+i);
+        }
+        for (int w = offset+i; i<length; i++, w++) {
+            last[w] = rate*input[i] + momentumRate*last[w];
+            overall[w] += last[w];
+        }
+    }
+
+    @Override
+    public void addAndClear(double[] target, double[] source, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i<bound; i += SPECIES.length()) {
+            DoubleVector vs = DoubleVector.fromArray(SPECIES, source, offset+i);
+            DoubleVector.fromArray(SPECIES, target, offset+i).add(vs).intoArray(target, offset+i);
+            zero.intoArray(source, offset+i);
+        }
+        for (int w = offset+i; i<length; i++, w++) {
+            target[w] += source[w];
+            source[w] = 0.0;
+        }
+    }
+
+    private static DoubleVector widen(float[] array, int offset) {
+        return (DoubleVector) FloatVector.fromArray(HALF, array, offset)
+                .convertShape(VectorOperators.F2D, SPECIES, 0);
+    }
+    
+    @Override
+    public double dot(double[] a, int aOffset, float[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i<bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset+i);
+            sum = va.fma(widen(b, bOffset+i), sum);
+        }
+        double value = sum.reduceLanes(VectorOperators.ADD);
+        for (; i<length; i++) {
+            value += a[aOffset+i]*b[bOffset+i];
+        }
+        return value;
+    }
+
+    @Override
+    public void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        for (; i<bound; i += SPECIES.length()) {
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset+i);
+            widen(x, xOffset+i).fma(va, vy).intoArray(y, yOffset+i);
+        }
+        for (; i<length; i++) {
+            y[yOffset+i] += alpha*x[xOffset+i];
+        }
+    }
+
+    @Override
+    public void momentum(double rate, double[] input, double momentumRate, 
+            float[] last, double[] overall, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i<bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, input, i);
+            DoubleVector change = vx.mul(rate).add(widen(last, offset+i).mul(momentumRate));
+            FloatVector vl = (FloatVector) change.convertShape(VectorOperators.D2F, HALF, 0);
+            vl.intoArray(last, offset+i);
+            DoubleVector.fromArray(SPECIES, overall, offset+i).add(widen(last, offset+i))
+                    .intoArray(overall, offset+i);
+        }
+        for (int w = offset+i; i<length; i++, w++) {
+            last[w] = (float) (rate*input[i] + momentumRate*last[w]);
+            overall[w] += last[w];
+        }
+    }
+
+    @Override
+    public void addAndClear(float[] target, double[] source, int offset, int length) {
+        // a plain loop, C2 vectorizes it better than FloatVector in JDK 17
+        for (int w = offset; w<offset+length; w++) {
+            target[w] = (float) (target[w] + source[w]);
+            source[w] = 0.0;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " doubles)";
+    }
+}